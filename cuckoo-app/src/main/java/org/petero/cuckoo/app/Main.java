@@ -18,6 +18,10 @@ package org.petero.cuckoo.app;
 */
 
 import java.io.IOException;
+import java.util.Arrays;
+import org.petero.cuckoo.engine.chess.Bench;
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Perft;
 import org.petero.cuckoo.engine.chess.TreeLogger;
 import org.petero.cuckoo.gui.AppletGUI;
 import org.petero.cuckoo.tui.TUIGame;
@@ -40,6 +44,18 @@ public class Main {
 			TUIGame.main(args);
 		} else if ((args.length == 2) && args[0].equals("tree")) {
 			TreeLogger.main(new String[] { args[1] });
+		} else if ((args.length >= 2) && args[0].equals("perft")) {
+			try {
+				Perft.main(Arrays.copyOfRange(args, 1, args.length));
+			} catch (ChessParseError ex) {
+				System.out.printf("Invalid FEN: %s%n", ex.getMessage());
+			}
+		} else if ((args.length >= 1) && (args.length <= 2) && args[0].equals("bench")) {
+			try {
+				Bench.main(Arrays.copyOfRange(args, 1, args.length));
+			} catch (ChessParseError ex) {
+				System.out.printf("Invalid FEN: %s%n", ex.getMessage());
+			}
 		} else {
 			UCIProtocol.main(new String[] { Boolean.toString(false) });
 		}
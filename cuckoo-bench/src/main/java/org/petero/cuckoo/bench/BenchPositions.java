@@ -0,0 +1,52 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.bench;
+
+import org.petero.cuckoo.engine.chess.Bench;
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.TextIO;
+
+/**
+ * The positions used by the benchmarks. The same positions as the bench
+ * command, plus some positions where the side to move is in check.
+ * @author petero
+ */
+public class BenchPositions {
+    static final String[] FENS = Bench.FENS;
+
+    static final String[] CHECK_FENS = {
+        "rnbqkbnr/ppp2ppp/3p4/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 0 1",
+        "r1bq2r1/pp3pbk/2p1p1P1/8/3P4/2PB1N2/PP3PPR/2KR4 b - - 0 1",
+        "1R6/1brk2p1/2P1p2p/p3Pp2/P7/6P1/1P4P1/2R3K1 b - - 0 1",
+        "8/8/8/3k4/3pP3/8/8/4K3 b - e3 0 1",
+    };
+
+    /** Parse an array of FEN strings. */
+    static Position[] positions(String[] fens) {
+        Position[] ret = new Position[fens.length];
+        try {
+            for (int i = 0; i < fens.length; i++)
+                ret[i] = TextIO.readFEN(fens[i]);
+        } catch (ChessParseError ex) {
+            throw new IllegalStateException(ex);
+        }
+        return ret;
+    }
+}
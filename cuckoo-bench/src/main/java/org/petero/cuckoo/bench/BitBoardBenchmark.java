@@ -0,0 +1,75 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.petero.cuckoo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.petero.cuckoo.engine.chess.BitBoard;
+import org.petero.cuckoo.engine.chess.Position;
+
+/**
+ * Slider attack lookup speed. Each invocation computes rook and bishop
+ * attacks from all 64 squares, for the occupancy of each position in the
+ * position suite.
+ * @author petero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitBoardBenchmark {
+    private long[] occupied;
+
+    @Setup
+    public void setup() {
+        Position[] positions = BenchPositions.positions(BenchPositions.FENS);
+        occupied = new long[positions.length];
+        for (int i = 0; i < positions.length; i++)
+            occupied[i] = positions[i].whiteBB | positions[i].blackBB;
+    }
+
+    @Benchmark
+    public long rookAttacks() {
+        long ret = 0;
+        for (long occ : occupied)
+            for (int sq = 0; sq < 64; sq++)
+                ret ^= BitBoard.rookAttacks(sq, occ);
+        return ret;
+    }
+
+    @Benchmark
+    public long bishopAttacks() {
+        long ret = 0;
+        for (long occ : occupied)
+            for (int sq = 0; sq < 64; sq++)
+                ret ^= BitBoard.bishopAttacks(sq, occ);
+        return ret;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.bench;
+
+import org.petero.cuckoo.engine.chess.Bench;
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Evaluate;
+import org.petero.cuckoo.engine.chess.Evaluator;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.NNUEEvaluator;
+import org.petero.cuckoo.engine.chess.Piece;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.Search;
+import org.petero.cuckoo.engine.chess.TextIO;
+import org.petero.cuckoo.engine.chess.TranspositionTable;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+/**
+ * Plays fixed time per move games between the NNUE and the classic evaluator.
+ * Each Bench position is played twice, with the evaluators swapping colors.
+ * Games are adjudicated as a win when both sides agree that the score is
+ * decisive, and as a draw when they reach the maximum length.
+ * Arguments: [msPerMove] [rounds]
+ * @author petero
+ */
+public class EvalMatch {
+    private static final int MAX_PLIES = 300;
+    private static final int ADJUDICATE_SCORE = 1000;
+    private static final int HASH_LOG2_SIZE = 18;
+
+    /** Play one game. Return 1 if white wins, 0 for a draw, -1 if black wins. */
+    static int playGame(String fen, Evaluator wEval, Evaluator bEval, int msPerMove) throws ChessParseError {
+        Position pos = TextIO.readFEN(fen);
+        TranspositionTable wTT = new TranspositionTable(HASH_LOG2_SIZE);
+        TranspositionTable bTT = new TranspositionTable(HASH_LOG2_SIZE);
+        long[] posHashList = new long[MAX_PLIES + 200];
+        int posHashListSize = 0;
+        MoveGen moveGen = new MoveGen();
+        UndoInfo ui = new UndoInfo();
+        int lastScore = 0;   // Previous search score, from white's point of view
+        for (int ply = 0; ply < MAX_PLIES; ply++) {
+            MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
+            MoveGen.removeIllegal(pos, moves);
+            if (moves.size == 0) {
+                if (!MoveGen.inCheck(pos))
+                    return 0;
+                return pos.whiteMove ? -1 : 1;
+            }
+            if (Search.canClaimDraw50(pos) ||
+                Search.canClaimDrawRep(pos, posHashList, posHashListSize, posHashListSize) ||
+                insufficientMaterial(pos))
+                return 0;
+            Search sc = new Search(pos, posHashList, posHashListSize,
+                                   pos.whiteMove ? wTT : bTT, pos.whiteMove ? wEval : bEval);
+            sc.timeLimit(msPerMove, msPerMove);
+            Move m = sc.iterativeDeepening(moves, -1, -1, false);
+            int score = pos.whiteMove ? m.score : -m.score;
+            if ((Math.abs(score) >= ADJUDICATE_SCORE) && (Math.abs(lastScore) >= ADJUDICATE_SCORE) &&
+                ((score > 0) == (lastScore > 0)))
+                return (score > 0) ? 1 : -1;
+            lastScore = score;
+            posHashList[posHashListSize++] = pos.zobristHash();
+            pos.makeMove(m, ui);
+        }
+        return 0;
+    }
+
+    static boolean insufficientMaterial(Position pos) {
+        if ((pos.pieceTypeBB[Piece.WPAWN] | pos.pieceTypeBB[Piece.BPAWN]) != 0)
+            return false;
+        long major = pos.pieceTypeBB[Piece.WQUEEN] | pos.pieceTypeBB[Piece.BQUEEN] |
+                     pos.pieceTypeBB[Piece.WROOK] | pos.pieceTypeBB[Piece.BROOK];
+        return (major == 0) && (Long.bitCount(pos.whiteBB | pos.blackBB) <= 3);
+    }
+
+    public static void main(String[] args) throws ChessParseError {
+        int msPerMove = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        int wins = 0, draws = 0, losses = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String fen : Bench.FENS) {
+                for (int c = 0; c < 2; c++) {
+                    boolean nnueWhite = c == 0;
+                    Evaluator nnue = new NNUEEvaluator();
+                    Evaluator classic = new Evaluate();
+                    int result = playGame(fen, nnueWhite ? nnue : classic, nnueWhite ? classic : nnue, msPerMove);
+                    if (!nnueWhite)
+                        result = -result;
+                    if (result > 0) wins++; else if (result < 0) losses++; else draws++;
+                    System.out.printf("NNUE %s: %s  (+%d =%d -%d)%n", nnueWhite ? "white" : "black",
+                                      (result > 0) ? "win " : (result < 0) ? "loss" : "draw", wins, draws, losses);
+                }
+            }
+        }
+        int games = wins + draws + losses;
+        double score = (wins + 0.5 * draws) / games;
+        double clamped = Math.min(Math.max(score, 0.5 / games), 1 - 0.5 / games);
+        System.out.printf("%nNNUE vs classic, %d ms/move: +%d =%d -%d  score %.1f%%  Elo %+.0f%n",
+                          msPerMove, wins, draws, losses, score * 100, -400 * Math.log10(1 / clamped - 1));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.petero.cuckoo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.petero.cuckoo.engine.chess.Evaluate;
+import org.petero.cuckoo.engine.chess.Evaluator;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.NNUE;
+import org.petero.cuckoo.engine.chess.NNUEEvaluator;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+/**
+ * Static evaluation speed, for the classic and the NNUE evaluator. The classic
+ * evaluator uses a one entry evaluation cache, so the evaluation is computed
+ * every time. The pawn hash table is warm after the first invocation, so
+ * this mostly measures the non-pawn evaluation terms.
+ * <p>
+ * makeEvalUnmake evaluates the positions after all legal moves, which for the
+ * NNUE evaluator includes the incremental accumulator updates. The nnue-scalar
+ * evaluator uses the NNUE network without the Vector API SIMD code.
+ * @author petero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EvaluateBenchmark {
+    @Param({"classic", "nnue", "nnue-scalar"})
+    public String evaluator;
+
+    private Position[] positions;
+    private Move[][] moves;
+    private Evaluator eval;
+
+    @Setup
+    public void setup() {
+        positions = BenchPositions.positions(BenchPositions.FENS);
+        eval = switch (evaluator) {
+            case "nnue" -> new NNUEEvaluator();
+            case "nnue-scalar" -> new NNUEEvaluator(NNUE.getDefault().withVectorKernels(false));
+            default -> new Evaluate(Evaluate.DEFAULT_PAWN_HASH_LOG2_SIZE, Evaluate.DEFAULT_KING_SAFETY_HASH_LOG2_SIZE, 0);
+        };
+        MoveGen moveGen = new MoveGen();
+        moves = new Move[positions.length][];
+        for (int i = 0; i < positions.length; i++) {
+            MoveGen.MoveList ml = moveGen.legalMoves(positions[i]);
+            moves[i] = new Move[ml.size];
+            for (int mi = 0; mi < ml.size; mi++)
+                moves[i][mi] = new Move(ml.m[mi]);
+            eval.evalPos(positions[i]);
+        }
+    }
+
+    @Benchmark
+    public int evalPos() {
+        int sum = 0;
+        for (Position pos : positions)
+            sum += eval.evalPos(pos);
+        return sum;
+    }
+
+    @Benchmark
+    public int makeEvalUnmake() {
+        UndoInfo ui = new UndoInfo();
+        int sum = 0;
+        for (int i = 0; i < positions.length; i++) {
+            Position pos = positions[i];
+            for (Move m : moves[i]) {
+                pos.makeMove(m, ui);
+                sum += eval.evalPos(pos);
+                pos.unMakeMove(m, ui);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.petero.cuckoo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+/**
+ * Position.makeMove/unMakeMove speed. Each invocation makes and unmakes
+ * all legal moves in all positions in the position suite.
+ * @author petero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MakeMoveBenchmark {
+    private Position[] positions;
+    private Move[][] moves;
+    private final UndoInfo ui = new UndoInfo();
+
+    @Setup
+    public void setup() {
+        positions = BenchPositions.positions(BenchPositions.FENS);
+        moves = new Move[positions.length][];
+        MoveGen moveGen = new MoveGen();
+        for (int i = 0; i < positions.length; i++) {
+            MoveGen.MoveList moveList = moveGen.legalMoves(positions[i]);
+            moves[i] = new Move[moveList.size];
+            for (int mi = 0; mi < moveList.size; mi++)
+                moves[i][mi] = new Move(moveList.m[mi]);
+            moveGen.returnMoveList(moveList);
+        }
+    }
+
+    @Benchmark
+    public long makeUnMakeMove() {
+        long hash = 0;
+        for (int i = 0; i < positions.length; i++) {
+            Position pos = positions[i];
+            for (Move m : moves[i]) {
+                pos.makeMove(m, ui);
+                hash ^= pos.zobristHash();
+                pos.unMakeMove(m, ui);
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.petero.cuckoo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.Position;
+
+/**
+ * Move generation speed. Each invocation generates moves for all positions
+ * in the position suite.
+ * @author petero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenBenchmark {
+    private Position[] positions;
+    private Position[] checkPositions;
+    private MoveGen moveGen;
+
+    @Setup
+    public void setup() {
+        positions = BenchPositions.positions(BenchPositions.FENS);
+        checkPositions = BenchPositions.positions(BenchPositions.CHECK_FENS);
+        moveGen = new MoveGen();
+    }
+
+    @Benchmark
+    public int pseudoLegalMoves() {
+        int n = 0;
+        for (Position pos : positions) {
+            MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
+            n += moves.size;
+            moveGen.returnMoveList(moves);
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int pseudoLegalCaptures() {
+        int n = 0;
+        for (Position pos : positions) {
+            MoveGen.MoveList moves = moveGen.pseudoLegalCaptures(pos);
+            n += moves.size;
+            moveGen.returnMoveList(moves);
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int legalMoves() {
+        int n = 0;
+        for (Position pos : positions) {
+            MoveGen.MoveList moves = moveGen.legalMoves(pos);
+            n += moves.size;
+            moveGen.returnMoveList(moves);
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int checkEvasions() {
+        int n = 0;
+        for (Position pos : checkPositions) {
+            MoveGen.MoveList moves = moveGen.checkEvasions(pos);
+            n += moves.size;
+            moveGen.returnMoveList(moves);
+        }
+        return n;
+    }
+}
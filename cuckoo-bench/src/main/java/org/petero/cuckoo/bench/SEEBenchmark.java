@@ -0,0 +1,81 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.petero.cuckoo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.Search;
+import org.petero.cuckoo.engine.chess.TranspositionTable;
+
+/**
+ * Static exchange evaluation speed. Each invocation computes SEE for all
+ * captures in all positions in the position suite.
+ * @author petero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SEEBenchmark {
+    private Search[] searches;
+    private Move[][] captures;
+
+    @Setup
+    public void setup() {
+        Position[] positions = BenchPositions.positions(BenchPositions.FENS);
+        TranspositionTable tt = new TranspositionTable(10);
+        MoveGen moveGen = new MoveGen();
+        searches = new Search[positions.length];
+        captures = new Move[positions.length][];
+        for (int i = 0; i < positions.length; i++) {
+            searches[i] = new Search(positions[i], new long[200], 0, tt);
+            MoveGen.MoveList moveList = moveGen.pseudoLegalCaptures(positions[i]);
+            MoveGen.removeIllegal(positions[i], moveList);
+            captures[i] = new Move[moveList.size];
+            for (int mi = 0; mi < moveList.size; mi++)
+                captures[i][mi] = new Move(moveList.m[mi]);
+            moveGen.returnMoveList(moveList);
+        }
+    }
+
+    @Benchmark
+    public int SEE() {
+        int sum = 0;
+        for (int i = 0; i < searches.length; i++) {
+            Search sc = searches[i];
+            for (Move m : captures[i])
+                sum += sc.SEE(m);
+        }
+        return sum;
+    }
+}
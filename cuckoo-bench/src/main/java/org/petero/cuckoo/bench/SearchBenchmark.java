@@ -0,0 +1,94 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.petero.cuckoo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.petero.cuckoo.engine.chess.BucketTranspositionTable;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.OffHeapTranspositionTable;
+import org.petero.cuckoo.engine.chess.PackedTranspositionTable;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.Search;
+import org.petero.cuckoo.engine.chess.TranspositionTable;
+
+/**
+ * Fixed depth search of all positions in the position suite. Each search
+ * starts with an empty transposition table, so the searched tree only
+ * depends on the engine code, not on earlier invocations. The search is run
+ * with each transposition table type. Use for example -p log2Size=12 to compare
+ * the replacement schemes with a table that is too small for the search.
+ * @author petero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+    @Param({"8"})
+    public int depth;
+
+    @Param({"object", "packed", "offheap", "bucket"})
+    public String type;
+
+    @Param({"20"})
+    public int log2Size;
+
+    private Position[] positions;
+    private TranspositionTable tt;
+
+    @Setup
+    public void setup() {
+        positions = BenchPositions.positions(BenchPositions.FENS);
+        tt = switch (type) {
+            case "object" -> new TranspositionTable(log2Size);
+            case "packed" -> new PackedTranspositionTable(log2Size);
+            case "offheap" -> new OffHeapTranspositionTable(log2Size);
+            case "bucket" -> new BucketTranspositionTable(log2Size);
+            default -> throw new IllegalArgumentException(type);
+        };
+    }
+
+    @Benchmark
+    public void search(Blackhole bh) {
+        MoveGen moveGen = new MoveGen();
+        for (Position pos : positions) {
+            tt.clear();
+            Search sc = new Search(new Position(pos), new long[200], 0, tt);
+            MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
+            MoveGen.removeIllegal(pos, moves);
+            Move best = sc.iterativeDeepening(moves, depth, -1, false);
+            bh.consume(best);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.bench;
+
+import org.petero.cuckoo.engine.chess.Bench;
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Evaluate;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.Search;
+import org.petero.cuckoo.engine.chess.TextIO;
+import org.petero.cuckoo.engine.chess.TranspositionTable;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+/**
+ * Plays games with a chess clock between a search using dynamic time management
+ * and a search that always uses the minimum time limit, unless the best move fails
+ * low. Each Bench position is played twice, with the searches swapping colors.
+ * A side that runs out of time loses. Other games are adjudicated as in EvalMatch.
+ * Arguments: [baseMs] [incMs] [rounds]
+ * @author petero
+ */
+public class TimeMatch {
+    private static final int MAX_PLIES = 300;
+    private static final int ADJUDICATE_SCORE = 1000;
+    private static final int HASH_LOG2_SIZE = 18;
+
+    /** Time used and number of moves made by each side, indexed by 0 for dynamic, 1 for fixed. */
+    static final long[] timeUsed = new long[2];
+    static final int[] movesMade = new int[2];
+
+    /** Play one game. Return 1 if white wins, 0 for a draw, -1 if black wins. */
+    static int playGame(String fen, boolean dynamicWhite, int baseMs, int incMs) throws ChessParseError {
+        Position pos = TextIO.readFEN(fen);
+        TranspositionTable wTT = new TranspositionTable(HASH_LOG2_SIZE);
+        TranspositionTable bTT = new TranspositionTable(HASH_LOG2_SIZE);
+        Evaluate wEval = new Evaluate();
+        Evaluate bEval = new Evaluate();
+        long[] clock = { baseMs, baseMs };  // Remaining time for white and black
+        long[] posHashList = new long[MAX_PLIES + 200];
+        int posHashListSize = 0;
+        MoveGen moveGen = new MoveGen();
+        UndoInfo ui = new UndoInfo();
+        int lastScore = 0;   // Previous search score, from white's point of view
+        for (int ply = 0; ply < MAX_PLIES; ply++) {
+            MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
+            MoveGen.removeIllegal(pos, moves);
+            if (moves.size == 0) {
+                if (!MoveGen.inCheck(pos))
+                    return 0;
+                return pos.whiteMove ? -1 : 1;
+            }
+            if (Search.canClaimDraw50(pos) ||
+                Search.canClaimDrawRep(pos, posHashList, posHashListSize, posHashListSize) ||
+                EvalMatch.insufficientMaterial(pos))
+                return 0;
+            int side = pos.whiteMove ? 0 : 1;
+            boolean dynamic = pos.whiteMove == dynamicWhite;
+            int time = (int)clock[side];
+            int minTime = Math.max(time / 40 + incMs * 3 / 4, 1);
+            int maxTime = Math.max(Math.min(minTime * 4, time / 3), minTime);
+            Search sc = new Search(pos, posHashList, posHashListSize,
+                                   pos.whiteMove ? wTT : bTT, pos.whiteMove ? wEval : bEval);
+            sc.setDynamicTime(dynamic);
+            sc.timeLimit(minTime, maxTime);
+            long t0 = System.currentTimeMillis();
+            Move m = sc.iterativeDeepening(moves, -1, -1, false);
+            long t = System.currentTimeMillis() - t0;
+            timeUsed[dynamic ? 0 : 1] += t;
+            movesMade[dynamic ? 0 : 1]++;
+            clock[side] -= t;
+            if (clock[side] < 0)
+                return pos.whiteMove ? -1 : 1;
+            clock[side] += incMs;
+            int score = pos.whiteMove ? m.score : -m.score;
+            if ((Math.abs(score) >= ADJUDICATE_SCORE) && (Math.abs(lastScore) >= ADJUDICATE_SCORE) &&
+                ((score > 0) == (lastScore > 0)))
+                return (score > 0) ? 1 : -1;
+            lastScore = score;
+            posHashList[posHashListSize++] = pos.zobristHash();
+            pos.makeMove(m, ui);
+        }
+        return 0;
+    }
+
+    public static void main(String[] args) throws ChessParseError {
+        int baseMs = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        int incMs = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+        int wins = 0, draws = 0, losses = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String fen : Bench.FENS) {
+                for (int c = 0; c < 2; c++) {
+                    boolean dynamicWhite = c == 0;
+                    int result = playGame(fen, dynamicWhite, baseMs, incMs);
+                    if (!dynamicWhite)
+                        result = -result;
+                    if (result > 0) wins++; else if (result < 0) losses++; else draws++;
+                    System.out.printf("Dynamic %s: %s  (+%d =%d -%d)%n", dynamicWhite ? "white" : "black",
+                                      (result > 0) ? "win " : (result < 0) ? "loss" : "draw", wins, draws, losses);
+                }
+            }
+        }
+        int games = wins + draws + losses;
+        double score = (wins + 0.5 * draws) / games;
+        double clamped = Math.min(Math.max(score, 0.5 / games), 1 - 0.5 / games);
+        System.out.printf("%nDynamic vs fixed time, %d+%d ms: +%d =%d -%d  score %.1f%%  Elo %+.0f%n",
+                          baseMs, incMs, wins, draws, losses, score * 100, -400 * Math.log10(1 / clamped - 1));
+        System.out.printf("Average time per move: dynamic %d ms, fixed %d ms%n",
+                          timeUsed[0] / Math.max(movesMade[0], 1), timeUsed[1] / Math.max(movesMade[1], 1));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.petero.cuckoo.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.petero.cuckoo.engine.chess.BucketTranspositionTable;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.OffHeapTranspositionTable;
+import org.petero.cuckoo.engine.chess.PackedTranspositionTable;
+import org.petero.cuckoo.engine.chess.TranspositionTable;
+import org.petero.cuckoo.engine.chess.TranspositionTable.TTEntry;
+
+/**
+ * Transposition table probe and insert speed for each table implementation.
+ * The table is filled with random keys before measuring. Half of the probed
+ * keys are in the table, so both hits and misses are measured.
+ * @author petero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranspositionTableBenchmark {
+    private static final int NUM_KEYS = 1 << 16;
+
+    @Param({"object", "packed", "offheap", "bucket"})
+    public String type;
+
+    @Param({"20"})
+    public int log2Size;
+
+    private TranspositionTable tt;
+    private long[] keys;
+    private final Move move = new Move(12, 28, 0);
+    private final TTEntry ent = new TTEntry();
+    private int idx;
+
+    @Setup
+    public void setup() {
+        tt = switch (type) {
+            case "object" -> new TranspositionTable(log2Size);
+            case "packed" -> new PackedTranspositionTable(log2Size);
+            case "offheap" -> new OffHeapTranspositionTable(log2Size);
+            case "bucket" -> new BucketTranspositionTable(log2Size);
+            default -> throw new IllegalArgumentException(type);
+        };
+        Random rnd = new Random(1);
+        for (int i = 0; i < (1 << log2Size); i++)
+            tt.insert(rnd.nextLong(), move, TTEntry.T_EXACT, 0, rnd.nextInt(20), 0);
+        keys = new long[NUM_KEYS];
+        for (int i = 0; i < NUM_KEYS; i += 2) {
+            keys[i] = rnd.nextLong();
+            keys[i + 1] = rnd.nextLong();
+            tt.insert(keys[i], move, TTEntry.T_EXACT, 0, 100, 0);
+        }
+    }
+
+    @Benchmark
+    public int probe() {
+        idx = (idx + 1) & (NUM_KEYS - 1);
+        tt.probe(keys[idx], ent);
+        return ent.type;
+    }
+
+    @Benchmark
+    public void insert() {
+        idx = (idx + 1) & (NUM_KEYS - 1);
+        tt.insert(keys[idx], move, TTEntry.T_GE, 0, idx & 15, 0);
+    }
+}
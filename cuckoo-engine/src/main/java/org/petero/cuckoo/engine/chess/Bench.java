@@ -0,0 +1,92 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.io.PrintStream;
+
+/**
+ * Searches a fixed set of positions to a fixed depth and reports the total
+ * number of searched nodes and the search speed.
+ * <p>
+ * Each position is searched by one thread with an empty transposition table,
+ * so the node count only depends on the engine code. A changed node count
+ * means that the search or evaluation has changed.
+ * @author petero
+ */
+public class Bench {
+    public static final int DEFAULT_DEPTH = 10;
+    private static final int HASH_LOG2_SIZE = 20;
+    private static final long RANDOM_SEED = 0;
+
+    /** The benchmark positions. */
+    public static final String[] FENS = {
+        TextIO.START_POS_FEN,
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+        "r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2QK2R w KQ - 0 9",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "rnbqkb1r/pp1p1ppp/2p5/4P3/2B5/8/PPP1NnPP/RNBQK2R w KQkq - 0 6",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "r1bq2rk/pp3pbp/2p1p1pQ/7P/3P4/2PB1N2/PP3PPR/2KR4 w - - 0 1",
+        "2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "8/k7/3p4/p2P1p2/P2P1P2/8/8/K7 w - - 0 1",
+        "6k1/5p2/6p1/8/7p/8/6PP/6K1 b - - 0 1",
+    };
+
+    /**
+     * Search all benchmark positions to "depth" and print the number of nodes
+     * for each position, followed by the totals.
+     * @return The total number of searched nodes.
+     */
+    public static long run(int depth, PrintStream os) throws ChessParseError {
+        TranspositionTable tt = new TranspositionTable(HASH_LOG2_SIZE);
+        MoveGen moveGen = new MoveGen();
+        long totalNodes = 0;
+        long totalTime = 0;
+        for (int i = 0; i < FENS.length; i++) {
+            Position pos = TextIO.readFEN(FENS[i]);
+            tt.clear();
+            Search sc = new Search(pos, new long[200], 0, tt);
+            sc.setStrength(1000, RANDOM_SEED);
+            MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
+            MoveGen.removeIllegal(pos, moves);
+            long t0 = System.nanoTime();
+            sc.iterativeDeepening(moves, depth, -1, false);
+            totalTime += System.nanoTime() - t0;
+            long nodes = sc.getTotalNodes();
+            totalNodes += nodes;
+            os.printf("Position %2d/%d: %10d nodes  %s%n", i + 1, FENS.length, nodes, FENS[i]);
+        }
+        totalTime = Math.max(totalTime, 1);
+        os.printf("%nTotal time (ms) : %d%n", totalTime / 1000000);
+        os.printf("Nodes searched  : %d%n", totalNodes);
+        os.printf("Nodes/second    : %d%n", totalNodes * 1000000000 / totalTime);
+        return totalNodes;
+    }
+
+    /**
+     * Run the benchmark from the command line.
+     * Arguments: [depth]
+     */
+    public static void main(String[] args) throws ChessParseError {
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+        run(depth, System.out);
+    }
+}
@@ -18,103 +18,161 @@
 
 package org.petero.cuckoo.engine.chess;
 
-import java.io.BufferedReader;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.security.SecureRandom;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implements an opening book.
+ * <p>
+ * The book moves are looked up in a BookFile or a PolyglotBook. The built-in book is
+ * read from the book.cbk resource by a background thread, which is started when the
+ * first Book object is created. Until it has been read, getBookMove returns null, so
+ * that the caller searches instead of waiting. Other books are memory mapped.
  * @author petero
  */
 public class Book {
     public static class BookEntry {
         final Move move;
         int count;
+        int weight;     // Relative probability to play the move
         BookEntry(Move move) {
             this.move = move;
             count = 1;
         }
     }
-    private static Map<Long, List<BookEntry>> bookMap;
-    private static Random rndGen;
-    private static int numBookMoves = -1;
+    private static CompletableFuture<BookFile> defaultBook;
+    private static long defaultBookLoadTime;    // Milliseconds used to read the built-in book
+    private static final Random rndGen = new SecureRandom();
     private final boolean verbose;
+    private BookFile bookFile;
+    private PolyglotBook polyglotBook;
+    private long loadTime;
 
+    /** Create a book using the built-in book, and start reading it if not already done. */
     public Book(boolean verbose) {
         this.verbose = verbose;
+        loadDefaultBook(verbose);
     }
 
-    private void initBook() {
-        if (numBookMoves >= 0)
-            return;
+    /**
+     * Create a book using the book file "fileName". Files with extension .bin are
+     * Polyglot books, other files must have been created by BookCompiler.
+     * @throws IOException If the file can not be read or is not a valid book file.
+     */
+    public Book(boolean verbose, String fileName) throws IOException {
+        this.verbose = verbose;
         long t0 = System.currentTimeMillis();
-        bookMap = new HashMap<>();
-        rndGen = new SecureRandom();
-        rndGen.setSeed(System.currentTimeMillis());
-        numBookMoves = 0;
-        try {
-            InputStream inStream = getClass().getResourceAsStream("/book.bin");
-            List<Byte> buf = new ArrayList<>(8192);
-            byte[] tmpBuf = new byte[1024];
-            while (true) {
-                assert inStream != null;
-                int len = inStream.read(tmpBuf);
-                if (len <= 0) break;
-                for (int i = 0; i < len; i++)
-                    buf.add(tmpBuf[i]);
-            }
-            inStream.close();
-            Position startPos = TextIO.readFEN(TextIO.START_POS_FEN);
-            Position pos = new Position(startPos);
-            UndoInfo ui = new UndoInfo();
-            int len = buf.size();
-            for (int i = 0; i < len; i += 2) {
-                int b0 = buf.get(i); if (b0 < 0) b0 += 256;
-                int b1 = buf.get(i+1); if (b1 < 0) b1 += 256;
-                int move = (b0 << 8) + b1;
-                if (move == 0) {
-                    pos = new Position(startPos);
-                } else {
-                    boolean bad = ((move >> 15) & 1) != 0;
-                    int prom = (move >> 12) & 7;
-                    Move m = new Move(move & 63, (move >> 6) & 63,
-                                      promToPiece(prom, pos.whiteMove));
-                    if (!bad)
-                        addToBook(pos, m);
-                    pos.makeMove(m, ui);
-                }
-            }
-        } catch (ChessParseError ex) {
-            throw new RuntimeException();
+        if (fileName.toLowerCase().endsWith(".bin"))
+            polyglotBook = PolyglotBook.open(fileName);
+        else
+            bookFile = BookFile.open(fileName);
+        loadTime = System.currentTimeMillis() - t0;
+    }
+
+    private static synchronized CompletableFuture<BookFile> loadDefaultBook(boolean verbose) {
+        if (defaultBook == null)
+            defaultBook = CompletableFuture.supplyAsync(() -> readDefaultBook(verbose));
+        return defaultBook;
+    }
+
+    private static BookFile readDefaultBook(boolean verbose) {
+        long t0 = System.currentTimeMillis();
+        BookFile bf;
+        try (InputStream inStream = Book.class.getResourceAsStream("/book.cbk")) {
+            if (inStream == null)
+                throw new IOException("Resource not found");
+            bf = BookFile.read(inStream);
         } catch (IOException ex) {
-            System.out.println("Can't read opening book resource");
-            throw new RuntimeException();
+            throw new RuntimeException("Can't read opening book resource", ex);
         }
+        defaultBookLoadTime = System.currentTimeMillis() - t0;
+        if (verbose)
+            System.out.printf("Book moves:%d (parse time:%.3f)%n", bf.size(),
+                              defaultBookLoadTime / 1000.0);
+        return bf;
     }
 
-    /** Add a move to a position in the opening book. */
-    private void addToBook(Position pos, Move moveToAdd) {
-        List<BookEntry> ent = bookMap.computeIfAbsent(pos.zobristHash(), k -> new ArrayList<>());
-        for (BookEntry be : ent) {
-            if (be.move.equals(moveToAdd)) {
-                be.count++;
-                return;
-            }
+    /**
+     * Return the book file, or null if the built-in book has not been read yet.
+     * @param wait If true, wait for the built-in book to be read.
+     */
+    private BookFile getBookFile(boolean wait) {
+        if (bookFile == null) {
+            CompletableFuture<BookFile> f = loadDefaultBook(verbose);
+            bookFile = wait ? f.join() : f.getNow(null);
+            if (bookFile != null)
+                loadTime = defaultBookLoadTime;
         }
-        BookEntry be = new BookEntry(moveToAdd);
-        ent.add(be);
-        numBookMoves++;
+        return bookFile;
     }
 
-    /** Return a random book move for a position, or null if out of book. */
+    /** Return true if the book can be used without waiting for it to be read. */
+    public final boolean isLoaded() {
+        return (polyglotBook != null) || (getBookFile(false) != null);
+    }
+
+    /** Wait until the book has been read. */
+    public final void waitForLoad() {
+        if (polyglotBook == null)
+            getBookFile(true);
+    }
+
+    /** Return the time in milliseconds it took to read or map the book, or -1 if not loaded yet. */
+    public final long getLoadTime() {
+        return isLoaded() ? loadTime : -1;
+    }
+
+    /** Return the book moves for a position, or null if out of book. */
+    private List<BookEntry> getBookEntries(Position pos, boolean wait) {
+        if (polyglotBook != null)
+            return getPolyglotEntries(pos);
+        BookFile bf = getBookFile(wait);
+        if (bf == null)
+            return null;
+        long key = pos.zobristHash();
+        int idx = bf.find(key);
+        if (idx < 0)
+            return null;
+        List<BookEntry> ret = new ArrayList<>();
+        for (; (idx < bf.size()) && (bf.getKey(idx) == key); idx++) {
+            int move = bf.getMove(idx);
+            int prom = (move >> 12) & 7;
+            BookEntry be = new BookEntry(new Move(move & 63, (move >> 6) & 63,
+                                                  promToPiece(prom, pos.whiteMove)));
+            be.count = bf.getCount(idx);
+            be.weight = getWeight(be.count);
+            ret.add(be);
+        }
+        return ret;
+    }
+
+    /** Return the Polyglot book moves for a position, or null if out of book. */
+    private List<BookEntry> getPolyglotEntries(Position pos) {
+        PolyglotBook pb = polyglotBook;
+        long key = PolyglotBook.hashKey(pos);
+        int idx = pb.find(key);
+        if (idx < 0)
+            return null;
+        List<BookEntry> ret = new ArrayList<>();
+        for (; (idx < pb.size()) && (pb.getKey(idx) == key); idx++) {
+            BookEntry be = new BookEntry(PolyglotBook.decodeMove(pos, pb.getMove(idx)));
+            be.count = be.weight = pb.getWeight(idx);
+            ret.add(be);
+        }
+        return ret;
+    }
+
+    /**
+     * Return a random book move for a position, or null if out of book or if the
+     * built-in book has not been read yet.
+     */
     public final Move getBookMove(Position pos) {
-        initBook();
-        List<BookEntry> bookMoves = bookMap.get(pos.zobristHash());
+        List<BookEntry> bookMoves = getBookEntries(pos, false);
         if (bookMoves == null) {
             return null;
         }
@@ -133,7 +191,7 @@ public class Book {
                 // If an illegal move was found, it means there was a hash collision.
                 return null;
             }
-            sum += getWeight(be.count);
+            sum += be.weight;
         }
         if (sum <= 0) {
             return null;
@@ -141,7 +199,7 @@ public class Book {
         int rnd = rndGen.nextInt(sum);
         sum = 0;
         for (BookEntry bookMove : bookMoves) {
-            sum += getWeight(bookMove.count);
+            sum += bookMove.weight;
             if (rnd < sum) {
                 return bookMove.move;
             }
@@ -150,16 +208,15 @@ public class Book {
         throw new RuntimeException();
     }
 
-    private int getWeight(int count) {
+    private static int getWeight(int count) {
         double tmp = Math.sqrt(count);
         return (int)(tmp * Math.sqrt(tmp) * 100 + 1);
     }
 
-    /** Return a string describing all book moves. */
+    /** Return a string describing all book moves. Waits for the book to be read if needed. */
     public final String getAllBookMoves(Position pos) {
-        initBook();
         StringBuilder ret = new StringBuilder();
-        List<BookEntry> bookMoves = bookMap.get(pos.zobristHash());
+        List<BookEntry> bookMoves = getBookEntries(pos, true);
         if (bookMoves != null) {
             for (BookEntry be : bookMoves) {
                 String moveStr = TextIO.moveToString(pos, be.move, false);
@@ -172,74 +229,7 @@ public class Book {
         return ret.toString();
     }
 
-    /** Creates the book.bin file. */
-    public static void main(String[] args) {
-        List<Byte> binBook = createBinBook();
-    try (FileOutputStream out = new FileOutputStream("../src/book.bin")) {
-      int bookLen = binBook.size();
-      byte[] binBookA = new byte[bookLen];
-      for (int i = 0; i < bookLen; i++) binBookA[i] = binBook.get(i);
-      out.write(binBookA);
-    } catch (IOException e) {
-        e.printStackTrace();
-    }
-  }
-
-  public static List<Byte> createBinBook() {
-        List<Byte> binBook = new ArrayList<>(0);
-        try {
-            InputStream inStream = Object.class.getResourceAsStream("/book.txt");
-            assert inStream != null;
-            InputStreamReader inFile = new InputStreamReader(inStream);
-            BufferedReader inBuf = new BufferedReader(inFile);
-            LineNumberReader lnr = new LineNumberReader(inBuf);
-            String line;
-            while ((line = lnr.readLine()) != null) {
-            if (line.startsWith("#") || (line.isEmpty())) {
-                    continue;
-                }
-                if (!addBookLine(line, binBook)) {
-                    System.out.printf("Book parse error, line:%d\n", lnr.getLineNumber());
-                    throw new RuntimeException();
-                }
-            }
-            lnr.close();
-        } catch (ChessParseError ex) {
-            throw new RuntimeException();
-        } catch (IOException ex) {
-            System.out.println("Can't read opening book resource");
-            throw new RuntimeException();
-        }
-        return binBook;
-    }
-
-    /** Add a sequence of moves, starting from the initial position, to the binary opening book. */
-    private static boolean addBookLine(String line, List<Byte> binBook) throws ChessParseError {
-        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
-        UndoInfo ui = new UndoInfo();
-        String[] strMoves = line.split(" ");
-        for (String strMove : strMoves) {
-            int bad = 0;
-            if (strMove.endsWith("?")) {
-                strMove = strMove.substring(0, strMove.length() - 1);
-                bad = 1;
-            }
-            Optional<Move> m = TextIO.stringToMove(pos, strMove);
-            if (m.isEmpty()) {
-                return false;
-            }
-            int prom = pieceToProm(m.get().promoteTo);
-            int val = m.get().from + (m.get().to << 6) + (prom << 12) + (bad << 15);
-            binBook.add((byte)(val >> 8));
-            binBook.add((byte)(val & 255));
-            pos.makeMove(m.get(), ui);
-        }
-        binBook.add((byte)0);
-        binBook.add((byte)0);
-        return true;
-    }
-
-    private static int pieceToProm(int p) {
+    static int pieceToProm(int p) {
         return switch (p) {
             case Piece.WQUEEN, Piece.BQUEEN -> 1;
             case Piece.WROOK, Piece.BROOK -> 2;
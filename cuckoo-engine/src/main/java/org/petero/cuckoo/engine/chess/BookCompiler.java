@@ -0,0 +1,140 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.petero.cuckoo.engine.chess.Book.BookEntry;
+
+/**
+ * Compiles a text opening book to the sorted binary format read by BookFile.
+ * <p>
+ * Each line in the text book is a sequence of moves from the initial position.
+ * A move followed by "?" is played, but not added to the book. Lines starting
+ * with "#" are comments.
+ * @author petero
+ */
+public class BookCompiler {
+    private final Map<Long, List<BookEntry>> bookMap = new HashMap<>();
+    private long numMoves = 0;
+
+    /**
+     * Add a sequence of moves, starting from the initial position, to the book.
+     * @return False if the line contains an invalid move.
+     */
+    public final boolean addLine(String line) throws ChessParseError {
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        UndoInfo ui = new UndoInfo();
+        for (String strMove : line.trim().split("\\s+")) {
+            boolean bad = strMove.endsWith("?");
+            if (bad)
+                strMove = strMove.substring(0, strMove.length() - 1);
+            Optional<Move> m = TextIO.stringToMove(pos, strMove);
+            if (m.isEmpty())
+                return false;
+            if (!bad)
+                addToBook(pos, m.get());
+            pos.makeMove(m.get(), ui);
+        }
+        return true;
+    }
+
+    /** Add a move to a position in the opening book. */
+    private void addToBook(Position pos, Move moveToAdd) {
+        List<BookEntry> ent = bookMap.computeIfAbsent(pos.zobristHash(), k -> new ArrayList<>(1));
+        for (BookEntry be : ent) {
+            if (be.move.equals(moveToAdd)) {
+                be.count++;
+                return;
+            }
+        }
+        ent.add(new BookEntry(moveToAdd));
+        numMoves++;
+    }
+
+    /** Return the number of different book moves. */
+    public final long numMoves() {
+        return numMoves;
+    }
+
+    /** Write the book in BookFile format. Counts larger than 65535 are truncated. */
+    public final void write(OutputStream os) throws IOException {
+        long[] keys = new long[bookMap.size()];
+        int i = 0;
+        for (long key : bookMap.keySet())
+            keys[i++] = key;
+        Arrays.sort(keys);
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os, 65536));
+        dos.writeInt(BookFile.MAGIC);
+        dos.writeInt(BookFile.VERSION);
+        dos.writeLong(numMoves);
+        for (long key : keys) {
+            for (BookEntry be : bookMap.get(key)) {
+                dos.writeLong(key);
+                dos.writeShort(be.move.from + (be.move.to << 6) + (Book.pieceToProm(be.move.promoteTo) << 12));
+                dos.writeShort(Math.min(be.count, 0xffff));
+            }
+        }
+        dos.flush();
+    }
+
+    /**
+     * Compile a book from the command line.
+     * Arguments: input.txt output.cbk
+     */
+    public static void main(String[] args) throws IOException, ChessParseError {
+        if (args.length != 2) {
+            System.out.print("Usage: bookcompiler input.txt output.cbk\n");
+            System.exit(1);
+        }
+        long t0 = System.currentTimeMillis();
+        BookCompiler bc = new BookCompiler();
+        try (BufferedReader r = Files.newBufferedReader(Paths.get(args[0]))) {
+            int lineNo = 0;
+            String line;
+            while ((line = r.readLine()) != null) {
+                lineNo++;
+                if (line.startsWith("#") || line.isBlank())
+                    continue;
+                if (!bc.addLine(line)) {
+                    System.out.printf("Book parse error, line:%d%n", lineNo);
+                    System.exit(1);
+                }
+            }
+        }
+        try (OutputStream os = Files.newOutputStream(Paths.get(args[1]))) {
+            bc.write(os);
+        }
+        System.out.printf("Book moves:%d positions:%d time:%.3f s%n", bc.numMoves(), bc.bookMap.size(),
+                          (System.currentTimeMillis() - t0) * 1e-3);
+    }
+}
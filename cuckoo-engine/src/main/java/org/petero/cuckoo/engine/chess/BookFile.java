@@ -0,0 +1,106 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An opening book stored as a sorted array of fixed size entries.
+ * <p>
+ * The file starts with a 16 byte header, followed by one 12 byte entry for each
+ * book move: the Position.zobristHash() of the position, the move, and the number
+ * of times the move occurs in the book source. The entries are sorted by hash key,
+ * so the moves for a position are found by binary search directly in a memory
+ * mapped file, without reading the book into the Java heap. All values are stored
+ * in big-endian order. Book files are created by BookCompiler, and must be
+ * recompiled if the zobrist hash keys change.
+ * @author petero
+ */
+public final class BookFile {
+    static final int MAGIC = 0x4355424b;    // "CUBK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 12;
+
+    private final ByteBuffer buf;
+    private final int numEntries;
+
+    private BookFile(ByteBuffer buf) throws IOException {
+        if ((buf.capacity() < HEADER_SIZE) || (buf.getInt(0) != MAGIC) || (buf.getInt(4) != VERSION))
+            throw new IOException("Not a book file");
+        long n = buf.getLong(8);
+        if ((n < 0) || (HEADER_SIZE + n * ENTRY_SIZE != buf.capacity()))
+            throw new IOException("Book file has wrong size");
+        this.buf = buf;
+        this.numEntries = (int)n;
+    }
+
+    /**
+     * Map the book file "fileName" into memory.
+     * @throws IOException If the file can not be read or is not a valid book file.
+     */
+    public static BookFile open(String fileName) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE)
+                throw new IOException("Book file too large");
+            return new BookFile(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /** Read a book file from a stream into the Java heap. Used for the built-in book. */
+    public static BookFile read(InputStream is) throws IOException {
+        return new BookFile(ByteBuffer.wrap(is.readAllBytes()));
+    }
+
+    /** Return the number of entries. */
+    public final int size() {
+        return numEntries;
+    }
+
+    final long getKey(int idx) {
+        return buf.getLong(HEADER_SIZE + idx * ENTRY_SIZE);
+    }
+
+    /** Return the move for entry "idx", encoded as from + (to << 6) + (prom << 12). */
+    final int getMove(int idx) {
+        return buf.getShort(HEADER_SIZE + idx * ENTRY_SIZE + 8) & 0xffff;
+    }
+
+    final int getCount(int idx) {
+        return buf.getShort(HEADER_SIZE + idx * ENTRY_SIZE + 10) & 0xffff;
+    }
+
+    /** Return the index of the first entry for "key", or -1 if there is no such entry. */
+    final int find(long key) {
+        int lo = 0, hi = numEntries;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getKey(mid) < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return ((lo < numEntries) && (getKey(lo) == key)) ? lo : -1;
+    }
+}
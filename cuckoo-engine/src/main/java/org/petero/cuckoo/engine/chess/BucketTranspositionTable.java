@@ -0,0 +1,87 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An off-heap transposition table where a position can be stored in any of the
+ * four entries of one 64 byte bucket, instead of in one of two cuckoo hash slots.
+ * A probe therefore only reads one cache line. When no entry in the bucket has the
+ * same key, the least valuable entry in the bucket is replaced, using the same
+ * generation/type/depth ordering as the cuckoo tables.
+ * @author petero
+ */
+public class BucketTranspositionTable extends OffHeapTranspositionTable {
+    static final int BUCKET_SIZE = 4;
+
+    /** Constructor. Creates an empty transposition table with 2^log2Size slots. */
+    public BucketTranspositionTable(int log2Size) {
+        super(Math.max(log2Size, 2));
+    }
+
+    /** Constructor. Creates a transposition table using already existing storage. */
+    BucketTranspositionTable(int log2Size, ByteBuffer[] chunks) {
+        super(log2Size, chunks);
+    }
+
+    private long bucket(long key) {
+        return key & mask & -BUCKET_SIZE;
+    }
+
+    @Override
+    public void insert(long key, Move sm, int type, int ply, int depth, int evalScore) {
+        if (depth < 0) depth = 0;
+        final int gen = generation;
+        final long b = bucket(key);
+        long idx = b;
+        long d = dataAt(b);
+        long k = keyAt(b) ^ d;
+        for (int i = 1; (i < BUCKET_SIZE) && (k != key); i++) {
+            long d2 = dataAt(b + i);
+            long k2 = keyAt(b + i) ^ d2;
+            if ((k2 == key) || betterThan(d, d2, gen)) {
+                idx = b + i;
+                d = d2;
+                k = k2;
+            }
+        }
+        storeEntry(idx, k, d, key, sm, type, ply, depth, evalScore);
+    }
+
+    @Override
+    public void probe(long key, TTEntry result) {
+        final long b = bucket(key);
+        for (int i = 0; i < BUCKET_SIZE; i++) {
+            long idx = b + i;
+            long d = dataAt(idx);
+            if ((keyAt(idx) ^ d) == key) {
+                if (!isCurrent(d, generation)) {
+                    d = setGeneration(d, generation);
+                    store(idx, key, d);
+                }
+                unpack(key, d, 0, result);
+                if (stats != null) stats.probe(result);
+                return;
+            }
+        }
+        result.type = TTEntry.T_EMPTY;
+        if (stats != null) stats.probe(result);
+    }
+}
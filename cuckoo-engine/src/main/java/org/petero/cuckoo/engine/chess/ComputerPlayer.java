@@ -36,6 +36,7 @@ public class ComputerPlayer implements Player {
     final int maxNodes;
     public boolean verbose;
     TranspositionTable tt;
+    final Evaluate eval;
     final Book book;
     boolean bookEnabled;
     boolean randomMode; // TODO remove this field
@@ -48,6 +49,7 @@ public class ComputerPlayer implements Player {
         maxNodes = -1;
         verbose = true;
         setTTLogSize(15);
+        eval = new Evaluate();
         book = new Book(verbose);
         bookEnabled = true;
         randomMode = false;
@@ -71,7 +73,7 @@ public class ComputerPlayer implements Player {
             posHashList[posHashListSize++] = p.zobristHash();
         }
         tt.nextGeneration();
-        Search sc = new Search(pos, posHashList, posHashListSize, tt);
+        Search sc = new Search(pos, posHashList, posHashListSize, tt, eval);
 
         // Determine all legal moves
         MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
@@ -176,7 +178,7 @@ public class ComputerPlayer implements Player {
         // Create a search object
         long[] posHashList = new long[200];
         tt.nextGeneration();
-        Search sc = new Search(pos, posHashList, 0, tt);
+        Search sc = new Search(pos, posHashList, 0, tt, eval);
         
         // Determine all legal moves
         MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
@@ -26,7 +26,7 @@ import java.io.InputStream;
  * 
  * @author petero
  */
-public class Evaluate {
+public class Evaluate implements Evaluator {
     static final int pV =   92 + Parameters.instance().getIntPar("pV");
     static final int nV =  385 + Parameters.instance().getIntPar("nV");
     static final int bV =  385 + Parameters.instance().getIntPar("bV");
@@ -153,31 +153,9 @@ public class Evaluate {
                                 -3,  2,  5,  5,  5,  5,  2, -3,
                                  0,  3,  5,  5,  5,  5,  3,  0 };
 
-    static final int[] kt1w, qt1w, rt1w, bt1w, nt1w, pt1w, kt2w, bt2w, nt2w, pt2w;
-    static {
-        kt1w = new int[64];
-        qt1w = new int[64];
-        rt1w = new int[64];
-        bt1w = new int[64];
-        nt1w = new int[64];
-        pt1w = new int[64];
-        kt2w = new int[64];
-        bt2w = new int[64];
-        nt2w = new int[64];
-        pt2w = new int[64];
-        for (int i = 0; i < 64; i++) {
-            kt1w[i] = kt1b[63-i];
-            qt1w[i] = qt1b[63-i];
-            rt1w[i] = rt1b[63-i];
-            bt1w[i] = bt1b[63-i];
-            nt1w[i] = nt1b[63-i];
-            pt1w[i] = pt1b[63-i];
-            kt2w[i] = kt2b[63-i];
-            bt2w[i] = bt2b[63-i];
-            nt2w[i] = nt2b[63-i];
-            pt2w[i] = pt2b[63-i];
-        }
-    }
+    static final int[] kt1w = new int[64], qt1w = new int[64], rt1w = new int[64], bt1w = new int[64],
+                       nt1w = new int[64], pt1w = new int[64], kt2w = new int[64], bt2w = new int[64],
+                       nt2w = new int[64], pt2w = new int[64];
 
     private static final int[] empty = { 0,0,0,0,0,0,0,0, 0,0,0,0,0,0,0,0,
                                          0,0,0,0,0,0,0,0, 0,0,0,0,0,0,0,0,
@@ -197,30 +175,154 @@ public class Evaluate {
                                         { 6, 7, 6, 5, 4, 3, 2, 1 },
                                         { 7, 6, 5, 4, 3, 2, 1, 0 } };
 
+    private static final int[] ppBonus = {-1,24,26,30,36,47,64,-1};
+
     static final int[] rookMobScore = {-10,-7,-4,-1,2,5,7,9,11,12,13,14,14,14,14};
     static final int[] bishMobScore = {-15,-10,-6,-2,2,6,10,13,16,18,20,22,23,24};
     static final int[] queenMobScore = {-5,-4,-3,-2,-1,0,1,2,3,4,5,6,7,8,9,9,10,10,10,10,10,10,10,10,10,10,10,10};
 
-    private static final class PawnHashData {
-        long key;
-        int score;         // Positive score means good for white
-        short passedBonusW;
-        short passedBonusB;
-        long passedPawnsW;     // The most advanced passed pawns for each file
-        long passedPawnsB;
-    }
-    static final PawnHashData[] pawnHash;
+    // Indices in the weights table
+    private static final int DOUBLED_PAWN        =  0;
+    private static final int PAWN_ISLAND         =  1;
+    private static final int ISOLATED_PAWN       =  2;
+    private static final int BACKWARD_PAWN       =  3;
+    private static final int GUARDED_PASSED_PAWN =  4;
+    private static final int PASSED_KING_DIST    =  5;
+    private static final int UNSTOPPABLE_PAWN    =  6;
+    private static final int TRADE_BONUS         =  7;
+    private static final int ROOK_OPEN_FILE      =  8;
+    private static final int ROOK_HALF_OPEN_FILE =  9;
+    private static final int ROOKS_ON_7TH        = 10;
+    private static final int BISHOP_PAIR         = 11;
+    private static final int BISHOP_PAIR_PAWN    = 12;
+    private static final int KING_ROOK_TRAPPED   = 13;
+    private static final int KING_ATTACK         = 14;
+    private static final int KING_SHELTER        = 15;
+    private static final int KING_OPEN_FILE      = 16;
+    private static final int KING_OPEN_CENTER    = 17;
+
+    /** Scalar evaluation weights, indexed by the constants above. */
+    private static final int[] weights = { 25, 15, 15, 15, 15, 4, 500, 30, 25, 12,
+                                           20, 28, 3, 90, 4, 15, 25, 10 };
+
     static {
-        final int numEntries = 1<<16;
-        pawnHash = new PawnHashData[numEntries];
-        for (int i = 0; i < numEntries; i++) {
-            PawnHashData phd = new PawnHashData();
-            phd.key = -1; // Non-zero to avoid collision for positions with no pawns
-            phd.score = 0;
-            pawnHash[i] = phd;
+        // Make the tables and weights tunable. Pawns can not be on the first and last rows.
+        final int min = -1000, max = 1000;
+        Parameters par = Parameters.instance();
+        par.addTable("kt1b", kt1b, 0, 63, min, max);
+        par.addTable("kt2b", kt2b, 0, 63, min, max);
+        par.addTable("pt1b", pt1b, 8, 55, min, max);
+        par.addTable("pt2b", pt2b, 8, 55, min, max);
+        par.addTable("nt1b", nt1b, 0, 63, min, max);
+        par.addTable("nt2b", nt2b, 0, 63, min, max);
+        par.addTable("bt1b", bt1b, 0, 63, min, max);
+        par.addTable("bt2b", bt2b, 0, 63, min, max);
+        par.addTable("qt1b", qt1b, 0, 63, min, max);
+        par.addTable("rt1b", rt1b, 0, 63, min, max);
+        par.addTable("ppBonus", ppBonus, 1, 6, min, max);
+        par.addTable("rookMobScore", rookMobScore, 0, rookMobScore.length - 1, min, max);
+        par.addTable("bishMobScore", bishMobScore, 0, bishMobScore.length - 1, min, max);
+        par.addTable("queenMobScore", queenMobScore, 0, queenMobScore.length - 1, min, max);
+        par.addTableElement("doubledPawn", weights, DOUBLED_PAWN, min, max);
+        par.addTableElement("pawnIsland", weights, PAWN_ISLAND, min, max);
+        par.addTableElement("isolatedPawn", weights, ISOLATED_PAWN, min, max);
+        par.addTableElement("backwardPawn", weights, BACKWARD_PAWN, min, max);
+        par.addTableElement("guardedPassedPawn", weights, GUARDED_PASSED_PAWN, min, max);
+        par.addTableElement("passedKingDist", weights, PASSED_KING_DIST, min, max);
+        par.addTableElement("unstoppablePawn", weights, UNSTOPPABLE_PAWN, min, max);
+        par.addTableElement("tradeBonus", weights, TRADE_BONUS, min, max);
+        par.addTableElement("rookOpenFile", weights, ROOK_OPEN_FILE, min, max);
+        par.addTableElement("rookHalfOpenFile", weights, ROOK_HALF_OPEN_FILE, min, max);
+        par.addTableElement("rooksOn7th", weights, ROOKS_ON_7TH, min, max);
+        par.addTableElement("bishopPair", weights, BISHOP_PAIR, min, max);
+        par.addTableElement("bishopPairPawn", weights, BISHOP_PAIR_PAWN, min, max);
+        par.addTableElement("kingRookTrapped", weights, KING_ROOK_TRAPPED, min, max);
+        par.addTableElement("kingAttack", weights, KING_ATTACK, min, max);
+        par.addTableElement("kingShelter", weights, KING_SHELTER, min, max);
+        par.addTableElement("kingOpenFile", weights, KING_OPEN_FILE, min, max);
+        par.addTableElement("kingOpenCenterFile", weights, KING_OPEN_CENTER, min, max);
+        updateTables();
+    }
+
+    /**
+     * Recompute the tables that are derived from the tunable tables. Must be called
+     * after changing evaluation parameters. The piece/square scores in Position objects
+     * that were set up before the change are not updated, see Position.updatePsScores().
+     */
+    public static void updateTables() {
+        for (int i = 0; i < 64; i++) {
+            kt1w[i] = kt1b[63-i];
+            qt1w[i] = qt1b[63-i];
+            rt1w[i] = rt1b[63-i];
+            bt1w[i] = bt1b[63-i];
+            nt1w[i] = nt1b[63-i];
+            pt1w[i] = pt1b[63-i];
+            kt2w[i] = kt2b[63-i];
+            bt2w[i] = bt2b[63-i];
+            nt2w[i] = nt2b[63-i];
+            pt2w[i] = pt2b[63-i];
         }
     }
 
+    /**
+     * Pawn hash table. Each entry uses PAWN_ENTRY_SIZE longs: the pawn zobrist key,
+     * the score and passed pawn bonuses, and the white and black passed pawns.
+     */
+    private final long[] pawnHash;
+    private final int pawnHashMask;
+    static final int PAWN_ENTRY_SIZE = 4;
+    public static final int DEFAULT_PAWN_HASH_LOG2_SIZE = 16;
+
+    /** King safety hash table. Each entry uses two longs, the key and the score. */
+    private final long[] kingSafetyHash;
+    private final int kingSafetyHashMask;
+    public static final int DEFAULT_KING_SAFETY_HASH_LOG2_SIZE = 15;
+
+    /**
+     * Evaluation cache. Each entry is one long, containing the upper 32 bits of the
+     * position hash key and the evalPos() score.
+     */
+    private final long[] evalHash;
+    private final int evalHashMask;
+    public static final int DEFAULT_EVAL_HASH_LOG2_SIZE = 16;
+
+    /**
+     * Largest expected difference between the final score and the score after the
+     * material, piece square, pawn, trade and castle terms.
+     */
+    static final int LAZY_MARGIN = 250;
+    private boolean lazyExit;   // True if the last evalPos() call returned a partial score
+    private boolean lazyEval = true;
+
+    /** Hash table usage statistics. */
+    static final public class HashStats {
+        public long pawnProbes;         // Number of pawn hash probes
+        public long pawnHits;           // Number of pawn hash probes that found an entry
+        public long kingSafetyProbes;   // Number of king safety hash probes
+        public long kingSafetyHits;     // Number of king safety hash probes that found an entry
+        public long evalProbes;         // Number of evaluation cache probes
+        public long evalHits;           // Number of evaluation cache probes that found an entry
+        public long lazyExits;          // Number of evaluations that returned early
+
+        /** Add the counters from "other" to this object. */
+        public void add(HashStats other) {
+            pawnProbes += other.pawnProbes;
+            pawnHits += other.pawnHits;
+            kingSafetyProbes += other.kingSafetyProbes;
+            kingSafetyHits += other.kingSafetyHits;
+            evalProbes += other.evalProbes;
+            evalHits += other.evalHits;
+            lazyExits += other.lazyExits;
+        }
+
+        /** Set all counters to zero. */
+        public void clear() {
+            pawnProbes = pawnHits = kingSafetyProbes = kingSafetyHits = 0;
+            evalProbes = evalHits = lazyExits = 0;
+        }
+    }
+    private final HashStats hashStats = new HashStats();
+
     static byte[] kpkTable = null;
     static byte[] krkpTable = null;
 
@@ -230,14 +332,58 @@ public class Evaluate {
     private long wAttacksBB, bAttacksBB;
     private long wPawnAttacks, bPawnAttacks; // Squares attacked by white/black pawns
 
-    /** Constructor. */
+    /** Constructor. Uses the default hash table sizes. */
     public Evaluate() {
+        this(DEFAULT_PAWN_HASH_LOG2_SIZE, DEFAULT_KING_SAFETY_HASH_LOG2_SIZE, DEFAULT_EVAL_HASH_LOG2_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param log2PawnHashSize       Log2 of the number of pawn hash entries. Each entry uses 32 bytes.
+     * @param log2KingSafetyHashSize Log2 of the number of king safety hash entries. Each entry uses 16 bytes.
+     * @param log2EvalHashSize       Log2 of the number of evaluation cache entries. Each entry uses 8 bytes.
+     */
+    public Evaluate(int log2PawnHashSize, int log2KingSafetyHashSize, int log2EvalHashSize) {
+        pawnHash = new long[PAWN_ENTRY_SIZE << log2PawnHashSize];
+        pawnHashMask = (1 << log2PawnHashSize) - 1;
+        kingSafetyHash = new long[2 << log2KingSafetyHashSize];
+        kingSafetyHashMask = (1 << log2KingSafetyHashSize) - 1;
+        evalHash = new long[1 << log2EvalHashSize];
+        evalHashMask = (1 << log2EvalHashSize) - 1;
+        // Non-zero keys to avoid collision for positions with no pawns
+        for (int i = 0; i < pawnHash.length; i += PAWN_ENTRY_SIZE)
+            pawnHash[i] = -1;
+        for (int i = 0; i < kingSafetyHash.length; i += 2)
+            kingSafetyHash[i] = -1;
         if (kpkTable == null)
             kpkTable = readTable("/kpk.bitbase");
         if (krkpTable == null)
             krkpTable = readTable("/krkp.winmasks");
     }
 
+    @Override
+    public Evaluator newInstance() {
+        return new Evaluate(pawnHashLog2Size(), kingSafetyHashLog2Size(), evalHashLog2Size());
+    }
+
+    final int pawnHashLog2Size() {
+        return Integer.numberOfTrailingZeros(pawnHashMask + 1);
+    }
+
+    final int kingSafetyHashLog2Size() {
+        return Integer.numberOfTrailingZeros(kingSafetyHashMask + 1);
+    }
+
+    final int evalHashLog2Size() {
+        return Integer.numberOfTrailingZeros(evalHashMask + 1);
+    }
+
+    /** Return the pawn, king safety and evaluation cache statistics for this object. */
+    @Override
+    public final HashStats getHashStats() {
+        return hashStats;
+    }
+
     private byte[] readTable(String resource) {
         byte[] table = new byte[2*32*64*48/8];
         InputStream inStream = getClass().getResourceAsStream(resource);
@@ -258,12 +404,61 @@ public class Evaluate {
     }
 
     /**
-     * Static evaluation of a position.
+     * Static evaluation of a position. Scores are cached, so evaluating a position
+     * again, for example after a transposition or a re-search, is cheap.
      * @param pos The position to evaluate.
      * @return The evaluation score, measured in centipawns.
      *         Positive values are good for the side to make the next move.
      */
+    @Override
     final public int evalPos(Position pos) {
+        return evalPos(pos, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Static evaluation of a position, for a search that only needs to know the score
+     * if it is inside the (alpha,beta) window. If a partial score is more than
+     * LAZY_MARGIN outside the window, the remaining terms are not computed and the
+     * partial score is returned. Use lastEvalExact() to find out if the returned
+     * value is the real score.
+     */
+    @Override
+    final public int evalPos(Position pos, int alpha, int beta) {
+        lazyExit = false;
+        final long key = pos.zobristHash();
+        final int idx = (int)key & evalHashMask;
+        hashStats.evalProbes++;
+        final long ent = evalHash[idx];
+        if (((ent ^ key) & 0xffffffff00000000L) == 0) {
+            hashStats.evalHits++;
+            final int score = (int)ent;
+            assert score == computeEval(pos, Integer.MIN_VALUE, Integer.MAX_VALUE); // Cross-check cached score
+            return score;
+        }
+        final int score = computeEval(pos, alpha, beta);
+        if (lazyExit)
+            hashStats.lazyExits++;
+        else
+            evalHash[idx] = (key & 0xffffffff00000000L) | (score & 0xffffffffL);
+        return score;
+    }
+
+    /** Enable or disable returning early from evalPos(pos, alpha, beta). Enabled by default. */
+    final void setLazyEval(boolean lazy) {
+        lazyEval = lazy;
+    }
+
+    /** Return false if the last evalPos() call returned a partial score. */
+    @Override
+    public final boolean lastEvalExact() {
+        return !lazyExit;
+    }
+
+    /**
+     * Compute the static evaluation, without using the evaluation cache.
+     * Sets lazyExit and returns a partial score if the score is known to be outside (alpha,beta).
+     */
+    private int computeEval(Position pos, int alpha, int beta) {
         int score = pos.wMtrl - pos.bMtrl;
 
         wKingAttacks = bKingAttacks = 0;
@@ -283,6 +478,22 @@ public class Evaluate {
         score += tradeBonus(pos);
         score += castleBonus(pos);
 
+        // The remaining terms are small, except in end games and when the
+        // opposite colored bishops penalty can apply.
+        if (lazyEval && (pos.wMtrl + pos.bMtrl > 6 * rV) &&
+            ((Long.bitCount(pos.pieceTypeBB[Piece.WBISHOP]) != 1) ||
+             (Long.bitCount(pos.pieceTypeBB[Piece.BBISHOP]) != 1))) {
+            final int lazyScore = pos.whiteMove ? score : -score;
+            if (lazyScore + LAZY_MARGIN <= alpha) {
+                lazyExit = true;
+                return lazyScore;
+            }
+            if (lazyScore - LAZY_MARGIN >= beta) {
+                lazyExit = true;
+                return lazyScore;
+            }
+        }
+
         score += rookBonus(pos);
         score += bishopEval(pos, score);
         score += threatBonus(pos);
@@ -422,8 +633,8 @@ public class Evaluate {
         final int deltaScore = wM - bM;
 
         int pBonus = 0;
-        pBonus += interpolate((deltaScore > 0) ? wPawn : bPawn, 0, -30 * deltaScore / 100, 6 * pV, 0);
-        pBonus += interpolate((deltaScore > 0) ? bM : wM, 0, 30 * deltaScore / 100, qV + 2 * rV + 2 * bV + 2 * nV, 0);
+        pBonus += interpolate((deltaScore > 0) ? wPawn : bPawn, 0, -weights[TRADE_BONUS] * deltaScore / 100, 6 * pV, 0);
+        pBonus += interpolate((deltaScore > 0) ? bM : wM, 0, weights[TRADE_BONUS] * deltaScore / 100, qV + 2 * rV + 2 * bV + 2 * nV, 0);
 
         return pBonus;
     }
@@ -474,19 +685,25 @@ public class Evaluate {
 
     private int pawnBonus(Position pos) {
         long key = pos.pawnZobristHash();
-        PawnHashData phd = pawnHash[(int)key & (pawnHash.length - 1)];
-        if (phd.key != key)
-            computePawnHashData(pos, phd);
-        int score = phd.score;
+        final int idx = ((int)key & pawnHashMask) * PAWN_ENTRY_SIZE;
+        hashStats.pawnProbes++;
+        if (pawnHash[idx] != key)
+            computePawnHashData(pos, idx);
+        else
+            hashStats.pawnHits++;
+        final long scoreData = pawnHash[idx + 1];
+        int score = (int)scoreData;
+        final int passedBonusW = (short)(scoreData >>> 32);
+        final int passedBonusB = (short)(scoreData >>> 48);
 
         final int hiMtrl = qV + rV;
-        score += interpolate(pos.bMtrl - pos.bMtrlPawns, 0, 2 * phd.passedBonusW, hiMtrl, phd.passedBonusW);
-        score -= interpolate(pos.wMtrl - pos.wMtrlPawns, 0, 2 * phd.passedBonusB, hiMtrl, phd.passedBonusB);
+        score += interpolate(pos.bMtrl - pos.bMtrlPawns, 0, 2 * passedBonusW, hiMtrl, passedBonusW);
+        score -= interpolate(pos.wMtrl - pos.wMtrlPawns, 0, 2 * passedBonusB, hiMtrl, passedBonusB);
 
         // Passed pawns are more dangerous if enemy king is far away
         int mtrlNoPawns;
         final int highMtrl = qV + rV;
-        long m = phd.passedPawnsW;
+        long m = pawnHash[idx + 2];
         if (m != 0) {
             mtrlNoPawns = pos.bMtrl - pos.bMtrlPawns;
             if (mtrlNoPawns < highMtrl) {
@@ -501,18 +718,18 @@ public class Evaluate {
                     int kingDistX = Math.abs(kingX - x);
                     int kingDistY = Math.abs(kingY - 7);
                     int kingDist = Math.max(kingDistX, kingDistY);
-                    int kScore = kingDist * 4;
+                    int kScore = kingDist * weights[PASSED_KING_DIST];
                     if (kingDist > pawnDist) kScore += (kingDist - pawnDist) * (kingDist - pawnDist);
                     score += interpolate(mtrlNoPawns, 0, kScore, highMtrl, 0);
                     if (!pos.whiteMove)
                         kingDist--;
                     if ((pawnDist < kingDist) && (mtrlNoPawns == 0))
-                        score += 500; // King can't stop pawn
+                        score += weights[UNSTOPPABLE_PAWN]; // King can't stop pawn
                     m &= m-1;
                 }
             }
         }
-        m = phd.passedPawnsB;
+        m = pawnHash[idx + 3];
         if (m != 0) {
             mtrlNoPawns = pos.wMtrl - pos.wMtrlPawns;
             if (mtrlNoPawns < highMtrl) {
@@ -527,13 +744,13 @@ public class Evaluate {
                     int kingDistX = Math.abs(kingX - x);
                     int kingDistY = Math.abs(kingY);
                     int kingDist = Math.max(kingDistX, kingDistY);
-                    int kScore = kingDist * 4;
+                    int kScore = kingDist * weights[PASSED_KING_DIST];
                     if (kingDist > pawnDist) kScore += (kingDist - pawnDist) * (kingDist - pawnDist);
                     score -= interpolate(mtrlNoPawns, 0, kScore, highMtrl, 0);
                     if (pos.whiteMove)
                         kingDist--;
                     if ((pawnDist < kingDist) && (mtrlNoPawns == 0))
-                        score -= 500; // King can't stop pawn
+                        score -= weights[UNSTOPPABLE_PAWN]; // King can't stop pawn
                     m &= m-1;
                 }
             }
@@ -542,34 +759,30 @@ public class Evaluate {
         return score;
     }
 
-    private record PawnStats(long pawnFiles, int dbl, int islands, int isolated) {
-        private static PawnStats of(long pawns) {
-            long pawnFiles = BitBoard.southFill(pawns) & 0xff;
-            int dbl = Long.bitCount(pawns) - Long.bitCount(pawnFiles);
-            int islands = Long.bitCount(((~pawnFiles) >>> 1) & pawnFiles);
-            int isolated = Long.bitCount(~(pawnFiles<<1) & pawnFiles & ~(pawnFiles>>>1));
-            return new PawnStats(pawnFiles, dbl, islands, isolated);
-        }
-        private int score(PawnStats other) {
-            int score = 0;
-            score -= (dbl - other.dbl) * 25;
-            score -= (islands - other.islands) * 15;
-            score -= (isolated - other.isolated) * 15;
-            return score;
-        }
+    /** Return a bit mask of the files containing at least one pawn. */
+    private static long pawnFiles(long pawns) {
+        return BitBoard.southFill(pawns) & 0xff;
     }
 
-    /** Compute pawn hash data for pos. */
-    private void computePawnHashData(Position pos, PawnHashData ph) {
+    /** Return the double pawn, pawn island and isolated pawn penalty, as a negative score. */
+    private static int pawnStructureScore(long pawns, long pawnFiles) {
+        int dbl = Long.bitCount(pawns) - Long.bitCount(pawnFiles);
+        int islands = Long.bitCount(((~pawnFiles) >>> 1) & pawnFiles);
+        int isolated = Long.bitCount(~(pawnFiles<<1) & pawnFiles & ~(pawnFiles>>>1));
+        return -dbl * weights[DOUBLED_PAWN] - islands * weights[PAWN_ISLAND] - isolated * weights[ISOLATED_PAWN];
+    }
+
+    /** Compute pawn hash data for pos and store it in the pawn hash entry starting at "idx". */
+    private void computePawnHashData(Position pos, int idx) {
 
         // Evaluate double pawns and pawn islands
         long wPawns = pos.pieceTypeBB[Piece.WPAWN];
-        PawnStats wPawnStats = PawnStats.of(wPawns);
+        long wPawnFiles = pawnFiles(wPawns);
         
         long bPawns = pos.pieceTypeBB[Piece.BPAWN];
-        PawnStats bPawnStats = PawnStats.of(bPawns);
+        long bPawnFiles = pawnFiles(bPawns);
 
-        int score = wPawnStats.score(bPawnStats);
+        int score = pawnStructureScore(wPawns, wPawnFiles) - pawnStructureScore(bPawns, bPawnFiles);
 
         // Evaluate backward pawns, defined as a pawn that guards a friendly pawn,
         // can't be guarded by friendly pawns, can advance, but can't advance without
@@ -580,21 +793,20 @@ public class Evaluate {
                          ~BitBoard.northFill(wPawnAttacks);
         wBackward &= (((wPawns & BitBoard.MASK_B_TO_H_FILES) >>> 9) |
                       ((wPawns & BitBoard.MASK_A_TO_G_FILES) >>> 7));
-        wBackward &= ~BitBoard.northFill(bPawnStats.pawnFiles());
+        wBackward &= ~BitBoard.northFill(bPawnFiles);
         long bBackward = bPawns & ~((wPawns | bPawns) << 8) & (wPawnAttacks << 8) &
                          ~BitBoard.southFill(bPawnAttacks);
         bBackward &= (((bPawns & BitBoard.MASK_B_TO_H_FILES) << 7) |
                       ((bPawns & BitBoard.MASK_A_TO_G_FILES) << 9));
-        bBackward &= ~BitBoard.northFill(wPawnStats.pawnFiles());
-        score -= (Long.bitCount(wBackward) - Long.bitCount(bBackward)) * 15;
+        bBackward &= ~BitBoard.northFill(wPawnFiles);
+        score -= (Long.bitCount(wBackward) - Long.bitCount(bBackward)) * weights[BACKWARD_PAWN];
 
         // Evaluate passed pawn bonus, white
         long passedPawnsW = wPawns & ~BitBoard.southFill(bPawns | bPawnAttacks | (wPawns >>> 8));
-        final int[] ppBonus = {-1,24,26,30,36,47,64,-1};
         int passedBonusW = 0;
         if (passedPawnsW != 0) {
             long guardedPassedW = passedPawnsW & wPawnAttacks(wPawns);
-            passedBonusW += 15 * Long.bitCount(guardedPassedW);
+            passedBonusW += weights[GUARDED_PASSED_PAWN] * Long.bitCount(guardedPassedW);
             long m = passedPawnsW;
             while (m != 0) {
                 int sq = Long.numberOfTrailingZeros(m);
@@ -609,7 +821,7 @@ public class Evaluate {
         int passedBonusB = 0;
         if (passedPawnsB != 0) {
             long guardedPassedB = passedPawnsB & bPawnAttacks(bPawns);
-            passedBonusB += 15 * Long.bitCount(guardedPassedB);
+            passedBonusB += weights[GUARDED_PASSED_PAWN] * Long.bitCount(guardedPassedB);
             long m = passedPawnsB;
             while (m != 0) {
                 int sq = Long .numberOfTrailingZeros(m);
@@ -619,12 +831,10 @@ public class Evaluate {
             }
         }
 
-        ph.key = pos.pawnZobristHash();
-        ph.score = score;
-        ph.passedBonusW = (short)passedBonusW;
-        ph.passedBonusB = (short)passedBonusB;
-        ph.passedPawnsW = passedPawnsW;
-        ph.passedPawnsB = passedPawnsB;
+        pawnHash[idx] = pos.pawnZobristHash();
+        pawnHash[idx + 1] = (score & 0xffffffffL) | ((passedBonusW & 0xffffL) << 32) | ((long)passedBonusB << 48);
+        pawnHash[idx + 2] = passedPawnsW;
+        pawnHash[idx + 3] = passedPawnsB;
     }
 
     private static long bPawnAttacks(long bPawns) {
@@ -648,7 +858,7 @@ public class Evaluate {
             int sq = BitBoard.numberOfTrailingZeros(m);
             final int x = Position.getX(sq);
             if ((wPawns & BitBoard.MASK_FILE[x]) == 0) { // At least half-open file
-                score += (bPawns & BitBoard.MASK_FILE[x]) == 0 ? 25 : 12;
+                score += (bPawns & BitBoard.MASK_FILE[x]) == 0 ? weights[ROOK_OPEN_FILE] : weights[ROOK_HALF_OPEN_FILE];
             }
             long atk = BitBoard.rookAttacks(sq, occupied);
             wAttacksBB |= atk;
@@ -660,13 +870,13 @@ public class Evaluate {
         long r7 = pos.pieceTypeBB[Piece.WROOK] & 0x00ff000000000000L;
         if (((r7 & (r7 - 1)) != 0) &&
             ((pos.pieceTypeBB[Piece.BKING] & 0xff00000000000000L) != 0))
-            score += 20; // Two rooks on 7:th row
+            score += weights[ROOKS_ON_7TH]; // Two rooks on 7:th row
         m = pos.pieceTypeBB[Piece.BROOK];
         while (m != 0) {
             int sq = BitBoard.numberOfTrailingZeros(m);
             final int x = Position.getX(sq);
             if ((bPawns & BitBoard.MASK_FILE[x]) == 0) {
-                score -= (wPawns & BitBoard.MASK_FILE[x]) == 0 ? 25 : 12;
+                score -= (wPawns & BitBoard.MASK_FILE[x]) == 0 ? weights[ROOK_OPEN_FILE] : weights[ROOK_HALF_OPEN_FILE];
             }
             long atk = BitBoard.rookAttacks(sq, occupied);
             bAttacksBB |= atk;
@@ -678,7 +888,7 @@ public class Evaluate {
         r7 = pos.pieceTypeBB[Piece.BROOK] & 0xff00L;
         if (((r7 & (r7 - 1)) != 0) &&
             ((pos.pieceTypeBB[Piece.WKING] & 0xffL) != 0))
-          score -= 20; // Two rooks on 2:nd row
+          score -= weights[ROOKS_ON_7TH]; // Two rooks on 2:nd row
         return score;
     }
 
@@ -721,11 +931,11 @@ public class Evaluate {
         // Bishop pair bonus
         if (numWhite == 2) {
             final int numPawns = pos.wMtrlPawns / pV;
-            score += 28 + (8 - numPawns) * 3;
+            score += weights[BISHOP_PAIR] + (8 - numPawns) * weights[BISHOP_PAIR_PAWN];
         }
         if (numBlack == 2) {
             final int numPawns = pos.bMtrlPawns / pV;
-            score -= 28 + (8 - numPawns) * 3;
+            score -= weights[BISHOP_PAIR] + (8 - numPawns) * weights[BISHOP_PAIR_PAWN];
         }
     
         // FIXME!!! Bad bishop
@@ -822,13 +1032,13 @@ public class Evaluate {
                 ((pos.pieceTypeBB[Piece.WROOK] & 0xC0L) != 0) && // Rook on g1 or h1
                 ((pos.pieceTypeBB[Piece.WPAWN] & BitBoard.MASK_FILE[6]) != 0) &&
                 ((pos.pieceTypeBB[Piece.WPAWN] & BitBoard.MASK_FILE[7]) != 0)) {
-                score -= 6 * 15;
+                score -= weights[KING_ROOK_TRAPPED];
             } else
             if (((pos.pieceTypeBB[Piece.WKING] & 0x6L) != 0) && // King on b1 or c1
                 ((pos.pieceTypeBB[Piece.WROOK] & 0x3L) != 0) && // Rook on a1 or b1
                 ((pos.pieceTypeBB[Piece.WPAWN] & BitBoard.MASK_FILE[0]) != 0) &&
                 ((pos.pieceTypeBB[Piece.WPAWN] & BitBoard.MASK_FILE[1]) != 0)) {
-                score -= 6 * 15;
+                score -= weights[KING_ROOK_TRAPPED];
             }
         }
         if (Position.getY(pos.bKingSq) == 7) {
@@ -836,39 +1046,24 @@ public class Evaluate {
                 ((pos.pieceTypeBB[Piece.BROOK] & 0xC000000000000000L) != 0) && // Rook on g8 or h8
                 ((pos.pieceTypeBB[Piece.BPAWN] & BitBoard.MASK_FILE[6]) != 0) &&
                 ((pos.pieceTypeBB[Piece.BPAWN] & BitBoard.MASK_FILE[7]) != 0)) {
-                score += 6 * 15;
+                score += weights[KING_ROOK_TRAPPED];
             } else
             if (((pos.pieceTypeBB[Piece.BKING] & 0x600000000000000L) != 0) && // King on b8 or c8
                 ((pos.pieceTypeBB[Piece.BROOK] & 0x300000000000000L) != 0) && // Rook on a8 or b8
                 ((pos.pieceTypeBB[Piece.BPAWN] & BitBoard.MASK_FILE[0]) != 0) &&
                 ((pos.pieceTypeBB[Piece.BPAWN] & BitBoard.MASK_FILE[1]) != 0)) {
-                score += 6 * 15;
+                score += weights[KING_ROOK_TRAPPED];
             }
         }
-        score += (bKingAttacks - wKingAttacks) * 4;
+        score += (bKingAttacks - wKingAttacks) * weights[KING_ATTACK];
         return interpolate(m, minM, 0, maxM, score);
     }
 
-    private static final class KingSafetyHashData {
-        long key;
-        int score;
-    }
-    private static final KingSafetyHashData[] kingSafetyHash;
-    static {
-        final int numEntries = 1 << 15;
-        kingSafetyHash = new KingSafetyHashData[numEntries];
-        for (int i = 0; i < numEntries; i++) {
-            KingSafetyHashData ksh = new KingSafetyHashData();
-            ksh.key = -1;
-            ksh.score = 0;
-            kingSafetyHash[i] = ksh;
-        }
-    }
-
     private int kingSafetyKPPart(Position pos) {
         final long key = pos.pawnZobristHash() ^ pos.kingZobristHash();
-        KingSafetyHashData ksh = kingSafetyHash[(int)key & (kingSafetyHash.length - 1)];
-        if (ksh.key != key) {
+        final int idx = ((int)key & kingSafetyHashMask) * 2;
+        hashStats.kingSafetyProbes++;
+        if (kingSafetyHash[idx] != key) {
             int score = 0;
             long wPawns = pos.pieceTypeBB[Piece.WPAWN];
             long bPawns = pos.pieceTypeBB[Piece.BPAWN];
@@ -876,10 +1071,12 @@ public class Evaluate {
             score += getKSafetyWhite(pos, wPawns, bPawns);
             score -= getKSafetyBlack(pos, wPawns, bPawns);
 
-            ksh.key = key;
-            ksh.score = score;
+            kingSafetyHash[idx] = key;
+            kingSafetyHash[idx + 1] = score;
+        } else {
+            hashStats.kingSafetyHits++;
         }
-        return ksh.score;
+        return (int)kingSafetyHash[idx + 1];
     }
 
     private static int getHalfOpenFiles(long shelter, long wPawns, long bPawns) {
@@ -893,8 +1090,8 @@ public class Evaluate {
         int halfOpenFiles = 0;
         long wOpen = BitBoard.southFill(shelter) & (~BitBoard.southFill(pawns)) & 0xff;
         if (wOpen != 0) {
-            halfOpenFiles += 25 * Long.bitCount(wOpen & 0xe7);
-            halfOpenFiles += 10 * Long.bitCount(wOpen & 0x18);
+            halfOpenFiles += weights[KING_OPEN_FILE] * Long.bitCount(wOpen & 0xe7);
+            halfOpenFiles += weights[KING_OPEN_CENTER] * Long.bitCount(wOpen & 0x18);
         }
         return halfOpenFiles;
     }
@@ -916,7 +1113,7 @@ public class Evaluate {
             halfOpenFiles += getHalfOpenFiles(shelter, wPawns, bPawns);
             safety = Math.min(safety, 8);
         }
-        return (safety - 9) * 15 - halfOpenFiles;
+        return (safety - 9) * weights[KING_SHELTER] - halfOpenFiles;
     }
 
     private static int getKSafetyBlack(Position pos, long wPawns, long bPawns) {
@@ -936,7 +1133,7 @@ public class Evaluate {
             halfOpenFiles += getHalfOpenFiles(shelter, wPawns, bPawns);
             safety = Math.min(safety, 8);
         }
-        return (safety - 9) * 15 - halfOpenFiles;
+        return (safety - 9) * weights[KING_SHELTER] - halfOpenFiles;
     }
 
     /** Implements special knowledge for some endgame situations. */
@@ -0,0 +1,49 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+/**
+ * Static evaluation function used by the search.
+ * Implementations are not thread safe. Each search thread uses its own instance.
+ * @author petero
+ */
+public interface Evaluator {
+    /**
+     * Static evaluation of a position.
+     * @return The evaluation score, measured in centipawns.
+     *         Positive values are good for the side to make the next move.
+     */
+    int evalPos(Position pos);
+
+    /**
+     * Static evaluation of a position, for a search that only needs to know the score
+     * if it is inside the (alpha,beta) window. May return a score outside the window
+     * without computing the exact score, in which case lastEvalExact() returns false.
+     */
+    int evalPos(Position pos, int alpha, int beta);
+
+    /** Return false if the last evalPos() call did not compute the exact score. */
+    boolean lastEvalExact();
+
+    /** Return the hash table statistics for this object. */
+    Evaluate.HashStats getHashStats();
+
+    /** Create a new evaluator with the same settings, for use by another search thread. */
+    Evaluator newInstance();
+}
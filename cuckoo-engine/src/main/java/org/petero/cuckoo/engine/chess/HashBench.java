@@ -0,0 +1,137 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the transposition table types. The Bench positions are searched to a
+ * fixed depth with each table type, and the hash hit rate, the number of searched
+ * nodes, the search time and the search speed are reported for each type.
+ * <p>
+ * All types get the same number of entries. With a table that is small compared
+ * to the search, the replacement scheme decides which entries are kept, which
+ * shows up as a different hit rate and node count.
+ * @author petero
+ */
+public class HashBench {
+    public static final int DEFAULT_LOG2_SIZE = 16;
+    private static final int WARMUP_DEPTH = 6;
+    private static final long RANDOM_SEED = 0;
+
+    /** The table types, named as in the HashType UCI option. */
+    public static final String[] TYPES = { "object", "packed", "offheap", "bucket" };
+
+    /** The benchmark result for one table type. */
+    public static final class Result {
+        public final String type;
+        public final TranspositionTable.Stats stats;
+        public long nodes;
+        public long timeNs;
+
+        Result(String type, TranspositionTable.Stats stats) {
+            this.type = type;
+            this.stats = stats;
+        }
+
+        /** Return the percentage of probes that found an entry. */
+        public final double hitRate() {
+            return stats.hits * 100.0 / Math.max(stats.probes, 1);
+        }
+
+        /** Return the number of searched nodes per second. */
+        public final long nps() {
+            return nodes * 1000000000 / Math.max(timeNs, 1);
+        }
+    }
+
+    /** Create an empty table of type "type" with 2^log2Size entries. */
+    static TranspositionTable newTable(String type, int log2Size) {
+        return switch (type) {
+            case "packed" -> new PackedTranspositionTable(log2Size);
+            case "offheap" -> new OffHeapTranspositionTable(log2Size);
+            case "bucket" -> new BucketTranspositionTable(log2Size);
+            default -> new TranspositionTable(log2Size);
+        };
+    }
+
+    /**
+     * Search all benchmark positions to "depth" with each type in "types". The types
+     * take turns, one position at a time, so that JIT compilation during the run
+     * does not favor the types searched last.
+     */
+    static List<Result> runTypes(String[] types, int depth, int log2Size) throws ChessParseError {
+        List<Result> ret = new ArrayList<>();
+        List<TranspositionTable> tables = new ArrayList<>();
+        for (String type : types) {
+            TranspositionTable tt = newTable(type, log2Size);
+            tt.setCollectStats(true);
+            tables.add(tt);
+            ret.add(new Result(type, tt.getStats()));
+        }
+        MoveGen moveGen = new MoveGen();
+        for (String fen : Bench.FENS) {
+            for (int t = 0; t < types.length; t++) {
+                TranspositionTable tt = tables.get(t);
+                Result res = ret.get(t);
+                Position pos = TextIO.readFEN(fen);
+                tt.clear();
+                Search sc = new Search(pos, new long[200], 0, tt);
+                sc.setStrength(1000, RANDOM_SEED);
+                MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
+                MoveGen.removeIllegal(pos, moves);
+                long t0 = System.nanoTime();
+                sc.iterativeDeepening(moves, depth, -1, false);
+                res.timeNs += System.nanoTime() - t0;
+                res.nodes += sc.getTotalNodes();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Search all benchmark positions to "depth" with each table type, using tables
+     * with 2^log2Size entries, and print one line for each type. Before measuring,
+     * all types are run once to a lower depth, so that the JIT compiler has
+     * compiled the search code.
+     */
+    public static List<Result> run(int depth, int log2Size, PrintStream os) throws ChessParseError {
+        runTypes(TYPES, Math.min(depth, WARMUP_DEPTH), log2Size);
+        os.printf("Depth %d, 2^%d entries%n", depth, log2Size);
+        os.printf("%-8s %12s %12s %9s %12s %10s %12s%n",
+                  "Type", "Probes", "Hits", "Hit rate", "Nodes", "Time (ms)", "Nodes/second");
+        List<Result> ret = runTypes(TYPES, depth, log2Size);
+        for (Result r : ret)
+            os.printf("%-8s %12d %12d %8.2f%% %12d %10d %12d%n", r.type, r.stats.probes, r.stats.hits,
+                      r.hitRate(), r.nodes, r.timeNs / 1000000, r.nps());
+        return ret;
+    }
+
+    /**
+     * Run the benchmark from the command line.
+     * Arguments: [depth [log2Size]]
+     */
+    public static void main(String[] args) throws ChessParseError {
+        int depth = (args.length > 0) ? Integer.parseInt(args[0]) : Bench.DEFAULT_DEPTH;
+        int log2Size = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_LOG2_SIZE;
+        run(depth, log2Size, System.out);
+    }
+}
@@ -80,4 +80,21 @@ public class KillerTable {
         }
         return 0;
     }
+
+    /**
+     * Store killer move number "idx" for "ply" in "m". The killers are numbered
+     * in getKillerScore() order, so idx 0 has score 4 and idx 3 has score 1.
+     * @return False if there is no such killer move.
+     */
+    final boolean getKiller(int ply, int idx, Move m) {
+        ply -= (idx >> 1) * 2;
+        if ((ply < 0) || (ply >= ktList.length))
+            return false;
+        KTEntry ent = ktList[ply];
+        int move = ((idx & 1) == 0) ? ent.move0 : ent.move1;
+        m.from = move & 63;
+        m.to = (move >> 6) & 63;
+        m.promoteTo = (move >> 12) & 15;
+        return m.from != m.to;
+    }
 }
@@ -693,6 +693,296 @@ public final class MoveGen {
         return moveList;
     }
 
+    /**
+     * Generate and return the pseudo-legal moves not generated by pseudoLegalCaptures().
+     * Those are the non-captures, except promotions to queen and knight, and the
+     * captures that promote to rook or bishop.
+     */
+    public MoveList pseudoLegalNonCaptures(Position pos) {
+        MoveList moveList = getMoveListObj();
+        final long empty = ~(pos.whiteBB | pos.blackBB);
+        final long occupied = ~empty;
+        if (pos.whiteMove) {
+            // Queen moves
+            long squares = pos.pieceTypeBB[Piece.WQUEEN];
+            while (squares != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(squares);
+                long m = (BitBoard.rookAttacks(sq, occupied) | BitBoard.bishopAttacks(sq, occupied)) & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                squares &= squares-1;
+            }
+
+            // Rook moves
+            squares = pos.pieceTypeBB[Piece.WROOK];
+            while (squares != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(squares);
+                long m = BitBoard.rookAttacks(sq, occupied) & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                squares &= squares-1;
+            }
+
+            // Bishop moves
+            squares = pos.pieceTypeBB[Piece.WBISHOP];
+            while (squares != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(squares);
+                long m = BitBoard.bishopAttacks(sq, occupied) & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                squares &= squares-1;
+            }
+
+            // King moves
+            {
+                int sq = pos.getKingSq(true);
+                long m = BitBoard.kingAttacks[sq] & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                kingMovesWhite(pos, moveList, sq);
+            }
+
+            // Knight moves
+            long knights = pos.pieceTypeBB[Piece.WKNIGHT];
+            while (knights != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(knights);
+                long m = BitBoard.knightAttacks[sq] & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                knights &= knights-1;
+            }
+
+            // Pawn moves
+            long pawns = pos.pieceTypeBB[Piece.WPAWN];
+            long m = (pawns << 8) & empty;
+            addUnderPromotionsByMask(moveList, m & BitBoard.MASK_ROW_8, -8, true);
+            addPawnMovesByMask(moveList, pos, m & ~BitBoard.MASK_ROW_8, -8, false);
+            m = ((m & BitBoard.MASK_ROW_3) << 8) & empty;
+            addPawnDoubleMovesByMask(moveList, m, -16);
+
+            long promCapt = pos.blackBB & BitBoard.MASK_ROW_8;
+            addUnderPromotionsByMask(moveList, (pawns << 7) & BitBoard.MASK_A_TO_G_FILES & promCapt, -7, true);
+            addUnderPromotionsByMask(moveList, (pawns << 9) & BitBoard.MASK_B_TO_H_FILES & promCapt, -9, true);
+        } else {
+            // Queen moves
+            long squares = pos.pieceTypeBB[Piece.BQUEEN];
+            while (squares != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(squares);
+                long m = (BitBoard.rookAttacks(sq, occupied) | BitBoard.bishopAttacks(sq, occupied)) & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                squares &= squares-1;
+            }
+
+            // Rook moves
+            squares = pos.pieceTypeBB[Piece.BROOK];
+            while (squares != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(squares);
+                long m = BitBoard.rookAttacks(sq, occupied) & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                squares &= squares-1;
+            }
+
+            // Bishop moves
+            squares = pos.pieceTypeBB[Piece.BBISHOP];
+            while (squares != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(squares);
+                long m = BitBoard.bishopAttacks(sq, occupied) & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                squares &= squares-1;
+            }
+
+            // King moves
+            {
+                int sq = pos.getKingSq(false);
+                long m = BitBoard.kingAttacks[sq] & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                kingMovesBlack(pos, moveList, sq);
+            }
+
+            // Knight moves
+            long knights = pos.pieceTypeBB[Piece.BKNIGHT];
+            while (knights != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(knights);
+                long m = BitBoard.knightAttacks[sq] & empty;
+                addMovesByMask(moveList, pos, sq, m);
+                knights &= knights-1;
+            }
+
+            // Pawn moves
+            long pawns = pos.pieceTypeBB[Piece.BPAWN];
+            long m = (pawns >>> 8) & empty;
+            addUnderPromotionsByMask(moveList, m & BitBoard.MASK_ROW_1, 8, false);
+            addPawnMovesByMask(moveList, pos, m & ~BitBoard.MASK_ROW_1, 8, false);
+            m = ((m & BitBoard.MASK_ROW_6) >>> 8) & empty;
+            addPawnDoubleMovesByMask(moveList, m, 16);
+
+            long promCapt = pos.whiteBB & BitBoard.MASK_ROW_1;
+            addUnderPromotionsByMask(moveList, (pawns >>> 9) & BitBoard.MASK_A_TO_G_FILES & promCapt, 9, false);
+            addUnderPromotionsByMask(moveList, (pawns >>> 7) & BitBoard.MASK_B_TO_H_FILES & promCapt, 7, false);
+        }
+        return moveList;
+    }
+
+    /** Ray from the king through a pinned piece to the pinning piece, indexed by pinned piece square. */
+    private final long[] pinRays = new long[64];
+
+    /**
+     * Generate and return a list of legal moves.
+     * Pinned pieces and check evasions are handled using masks computed before
+     * generating the moves, so no move has to be made to test if it is legal.
+     * The position must be legal, that is the side not to move must not be in check.
+     */
+    public MoveList legalMoves(Position pos) {
+        MoveList moveList = getMoveListObj();
+        final boolean wtm = pos.whiteMove;
+        final long occupied = pos.whiteBB | pos.blackBB;
+        final long us = wtm ? pos.whiteBB : pos.blackBB;
+        final long them = wtm ? pos.blackBB : pos.whiteBB;
+        final int kSq = pos.getKingSq(wtm);
+        final int oQueen = wtm ? Piece.BQUEEN : Piece.WQUEEN;
+        final long oRooks = pos.pieceTypeBB[wtm ? Piece.BROOK : Piece.WROOK] | pos.pieceTypeBB[oQueen];
+        final long oBishops = pos.pieceTypeBB[wtm ? Piece.BBISHOP : Piece.WBISHOP] | pos.pieceTypeBB[oQueen];
+
+        // King moves. The king is removed from the board, so it can not hide behind itself.
+        final long kingBB = 1L << kSq;
+        long kingTargets = BitBoard.kingAttacks[kSq] & ~us;
+        while (kingTargets != 0) {
+            int sq = BitBoard.numberOfTrailingZeros(kingTargets);
+            if (attackers(pos, sq, occupied & ~kingBB) == 0)
+                setMove(moveList, kSq, sq, Piece.EMPTY);
+            kingTargets &= kingTargets-1;
+        }
+
+        long checkers = attackers(pos, kSq, occupied);
+        if ((checkers & (checkers-1)) != 0)
+            return moveList; // Double check, only king moves possible
+
+        long targets = ~us & ~pos.pieceTypeBB[wtm ? Piece.BKING : Piece.WKING];
+        if (checkers != 0) {
+            targets &= checkers | BitBoard.squaresBetween[kSq][BitBoard.numberOfTrailingZeros(checkers)];
+        } else {
+            // Castling
+            final int k0 = wtm ? 4 : 60;
+            if (kSq == k0) {
+                final int rook = wtm ? Piece.WROOK : Piece.BROOK;
+                if (((pos.getCastleMask() & (1 << (wtm ? Position.H1_CASTLE : Position.H8_CASTLE))) != 0) &&
+                    ((occupied & (3L << (k0 + 1))) == 0) && (pos.getPiece(k0 + 3) == rook) &&
+                    (attackers(pos, k0 + 1, occupied) == 0) && (attackers(pos, k0 + 2, occupied) == 0))
+                    setMove(moveList, k0, k0 + 2, Piece.EMPTY);
+                if (((pos.getCastleMask() & (1 << (wtm ? Position.A1_CASTLE : Position.A8_CASTLE))) != 0) &&
+                    ((occupied & (7L << (k0 - 3))) == 0) && (pos.getPiece(k0 - 4) == rook) &&
+                    (attackers(pos, k0 - 1, occupied) == 0) && (attackers(pos, k0 - 2, occupied) == 0))
+                    setMove(moveList, k0, k0 - 2, Piece.EMPTY);
+            }
+        }
+
+        // Find pinned pieces
+        long pinned = 0;
+        long snipers = (BitBoard.rookAttacks(kSq, them) & oRooks) | (BitBoard.bishopAttacks(kSq, them) & oBishops);
+        while (snipers != 0) {
+            int sq = BitBoard.numberOfTrailingZeros(snipers);
+            long between = BitBoard.squaresBetween[kSq][sq] & occupied;
+            if ((between != 0) && ((between & (between-1)) == 0) && ((between & us) != 0)) {
+                pinned |= between;
+                pinRays[BitBoard.numberOfTrailingZeros(between)] = BitBoard.squaresBetween[kSq][sq] | (1L << sq);
+            }
+            snipers &= snipers-1;
+        }
+
+        // Queen, rook and bishop moves
+        long squares = pos.pieceTypeBB[wtm ? Piece.WQUEEN : Piece.BQUEEN] |
+                       pos.pieceTypeBB[wtm ? Piece.WROOK : Piece.BROOK];
+        while (squares != 0) {
+            int sq = BitBoard.numberOfTrailingZeros(squares);
+            long m = BitBoard.rookAttacks(sq, occupied) & targets;
+            if ((pinned & (1L << sq)) != 0)
+                m &= pinRays[sq];
+            addMovesByMask(moveList, pos, sq, m);
+            squares &= squares-1;
+        }
+        squares = pos.pieceTypeBB[wtm ? Piece.WQUEEN : Piece.BQUEEN] |
+                  pos.pieceTypeBB[wtm ? Piece.WBISHOP : Piece.BBISHOP];
+        while (squares != 0) {
+            int sq = BitBoard.numberOfTrailingZeros(squares);
+            long m = BitBoard.bishopAttacks(sq, occupied) & targets;
+            if ((pinned & (1L << sq)) != 0)
+                m &= pinRays[sq];
+            addMovesByMask(moveList, pos, sq, m);
+            squares &= squares-1;
+        }
+
+        // Knight moves. A pinned knight can never move.
+        long knights = pos.pieceTypeBB[wtm ? Piece.WKNIGHT : Piece.BKNIGHT] & ~pinned;
+        while (knights != 0) {
+            int sq = BitBoard.numberOfTrailingZeros(knights);
+            addMovesByMask(moveList, pos, sq, BitBoard.knightAttacks[sq] & targets);
+            knights &= knights-1;
+        }
+
+        // Pawn moves
+        long pawns = pos.pieceTypeBB[wtm ? Piece.WPAWN : Piece.BPAWN];
+        addLegalPawnMoves(moveList, pos, pawns & ~pinned, targets);
+        long pinnedPawns = pawns & pinned;
+        while (pinnedPawns != 0) {
+            int sq = BitBoard.numberOfTrailingZeros(pinnedPawns);
+            addLegalPawnMoves(moveList, pos, 1L << sq, targets & pinRays[sq]);
+            pinnedPawns &= pinnedPawns-1;
+        }
+
+        // En passant captures. The king is checked for attacks after the move, because both the
+        // capturing and the captured pawn leave their squares, and the captured pawn may be the checker.
+        int epSquare = pos.getEpSquare();
+        if (epSquare >= 0) {
+            int capSq = epSquare + (wtm ? -8 : 8);
+            long epPawns = pawns & (wtm ? BitBoard.bPawnAttacks[epSquare] : BitBoard.wPawnAttacks[epSquare]);
+            while (epPawns != 0) {
+                int sq = BitBoard.numberOfTrailingZeros(epPawns);
+                long occ = (occupied & ~(1L << sq) & ~(1L << capSq)) | (1L << epSquare);
+                if ((attackers(pos, kSq, occ) & ~(1L << capSq)) == 0)
+                    setMove(moveList, sq, epSquare, Piece.EMPTY);
+                epPawns &= epPawns-1;
+            }
+        }
+        return moveList;
+    }
+
+    /** Add legal non en passant moves for "pawns", that can only move to "targets". */
+    private static void addLegalPawnMoves(MoveList moveList, Position pos, long pawns, long targets) {
+        final long empty = ~(pos.whiteBB | pos.blackBB);
+        if (pos.whiteMove) {
+            long m = (pawns << 8) & empty;
+            long m2 = ((m & BitBoard.MASK_ROW_3) << 8) & empty & targets;
+            addPawnMovesByMask(moveList, pos, m & targets, -8, true);
+            addPawnDoubleMovesByMask(moveList, m2, -16);
+            addPawnMovesByMask(moveList, pos, (pawns << 7) & BitBoard.MASK_A_TO_G_FILES & pos.blackBB & targets, -7, true);
+            addPawnMovesByMask(moveList, pos, (pawns << 9) & BitBoard.MASK_B_TO_H_FILES & pos.blackBB & targets, -9, true);
+        } else {
+            long m = (pawns >>> 8) & empty;
+            long m2 = ((m & BitBoard.MASK_ROW_6) >>> 8) & empty & targets;
+            addPawnMovesByMask(moveList, pos, m & targets, 8, true);
+            addPawnDoubleMovesByMask(moveList, m2, 16);
+            addPawnMovesByMask(moveList, pos, (pawns >>> 9) & BitBoard.MASK_A_TO_G_FILES & pos.whiteBB & targets, 9, true);
+            addPawnMovesByMask(moveList, pos, (pawns >>> 7) & BitBoard.MASK_B_TO_H_FILES & pos.whiteBB & targets, 7, true);
+        }
+    }
+
+    /**
+     * Return the pieces of the side not to move that attack square sq, when the
+     * occupied squares are given by "occupied".
+     */
+    private static long attackers(Position pos, int sq, long occupied) {
+        if (pos.whiteMove) {
+            long bbQueen = pos.pieceTypeBB[Piece.BQUEEN];
+            return (BitBoard.knightAttacks[sq] & pos.pieceTypeBB[Piece.BKNIGHT]) |
+                   (BitBoard.kingAttacks[sq] & pos.pieceTypeBB[Piece.BKING]) |
+                   (BitBoard.wPawnAttacks[sq] & pos.pieceTypeBB[Piece.BPAWN]) |
+                   (BitBoard.bishopAttacks(sq, occupied) & (pos.pieceTypeBB[Piece.BBISHOP] | bbQueen)) |
+                   (BitBoard.rookAttacks(sq, occupied) & (pos.pieceTypeBB[Piece.BROOK] | bbQueen));
+        } else {
+            long bbQueen = pos.pieceTypeBB[Piece.WQUEEN];
+            return (BitBoard.knightAttacks[sq] & pos.pieceTypeBB[Piece.WKNIGHT]) |
+                   (BitBoard.kingAttacks[sq] & pos.pieceTypeBB[Piece.WKING]) |
+                   (BitBoard.bPawnAttacks[sq] & pos.pieceTypeBB[Piece.WPAWN]) |
+                   (BitBoard.bishopAttacks(sq, occupied) & (pos.pieceTypeBB[Piece.WBISHOP] | bbQueen)) |
+                   (BitBoard.rookAttacks(sq, occupied) & (pos.pieceTypeBB[Piece.WROOK] | bbQueen));
+        }
+    }
+
     /**
      * Return true if the side to move is in check.
      */
@@ -714,17 +1004,27 @@ public final class MoveGen {
     }
 
     private record Delta(int dx, int dy) {
+        private static final Delta E = new Delta(1, 0);
+        private static final Delta NE = new Delta(1, 1);
+        private static final Delta N = new Delta(0, 1);
+        private static final Delta NW = new Delta(-1, 1);
+        private static final Delta W = new Delta(-1, 0);
+        private static final Delta SW = new Delta(-1, -1);
+        private static final Delta S = new Delta(0, -1);
+        private static final Delta SE = new Delta(1, -1);
+        private static final Delta NONE = new Delta(0, 0);
+
         static Delta of(int delta) {
             return switch (delta) {
-                case 1 -> new Delta(1, 0);
-                case 9 -> new Delta(1, 1);
-                case 8 -> new Delta(0, 1);
-                case 7 -> new Delta(-1, 1);
-                case -1 -> new Delta(-1, 0);
-                case -9 -> new Delta(-1, -1);
-                case -8 -> new Delta(0, -1);
-                case -7 -> new Delta(1, -1);
-                default -> new Delta(0, 0);
+                case 1 -> E;
+                case 9 -> NE;
+                case 8 -> N;
+                case 7 -> NW;
+                case -1 -> W;
+                case -9 -> SW;
+                case -8 -> S;
+                case -7 -> SE;
+                default -> NONE;
             };
         }
     }
@@ -865,6 +1165,103 @@ public final class MoveGen {
         return ret;
     }
 
+    /**
+     * Return true if m would be generated by pseudoLegalMoves() in position pos.
+     * This makes it possible to search moves from the transposition table and the
+     * killer table without first generating all moves.
+     */
+    public static boolean isPseudoLegal(Position pos, Move m) {
+        final int from = m.from;
+        final int to = m.to;
+        if (from == to)
+            return false;
+        final boolean wtm = pos.whiteMove;
+        int p = pos.getPiece(from);
+        if ((p == Piece.EMPTY) || (Piece.isWhite(p) != wtm))
+            return false;
+        int cap = pos.getPiece(to);
+        if ((cap != Piece.EMPTY) && (Piece.isWhite(cap) == wtm))
+            return false;
+        final long occupied = pos.whiteBB | pos.blackBB;
+        final long toMask = 1L << to;
+        if (p == (wtm ? Piece.WPAWN : Piece.BPAWN)) {
+            boolean promotion = (toMask & BitBoard.MASK_ROW_1_ROW_8) != 0;
+            if (promotion) {
+                int prom = m.promoteTo;
+                if ((prom == Piece.EMPTY) || (Piece.isWhite(prom) != wtm) ||
+                    (prom == Piece.WKING) || (prom == Piece.BKING) ||
+                    (prom == Piece.WPAWN) || (prom == Piece.BPAWN))
+                    return false;
+            } else if (m.promoteTo != Piece.EMPTY) {
+                return false;
+            }
+            int d = wtm ? 8 : -8;
+            if (to == from + d)
+                return cap == Piece.EMPTY;
+            if (to == from + 2 * d) {
+                long row2 = wtm ? BitBoard.MASK_ROW_2 : BitBoard.MASK_ROW_7;
+                return ((1L << from) & row2) != 0 && (cap == Piece.EMPTY) &&
+                       (pos.getPiece(from + d) == Piece.EMPTY);
+            }
+            long attacks = wtm ? BitBoard.bPawnAttacks[to] : BitBoard.wPawnAttacks[to];
+            if ((attacks & (1L << from)) == 0)
+                return false;
+            return (cap != Piece.EMPTY) || (to == pos.getEpSquare());
+        }
+        if (m.promoteTo != Piece.EMPTY)
+            return false;
+        switch (Piece.makeWhite(p)) {
+        case Piece.WKING: {
+            if ((BitBoard.kingAttacks[from] & toMask) != 0)
+                return true;
+            final int k0 = wtm ? 4 : 60;
+            if ((from != k0) || sqAttacked(pos, k0))
+                return false;
+            int rook = wtm ? Piece.WROOK : Piece.BROOK;
+            if (to == k0 + 2) {
+                int castle = wtm ? Position.H1_CASTLE : Position.H8_CASTLE;
+                return ((pos.getCastleMask() & (1 << castle)) != 0) &&
+                       (pos.getPiece(k0 + 1) == Piece.EMPTY) && (pos.getPiece(k0 + 2) == Piece.EMPTY) &&
+                       (pos.getPiece(k0 + 3) == rook) && !sqAttacked(pos, k0 + 1);
+            } else if (to == k0 - 2) {
+                int castle = wtm ? Position.A1_CASTLE : Position.A8_CASTLE;
+                return ((pos.getCastleMask() & (1 << castle)) != 0) &&
+                       (pos.getPiece(k0 - 1) == Piece.EMPTY) && (pos.getPiece(k0 - 2) == Piece.EMPTY) &&
+                       (pos.getPiece(k0 - 3) == Piece.EMPTY) &&
+                       (pos.getPiece(k0 - 4) == rook) && !sqAttacked(pos, k0 - 1);
+            }
+            return false;
+        }
+        case Piece.WQUEEN:
+            return ((BitBoard.rookAttacks(from, occupied) | BitBoard.bishopAttacks(from, occupied)) & toMask) != 0;
+        case Piece.WROOK:
+            return (BitBoard.rookAttacks(from, occupied) & toMask) != 0;
+        case Piece.WBISHOP:
+            return (BitBoard.bishopAttacks(from, occupied) & toMask) != 0;
+        case Piece.WKNIGHT:
+            return (BitBoard.knightAttacks[from] & toMask) != 0;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Return true if pseudo-legal move m would be generated by pseudoLegalCaptures() in
+     * position pos. Those are captures, en passant captures and promotions to queen or
+     * knight, except captures that promote to rook or bishop.
+     */
+    public static boolean isCaptureListMove(Position pos, Move m) {
+        int prom = m.promoteTo;
+        if (prom != Piece.EMPTY) {
+            prom = Piece.makeWhite(prom);
+            return (prom == Piece.WQUEEN) || (prom == Piece.WKNIGHT);
+        }
+        if (pos.getPiece(m.to) != Piece.EMPTY)
+            return true;
+        return (m.to == pos.getEpSquare()) &&
+               (pos.getPiece(m.from) == (pos.whiteMove ? Piece.WPAWN : Piece.BPAWN));
+    }
+
     /**
      * Return true if a square is attacked by the opposite side.
      */
@@ -988,6 +1385,15 @@ public final class MoveGen {
         return false;
     }
 
+    private static void addUnderPromotionsByMask(MoveList moveList, long mask, int delta, boolean white) {
+        while (mask != 0) {
+            int sq = BitBoard.numberOfTrailingZeros(mask);
+            setMove(moveList, sq + delta, sq, white ? Piece.WROOK : Piece.BROOK);
+            setMove(moveList, sq + delta, sq, white ? Piece.WBISHOP : Piece.BBISHOP);
+            mask &= (mask - 1);
+        }
+    }
+
     private static void addPawnDoubleMovesByMask(MoveList moveList,
                                                  long mask, int delta) {
         while (mask != 0) {
@@ -1027,7 +1433,7 @@ public final class MoveGen {
     
     private static final int MAX_MOVES = 256;
 
-    private MoveList getMoveListObj() {
+    MoveList getMoveListObj() {
         MoveList ml;
         if (moveListsInCache > 0) {
             ml = (MoveList)moveListCache[--moveListsInCache];
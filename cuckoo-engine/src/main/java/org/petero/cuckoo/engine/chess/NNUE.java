@@ -0,0 +1,201 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A small quantized neural network for position evaluation.
+ * <p>
+ * The input is one feature for each piece, given by its type, color and square.
+ * The features are fed to two copies of the same hidden layer, one seen from
+ * white's point of view and one seen from black's point of view, with colors
+ * swapped and the board mirrored. The hidden layer outputs, called the
+ * accumulator, are stored in the Position object and updated when pieces
+ * move, so only the small output layer is computed for each evaluation.
+ * <p>
+ * The first layer weights are scaled by QA and the output layer weights by QB.
+ * The hidden layer output is clipped to [0,QA], and the output is scaled so that
+ * 1.0 corresponds to SCALE centipawns.
+ * <p>
+ * The vector operations are done by SIMD instructions if the Vector API is
+ * available, see NNUEKernels.
+ * @author petero
+ */
+public class NNUE {
+    public static final int N_INPUTS = 12 * 64;
+    public static final int QA = 255;
+    public static final int QB = 64;
+    public static final int SCALE = 400;
+    public static final int MAX_HIDDEN = 128;  // Larger sizes could overflow the output sum
+
+    private static final int MAGIC = 0x43554e4e;   // "CUNN"
+    private static final int VERSION = 1;
+
+    final int nHidden;
+    final short[] w1;   // First layer weights, w1[feature * nHidden + i]
+    final short[] b1;   // First layer biases
+    final short[] w2;   // Output weights. The first nHidden are for the side to move.
+    final int b2;       // Output bias
+    private final NNUEKernels kernels;
+
+    private static NNUE defaultNet = null;
+
+    public NNUE(int nHidden, short[] w1, short[] b1, short[] w2, int b2) {
+        this(nHidden, w1, b1, w2, b2, NNUEKernels.get(true));
+    }
+
+    private NNUE(int nHidden, short[] w1, short[] b1, short[] w2, int b2, NNUEKernels kernels) {
+        this.nHidden = nHidden;
+        this.w1 = w1;
+        this.b1 = b1;
+        this.w2 = w2;
+        this.b2 = b2;
+        this.kernels = kernels;
+    }
+
+    /**
+     * Return a network with the same weights, that uses SIMD instructions if "vector"
+     * is true and the Vector API is available, or scalar code otherwise.
+     */
+    public final NNUE withVectorKernels(boolean vector) {
+        return new NNUE(nHidden, w1, b1, w2, b2, NNUEKernels.get(vector));
+    }
+
+    /** Return true if this network uses SIMD instructions. */
+    public final boolean usesVectorKernels() {
+        return kernels.isVector();
+    }
+
+    /** Return the network stored in the nnue.bin resource. */
+    public static synchronized NNUE getDefault() {
+        if (defaultNet == null) {
+            try (InputStream is = NNUE.class.getResourceAsStream("/nnue.bin")) {
+                if (is == null)
+                    throw new RuntimeException("nnue.bin resource not found");
+                defaultNet = read(is);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        return defaultNet;
+    }
+
+    /** Read a network written by write(). */
+    public static NNUE read(InputStream is) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(is));
+        if ((dis.readInt() != MAGIC) || (dis.readInt() != VERSION))
+            throw new IOException("Not a network file");
+        int nHidden = dis.readInt();
+        if ((nHidden < 1) || (nHidden > MAX_HIDDEN))
+            throw new IOException("Invalid hidden layer size");
+        short[] w1 = readShorts(dis, N_INPUTS * nHidden);
+        short[] b1 = readShorts(dis, nHidden);
+        short[] w2 = readShorts(dis, 2 * nHidden);
+        int b2 = dis.readInt();
+        return new NNUE(nHidden, w1, b1, w2, b2);
+    }
+
+    private static short[] readShorts(DataInputStream dis, int n) throws IOException {
+        short[] ret = new short[n];
+        for (int i = 0; i < n; i++)
+            ret[i] = dis.readShort();
+        return ret;
+    }
+
+    /** Write the network to a stream. */
+    public final void write(OutputStream os) throws IOException {
+        DataOutputStream dos = new DataOutputStream(os);
+        dos.writeInt(MAGIC);
+        dos.writeInt(VERSION);
+        dos.writeInt(nHidden);
+        for (short w : w1) dos.writeShort(w);
+        for (short b : b1) dos.writeShort(b);
+        for (short w : w2) dos.writeShort(w);
+        dos.writeInt(b2);
+        dos.flush();
+    }
+
+    /** Feature index for a piece on a square, seen from white's point of view. */
+    public static int whiteFeature(int piece, int sq) {
+        return (piece - 1) * 64 + sq;
+    }
+
+    /** Feature index for a piece on a square, seen from black's point of view. */
+    public static int blackFeature(int piece, int sq) {
+        int p = Piece.isWhite(piece) ? piece + (Piece.BKING - Piece.WKING) : piece - (Piece.BKING - Piece.WKING);
+        return (p - 1) * 64 + (sq ^ 56);
+    }
+
+    /**
+     * Create a new accumulator for a position. The first nHidden elements are
+     * seen from white's point of view, the remaining from black's point of view.
+     */
+    final short[] newAccumulator(Position pos) {
+        short[] acc = new short[2 * nHidden];
+        System.arraycopy(b1, 0, acc, 0, nHidden);
+        System.arraycopy(b1, 0, acc, nHidden, nHidden);
+        for (int sq = 0; sq < 64; sq++) {
+            int p = pos.getPiece(sq);
+            if (p != Piece.EMPTY)
+                addPiece(acc, p, sq);
+        }
+        return acc;
+    }
+
+    /** Update accumulator when a piece is added to a square. */
+    final void addPiece(short[] acc, int piece, int sq) {
+        final int n = nHidden;
+        kernels.add(acc, 0, w1, whiteFeature(piece, sq) * n, n);
+        kernels.add(acc, n, w1, blackFeature(piece, sq) * n, n);
+    }
+
+    /** Update accumulator when a piece is removed from a square. */
+    final void removePiece(short[] acc, int piece, int sq) {
+        final int n = nHidden;
+        kernels.sub(acc, 0, w1, whiteFeature(piece, sq) * n, n);
+        kernels.sub(acc, n, w1, blackFeature(piece, sq) * n, n);
+    }
+
+    /** Update accumulator when a piece moves from one square to another. */
+    final void movePiece(short[] acc, int piece, int from, int to) {
+        final int n = nHidden;
+        kernels.addSub(acc, 0, w1, whiteFeature(piece, to) * n, whiteFeature(piece, from) * n, n);
+        kernels.addSub(acc, n, w1, blackFeature(piece, to) * n, blackFeature(piece, from) * n, n);
+    }
+
+    /**
+     * Compute the output layer.
+     * @return The evaluation score in centipawns, positive if good for the side to move.
+     */
+    final int evaluate(short[] acc, boolean whiteMove) {
+        final int n = nHidden;
+        final int us = whiteMove ? 0 : n;
+        final int them = n - us;
+        int sum = b2;
+        sum += kernels.clippedDot(acc, us, w2, 0, n, QA);
+        sum += kernels.clippedDot(acc, them, w2, n, n, QA);
+        return (int)((long)sum * SCALE / (QA * QB));
+    }
+}
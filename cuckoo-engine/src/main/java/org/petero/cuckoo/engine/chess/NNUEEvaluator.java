@@ -0,0 +1,68 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+/**
+ * Evaluator that uses an NNUE network instead of the hand written
+ * evaluation terms in Evaluate.
+ * <p>
+ * The first time a position is evaluated, the network is attached to it, so that
+ * the accumulator is then updated incrementally when moves are made and unmade.
+ * @author petero
+ */
+public class NNUEEvaluator implements Evaluator {
+    private final NNUE net;
+    private final Evaluate.HashStats hashStats = new Evaluate.HashStats();
+
+    /** Create an evaluator using the default network. */
+    public NNUEEvaluator() {
+        this(NNUE.getDefault());
+    }
+
+    public NNUEEvaluator(NNUE net) {
+        this.net = net;
+    }
+
+    @Override
+    public final int evalPos(Position pos) {
+        if (pos.nnue != net)
+            pos.setNNUE(net);
+        return net.evaluate(pos.nnueAcc, pos.whiteMove);
+    }
+
+    @Override
+    public final int evalPos(Position pos, int alpha, int beta) {
+        return evalPos(pos);
+    }
+
+    @Override
+    public final boolean lastEvalExact() {
+        return true;
+    }
+
+    @Override
+    public final Evaluate.HashStats getHashStats() {
+        return hashStats;
+    }
+
+    @Override
+    public Evaluator newInstance() {
+        return new NNUEEvaluator(net);
+    }
+}
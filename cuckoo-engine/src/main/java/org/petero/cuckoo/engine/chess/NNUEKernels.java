@@ -0,0 +1,80 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+/**
+ * Vector operations used by the NNUE network. This class contains the scalar
+ * implementation. If the cuckoo-simd module is on the class path and the
+ * jdk.incubator.vector module is available, its subclass NNUEVectorKernels,
+ * which uses SIMD instructions, is used instead.
+ * @author petero
+ */
+public class NNUEKernels {
+    private static final NNUEKernels SCALAR = new NNUEKernels();
+    private static final NNUEKernels BEST = createBest();
+
+    /** Return the vector implementation if it can be used, otherwise the scalar implementation. */
+    private static NNUEKernels createBest() {
+        try {
+            Class<?> cls = Class.forName("org.petero.cuckoo.simd.NNUEVectorKernels");
+            return (NNUEKernels)cls.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;  // cuckoo-simd or module jdk.incubator.vector not available
+        }
+    }
+
+    protected NNUEKernels() {
+    }
+
+    /** Return the vector implementation if "vector" is true and it is available, otherwise the scalar implementation. */
+    static NNUEKernels get(boolean vector) {
+        return vector ? BEST : SCALAR;
+    }
+
+    /** Return true if this implementation uses SIMD instructions. */
+    protected boolean isVector() {
+        return false;
+    }
+
+    /** acc[accOffs+i] += w[wOffs+i], for 0 <= i < n. */
+    protected void add(short[] acc, int accOffs, short[] w, int wOffs, int n) {
+        for (int i = 0; i < n; i++)
+            acc[accOffs + i] += w[wOffs + i];
+    }
+
+    /** acc[accOffs+i] -= w[wOffs+i], for 0 <= i < n. */
+    protected void sub(short[] acc, int accOffs, short[] w, int wOffs, int n) {
+        for (int i = 0; i < n; i++)
+            acc[accOffs + i] -= w[wOffs + i];
+    }
+
+    /** acc[accOffs+i] += w[addOffs+i] - w[subOffs+i], for 0 <= i < n. */
+    protected void addSub(short[] acc, int accOffs, short[] w, int addOffs, int subOffs, int n) {
+        for (int i = 0; i < n; i++)
+            acc[accOffs + i] = (short)(acc[accOffs + i] + w[addOffs + i] - w[subOffs + i]);
+    }
+
+    /** Return the sum of clamp(acc[accOffs+i], 0, maxVal) * w[wOffs+i], for 0 <= i < n. */
+    protected int clippedDot(short[] acc, int accOffs, short[] w, int wOffs, int n, int maxVal) {
+        int sum = 0;
+        for (int i = 0; i < n; i++)
+            sum += Math.min(Math.max(acc[accOffs + i], 0), maxVal) * w[wOffs + i];
+        return sum;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A PackedTranspositionTable stored outside the java heap, in direct byte buffers.
+ * The table is split into chunks of at most 1GB, so the total size is not limited
+ * by the 2^31 element limit of java arrays, and the table does not add to GC work.
+ * Chunks are aligned to 64 bytes, so four consecutive entries starting at an index
+ * that is a multiple of four share one cache line.
+ * <p>
+ * Direct buffers are limited by -XX:MaxDirectMemorySize, which defaults to the
+ * maximum heap size. It must be set larger than the table size.
+ * @author petero
+ */
+public class OffHeapTranspositionTable extends PackedTranspositionTable {
+    static final int ENTRY_SIZE = 16;    // Key word followed by data word
+    static final int CACHE_LINE_SIZE = 64;
+    private static final int MAX_CHUNK_LOG2_ENTRIES = 26;
+
+    private final ByteBuffer[] chunks;
+    private final int chunkShift;       // log2 of number of entries per chunk
+    private final long chunkMask;
+
+    /** Constructor. Creates an empty transposition table with 2^log2Size slots. */
+    public OffHeapTranspositionTable(int log2Size) {
+        this(log2Size, allocateChunks(log2Size));
+    }
+
+    /**
+     * Constructor. Creates a transposition table using already existing storage,
+     * for example memory mapped from a file. Chunk i holds chunkEntries(log2Size)
+     * entries starting at entry i * chunkEntries(log2Size).
+     */
+    OffHeapTranspositionTable(int log2Size, ByteBuffer[] chunks) {
+        super(log2Size, false);
+        chunkShift = chunkLog2Entries(log2Size);
+        chunkMask = (1L << chunkShift) - 1;
+        this.chunks = chunks;
+    }
+
+    /** Return log2 of the number of entries in each chunk of a table with 2^log2Size entries. */
+    static int chunkLog2Entries(int log2Size) {
+        return Math.min(log2Size, MAX_CHUNK_LOG2_ENTRIES);
+    }
+
+    private static ByteBuffer[] allocateChunks(int log2Size) {
+        int chunkShift = chunkLog2Entries(log2Size);
+        int nChunks = 1 << (log2Size - chunkShift);
+        ByteBuffer[] chunks = new ByteBuffer[nChunks];
+        for (int i = 0; i < nChunks; i++)
+            chunks[i] = ByteBuffer.allocateDirect((ENTRY_SIZE << chunkShift) + CACHE_LINE_SIZE)
+                                  .alignedSlice(CACHE_LINE_SIZE).order(ByteOrder.nativeOrder());
+        return chunks;
+    }
+
+    /** Size of the table in bytes. */
+    public final long sizeInBytes() {
+        return (mask + 1) * ENTRY_SIZE;
+    }
+
+    @Override
+    final long dataAt(long idx) {
+        return chunks[(int)(idx >>> chunkShift)].getLong((int)(idx & chunkMask) * ENTRY_SIZE + 8);
+    }
+
+    @Override
+    final long keyAt(long idx) {
+        return chunks[(int)(idx >>> chunkShift)].getLong((int)(idx & chunkMask) * ENTRY_SIZE);
+    }
+
+    @Override
+    final void store(long idx, long key, long d) {
+        ByteBuffer buf = chunks[(int)(idx >>> chunkShift)];
+        int offs = (int)(idx & chunkMask) * ENTRY_SIZE;
+        buf.putLong(offs + 8, d);
+        buf.putLong(offs, key ^ d);
+    }
+
+    @Override
+    public void clear() {
+        for (ByteBuffer buf : chunks) {
+            int len = buf.capacity();
+            for (int i = 0; i < len; i += 8)
+                buf.putLong(i, 0);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.util.Arrays;
+
+/**
+ * A transposition table using the same cuckoo hashing scheme as TranspositionTable,
+ * but storing each entry as two longs in primitive arrays instead of as a TTEntry object.
+ * <p>
+ * All entry fields are packed into one data word. The key word holds key ^ data, so a
+ * reader can detect an entry that was half written by another thread. That makes the
+ * table safe to share between search threads without any locking.
+ * @author petero
+ */
+public class PackedTranspositionTable extends TranspositionTable {
+    // Data word layout:
+    //  bits  0-15: move, from + (to<<6) + (promote<<12)
+    //  bits 16-31: score
+    //  bits 32-47: static evaluation score
+    //  bits 48-57: depth
+    //  bits 58-59: 3 - type, so that an all-zero word is an empty slot
+    //  bits 60-63: generation
+    static final int MAX_DEPTH = (1 << 10) - 1;
+    static final int GEN_MASK = 15;
+
+    private final long[] keys;  // key ^ data
+    private final long[] data;
+    final long mask;
+
+    /** Constructor. Creates an empty transposition table with 2^log2Size slots. */
+    public PackedTranspositionTable(int log2Size) {
+        this(log2Size, true);
+    }
+
+    /** Constructor. Subclasses that provide their own storage pass useArrays = false. */
+    PackedTranspositionTable(int log2Size, boolean useArrays) {
+        mask = (1L << log2Size) - 1;
+        keys = useArrays ? new long[1 << log2Size] : null;
+        data = useArrays ? new long[1 << log2Size] : null;
+    }
+
+    static long pack(int move, int score, int evalScore, int depth, int type, int gen) {
+        return (move & 0xffffL) |
+               ((score & 0xffffL) << 16) |
+               ((evalScore & 0xffffL) << 32) |
+               ((long)Math.min(depth, MAX_DEPTH) << 48) |
+               ((long)(3 - type) << 58) |
+               ((long)(gen & GEN_MASK) << 60);
+    }
+
+    static int getMove(long d)      { return (int)(d & 0xffff); }
+    static int getScore(long d)     { return (short)(d >>> 16); }
+    static int getEvalScore(long d) { return (short)(d >>> 32); }
+    static int getDepth(long d)     { return (int)(d >>> 48) & MAX_DEPTH; }
+    static int getType(long d)      { return 3 - ((int)(d >>> 58) & 3); }
+    static int getGeneration(long d) { return (int)(d >>> 60); }
+
+    static long setGeneration(long d, int gen) {
+        return (d & ~((long)GEN_MASK << 60)) | ((long)(gen & GEN_MASK) << 60);
+    }
+
+    /**
+     * Return true if data word "d" was stored during the search with generation "currGen".
+     * Only the low four bits of the generation are stored, so the age of the entry is
+     * computed modulo 16.
+     */
+    static boolean isCurrent(long d, int currGen) {
+        return ((currGen - getGeneration(d)) & GEN_MASK) == 0;
+    }
+
+    /** Same as TTEntry.betterThan(), but operating on data words. */
+    static boolean betterThan(long d1, long d2, int currGen) {
+        boolean cur1 = isCurrent(d1, currGen);
+        if (cur1 != isCurrent(d2, currGen))
+            return cur1;
+        boolean exact1 = getType(d1) == TTEntry.T_EXACT;
+        if (exact1 != (getType(d2) == TTEntry.T_EXACT))
+            return exact1;
+        return getDepth(d1) > getDepth(d2);
+    }
+
+    /** Same as TTEntry.valuable(), but operating on a data word. */
+    static boolean valuable(long d, int currGen) {
+        if (!isCurrent(d, currGen))
+            return false;
+        return (getType(d) == TTEntry.T_EXACT) || (getDepth(d) > 3 * Search.plyScale);
+    }
+
+    /** Convert score from "mate at ply" to "mate in x", as TTEntry.setScore() does. */
+    static int scoreToHash(int score, int ply) {
+        if (score > Search.MATE0 - 1000) {
+            score += ply;
+        } else if (score < -(Search.MATE0 - 1000)) {
+            score -= ply;
+        }
+        return score;
+    }
+
+    /** Decode data word "d" into "ent". */
+    static void unpack(long key, long d, int hashSlot, TTEntry ent) {
+        ent.key = key;
+        ent.move = (short)getMove(d);
+        ent.score = (short)getScore(d);
+        ent.depthSlot = (short)(getDepth(d) | (hashSlot << 15));
+        ent.generation = (byte)getGeneration(d);
+        ent.type = (byte)getType(d);
+        ent.evalScore = (short)getEvalScore(d);
+    }
+
+    /** Return the data word for slot "idx". */
+    long dataAt(long idx) {
+        return data[(int)idx];
+    }
+
+    /** Return the key word, that is key ^ data, for slot "idx". */
+    long keyAt(long idx) {
+        return keys[(int)idx];
+    }
+
+    /** Store an entry in slot "idx". The data word is written first. */
+    void store(long idx, long key, long d) {
+        data[(int)idx] = d;
+        keys[(int)idx] = key ^ d;
+    }
+
+    @Override
+    public void insert(long key, Move sm, int type, int ply, int depth, int evalScore) {
+        if (depth < 0) depth = 0;
+        final int gen = generation;
+        long idx0 = h0(key);
+        long idx1 = h1(key);
+        long idx = idx0;
+        long d = dataAt(idx);
+        long k = keyAt(idx) ^ d;
+        if (k != key) {
+            idx = idx1;
+            d = dataAt(idx);
+            k = keyAt(idx) ^ d;
+        }
+        if (k != key) {
+            long d0 = dataAt(idx0);
+            if (betterThan(d, d0, gen)) {
+                idx = idx0;
+                d = d0;
+                k = keyAt(idx0) ^ d0;
+            }
+            if (valuable(d, gen)) {
+                long h0 = h0(k);
+                long altIdx = (idx == h0) ? h1(k) : h0;
+                if (betterThan(d, dataAt(altIdx), gen)) {
+                    store(altIdx, k, d);
+                    if (stats != null) stats.relocations++;
+                }
+            }
+        }
+        storeEntry(idx, k, d, key, sm, type, ply, depth, evalScore);
+    }
+
+    /**
+     * Store a new entry in slot "idx", which currently contains key "k" and data "d",
+     * unless the current entry is for the same position and is more useful.
+     */
+    final void storeEntry(long idx, long k, long d, long key, Move sm, int type, int ply, int depth, int evalScore) {
+        if ((k == key) && (getDepth(d) > depth) && (getType(d) == type)) {
+            if (type == TTEntry.T_EXACT) {
+                return;
+            } else if ((type == TTEntry.T_GE) && (sm.score <= getScore(d))) {
+                return;
+            } else if ((type == TTEntry.T_LE) && (sm.score >= getScore(d))) {
+                return;
+            }
+        }
+        if ((stats != null) && (k != key) && (d != 0))
+            stats.overwrites++;
+        int move;
+        if ((k != key) || (sm.from != sm.to)) {
+            move = sm.from + (sm.to << 6) + (sm.promoteTo << 12);
+        } else {
+            move = getMove(d);
+        }
+        store(idx, key, pack(move, scoreToHash(sm.score, ply), evalScore, depth, type, generation));
+    }
+
+    @Override
+    public void probe(long key, TTEntry result) {
+        long idx = h0(key);
+        long d = dataAt(idx);
+        int hashSlot = 0;
+        if ((keyAt(idx) ^ d) != key) {
+            idx = h1(key);
+            d = dataAt(idx);
+            hashSlot = 1;
+            if ((keyAt(idx) ^ d) != key) {
+                result.type = TTEntry.T_EMPTY;
+                if (stats != null) stats.probe(result);
+                return;
+            }
+        }
+        if (!isCurrent(d, generation)) {
+            d = setGeneration(d, generation);
+            store(idx, key, d);
+        }
+        unpack(key, d, hashSlot, result);
+        if (stats != null) stats.probe(result);
+    }
+
+    @Override
+    public int hashFull() {
+        int n = (int)Math.min(mask + 1, HASH_FULL_SAMPLES);
+        int used = 0;
+        for (int i = 0; i < n; i++) {
+            long d = dataAt(i);
+            if ((d != 0) && isCurrent(d, generation))
+                used++;
+        }
+        return used * 1000 / n;
+    }
+
+    /** Return a new TTEntry object containing the hash entry for "key". */
+    @Override
+    public TTEntry probe(long key) {
+        TTEntry ent = new TTEntry();
+        probe(key, ent);
+        return ent;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(data, 0);
+        Arrays.fill(keys, 0);
+    }
+
+    private long h0(long key) {
+        return key & mask;
+    }
+
+    private long h1(long key) {
+        return Long.rotateLeft(key, 32) & mask;
+    }
+}
@@ -1,6 +1,14 @@
 package org.petero.cuckoo.engine.chess;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -42,14 +50,41 @@ public class Parameters {
         public final int maxValue;
         private int value;
         public final int defaultValue;
+        private final int[] table;  // If not null, the value is also stored in table[tableIdx]
+        private final int tableIdx;
+        private boolean readAtInit; // True if the value has been used to initialize a constant
         SpinParam(String name) {
+            this(name, 0, -200, 200, null, 0);
+        }
+        SpinParam(String name, int def, int min, int max, int[] table, int tableIdx) {
             this.name = name;
             this.type = Type.SPIN;
             this.visible = false;
-            this.minValue = -200;
-            this.maxValue = 200;
-            this.value = 0;
-            this.defaultValue = 0;
+            this.minValue = min;
+            this.maxValue = max;
+            this.value = def;
+            this.defaultValue = def;
+            this.table = table;
+            this.tableIdx = tableIdx;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * Return true if the value is stored in an evaluation table. Changes then take
+         * effect after Evaluate.updateTables(). Other parameters are only read when
+         * the evaluation is initialized.
+         */
+        public boolean isTableElement() {
+            return table != null;
+        }
+
+        private void setValue(int val) {
+            value = val;
+            if (table != null)
+                table[tableIdx] = val;
         }
     }
 
@@ -86,27 +121,79 @@ public class Parameters {
         return parNames.toArray(new String[0]);
     }
 
+    /** Return the names of all spin parameters, including parameters not shown as UCI options. */
+    public final String[] getSpinParamNames() {
+        ArrayList<String> parNames = new ArrayList<>();
+        for (ParamBase p : params.values())
+            if (p.type == Type.SPIN)
+                parNames.add(p.name);
+        return parNames.toArray(new String[0]);
+    }
+
     public final ParamBase getParam(String name) {
-        return params.get(name);
+        return params.get(name.toLowerCase());
     }
 
+    /** Version of the parameter file format written by write(). */
+    public static final int FILE_VERSION = 1;
+
+    /** System property giving a parameter file to read at startup. */
+    public static final String FILE_PROPERTY = "cuckoo.params";
+
     private static final Parameters inst = new Parameters();
     private final Map<String, ParamBase> params = new TreeMap<>();
 
+    /** Values read from a parameter file for parameters that have not been registered yet. */
+    private final Map<String, String> pendingValues = new HashMap<>();
+
     private Parameters() {
         addPar(new SpinParam("qV"));
         addPar(new SpinParam("rV"));
         addPar(new SpinParam("bV"));
         addPar(new SpinParam("nV"));
         addPar(new SpinParam("pV"));
+
+        String fileName = System.getProperty(FILE_PROPERTY);
+        if (fileName != null) {
+            try {
+                readFile(fileName);
+            } catch (IOException e) {
+                throw new RuntimeException("Can not read parameter file " + fileName, e);
+            }
+        }
     }
 
     private void addPar(ParamBase p) {
-        params.put(p.name.toLowerCase(), p);
+        String key = p.name.toLowerCase();
+        params.put(key, p);
+        String pending = pendingValues.remove(key);
+        if (pending != null)
+            set(key, pending);
     }
 
+    /**
+     * Register the elements table[first..last] as hidden spin parameters, called
+     * name[first] to name[last]. The current table contents are the default values.
+     * Setting one of the parameters also changes the table element.
+     */
+    final void addTable(String name, int[] table, int first, int last, int minValue, int maxValue) {
+        for (int i = first; i <= last; i++)
+            addTableElement(name + "[" + i + "]", table, i, minValue, maxValue);
+    }
+
+    /** Register table[idx] as a hidden spin parameter. The current value is the default value. */
+    final void addTableElement(String name, int[] table, int idx, int minValue, int maxValue) {
+        addPar(new SpinParam(name, table[idx], minValue, maxValue, table, idx));
+    }
+
+    /**
+     * Return the value of a parameter that is used to initialize a constant. Later
+     * changes of the parameter are reported by read(), since they have no effect.
+     */
     final int getIntPar(String name) {
-        return ((SpinParam)params.get(name.toLowerCase())).value;
+        SpinParam sp = (SpinParam)params.get(name.toLowerCase());
+        sp.readAtInit = true;
+        return sp.value;
     }
 
     public final void set(String name, String value) {
@@ -121,7 +208,7 @@ public class Parameters {
             try {
                 int val = Integer.parseInt(value);
                 if ((val >= sp.minValue) && (val <= sp.maxValue))
-                    sp.value = val;
+                    sp.setValue(val);
             } catch (NumberFormatException ignored) {
             }
             break;
@@ -136,4 +223,93 @@ public class Parameters {
         }
         }
     }
+
+    /**
+     * Write the values of all spin parameters. The file starts with a version line,
+     * followed by one "name value" line for each parameter.
+     */
+    public final void write(PrintWriter pw) {
+        pw.printf("# CuckooChess evaluation parameters%n");
+        pw.printf("version %d%n", FILE_VERSION);
+        for (ParamBase p : params.values())
+            if (p.type == Type.SPIN)
+                pw.printf("%s %d%n", p.name, ((SpinParam)p).value);
+        pw.flush();
+    }
+
+    /**
+     * Read parameter values from a file written by write(). Changes of table parameters
+     * take effect after Evaluate.updateTables().
+     * @return The names of parameters that were not changed, because they are only used
+     *         when the program starts. They can be set with the cuckoo.params property.
+     * @throws IOException If the file can not be read or is not a valid parameter file.
+     */
+    public final List<String> readFile(String fileName) throws IOException {
+        try (BufferedReader r = Files.newBufferedReader(Paths.get(fileName))) {
+            return read(r);
+        }
+    }
+
+    /**
+     * Read parameter values written by write(). Lines starting with '#' are ignored.
+     * Parameters that are not in the file keep their current values. Values for
+     * parameters that have not been registered yet are used when they are registered.
+     * The whole file is checked before any value is changed, so if an exception is
+     * thrown, no parameter has been changed.
+     * @return The names of parameters that were not changed, because they are only used
+     *         when the program starts. They can be set with the cuckoo.params property.
+     * @throws IOException If the file can not be read, has the wrong version, or
+     *                     contains an invalid line.
+     */
+    public final List<String> read(BufferedReader r) throws IOException {
+        List<String> ignored = new ArrayList<>();
+        Map<SpinParam, Integer> newValues = new LinkedHashMap<>();
+        Map<String, String> newPending = new HashMap<>();
+        boolean versionSeen = false;
+        int lineNo = 0;
+        String line;
+        while ((line = r.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] words = line.split("\\s+");
+            if (words.length != 2)
+                throw new IOException("Invalid parameter file line " + lineNo + ": " + line);
+            if (!versionSeen) {
+                if (!words[0].equals("version") || !words[1].equals(Integer.toString(FILE_VERSION)))
+                    throw new IOException("Unsupported parameter file version");
+                versionSeen = true;
+                continue;
+            }
+            String key = words[0].toLowerCase();
+            ParamBase p = params.get(key);
+            if (p == null) {
+                newPending.put(key, words[1]);
+                continue;
+            }
+            if (p.type != Type.SPIN)
+                throw new IOException("Not a numeric parameter, line " + lineNo + ": " + line);
+            SpinParam sp = (SpinParam)p;
+            int val;
+            try {
+                val = Integer.parseInt(words[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid value, line " + lineNo + ": " + line);
+            }
+            if ((val < sp.minValue) || (val > sp.maxValue))
+                throw new IOException("Value out of range, line " + lineNo + ": " + line);
+            if (sp.readAtInit && (val != sp.value)) {
+                ignored.add(sp.name);
+                continue;
+            }
+            newValues.put(sp, val);
+        }
+        if (!versionSeen)
+            throw new IOException("Unsupported parameter file version");
+        for (Map.Entry<SpinParam, Integer> e : newValues.entrySet())
+            e.getKey().setValue(e.getValue());
+        pendingValues.putAll(newPending);
+        return ignored;
+    }
 }
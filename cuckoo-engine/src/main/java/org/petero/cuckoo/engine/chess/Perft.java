@@ -0,0 +1,253 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a given depth.
+ * <p>
+ * Used to verify the move generator and Position.makeMove/unMakeMove, and to
+ * measure their speed. Moves at the last ply are counted without being made.
+ * Subtrees are optionally stored in a hash table, and subtrees with enough
+ * remaining depth are searched in parallel by a fork-join pool.
+ * @author petero
+ */
+public class Perft {
+    /** Minimum remaining depth for a subtree to be split into parallel tasks. */
+    private static final int SPLIT_DEPTH = 4;
+    private static final long DEPTH_KEY = 0x9e3779b97f4a7c15L;
+
+    private final int nThreads;
+    private final long[] hashKeys;      // Hash key xor node count, or null if no hash table
+    private final long[] hashCounts;
+    private final int hashMask;
+
+    private final ThreadLocal<MoveGen> moveGens = ThreadLocal.withInitial(MoveGen::new);
+
+    /**
+     * Create a perft counter.
+     * @param nThreads     Number of threads to use.
+     * @param log2HashSize Log2 of the number of hash table entries, or -1 to not use a hash table.
+     *                     Each entry uses 16 bytes.
+     */
+    public Perft(int nThreads, int log2HashSize) {
+        this.nThreads = Math.max(1, nThreads);
+        if (log2HashSize >= 0) {
+            int size = 1 << log2HashSize;
+            hashKeys = new long[size];
+            hashCounts = new long[size];
+            hashMask = size - 1;
+        } else {
+            hashKeys = hashCounts = null;
+            hashMask = 0;
+        }
+    }
+
+    /** Return the number of leaf nodes "depth" plies below "pos". */
+    public final long perft(Position pos, int depth) {
+        PerftTask task = new PerftTask(new Position(pos), depth);
+        runTasks(task);
+        return task.join();
+    }
+
+    /**
+     * Print the number of leaf nodes below each legal move in "pos", followed by the
+     * total number of leaf nodes, the elapsed time and the speed in leaf nodes per second.
+     * @return The total number of leaf nodes.
+     */
+    public final long divide(Position pos, int depth, PrintStream os) {
+        long t0 = System.nanoTime();
+        long total;
+        if (depth <= 0) {
+            total = 1;
+        } else {
+            Position p = new Position(pos);
+            MoveGen.MoveList moves = new MoveGen().legalMoves(p);
+            PerftTask[] tasks = new PerftTask[moves.size];
+            UndoInfo ui = new UndoInfo();
+            for (int mi = 0; mi < moves.size; mi++) {
+                p.makeMove(moves.m[mi], ui);
+                tasks[mi] = new PerftTask(new Position(p), depth - 1);
+                p.unMakeMove(moves.m[mi], ui);
+            }
+            runTasks(tasks);
+            total = 0;
+            for (int mi = 0; mi < moves.size; mi++) {
+                long n = tasks[mi].join();
+                os.printf("%s: %d%n", TextIO.moveToUCIString(moves.m[mi]), n);
+                total += n;
+            }
+        }
+        long t = Math.max(System.nanoTime() - t0, 1);
+        os.printf("%nNodes searched: %d%n", total);
+        os.printf("Time: %.3f s  Speed: %.2f Mnps%n", t * 1e-9, total * 1e3 / t);
+        return total;
+    }
+
+    /** Run "tasks" to completion, in the current thread if only one thread is used. */
+    private void runTasks(PerftTask... tasks) {
+        if (nThreads == 1) {
+            for (PerftTask t : tasks)
+                t.invoke();
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try {
+            pool.invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    invokeAll(tasks);
+                    return null;
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Count leaf nodes in the current thread. "pos" is restored before returning.
+     * @param uiVec Undo information for each remaining depth.
+     */
+    private long count(Position pos, int depth, UndoInfo[] uiVec) {
+        if (depth <= 0)
+            return 1;
+        MoveGen moveGen = moveGens.get();
+        MoveGen.MoveList moves = moveGen.legalMoves(pos);
+        long nodes;
+        if (depth == 1) {
+            nodes = moves.size;
+        } else {
+            long key = hashKey(pos, depth);
+            nodes = probe(key);
+            if (nodes < 0) {
+                nodes = 0;
+                UndoInfo ui = uiVec[depth];
+                for (int mi = 0; mi < moves.size; mi++) {
+                    Move m = moves.m[mi];
+                    pos.makeMove(m, ui);
+                    nodes += count(pos, depth - 1, uiVec);
+                    pos.unMakeMove(m, ui);
+                }
+                store(key, nodes);
+            }
+        }
+        moveGen.returnMoveList(moves);
+        return nodes;
+    }
+
+    /**
+     * Counts a subtree. If the remaining depth is large enough, the subtree is
+     * split in one task per move, which are run in parallel.
+     */
+    private final class PerftTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 4238573011954170364L;
+
+        private final transient Position pos;
+        private final transient int depth;
+
+        PerftTask(Position pos, int depth) {
+            this.pos = pos;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if ((depth < SPLIT_DEPTH) || (nThreads == 1)) {
+                UndoInfo[] uiVec = new UndoInfo[depth + 1];
+                for (int i = 0; i <= depth; i++)
+                    uiVec[i] = new UndoInfo();
+                return count(pos, depth, uiVec);
+            }
+            long key = hashKey(pos, depth);
+            long nodes = probe(key);
+            if (nodes >= 0)
+                return nodes;
+            MoveGen moveGen = moveGens.get();
+            MoveGen.MoveList moves = moveGen.legalMoves(pos);
+            PerftTask[] tasks = new PerftTask[moves.size];
+            UndoInfo ui = new UndoInfo();
+            for (int mi = 0; mi < moves.size; mi++) {
+                Move m = moves.m[mi];
+                pos.makeMove(m, ui);
+                tasks[mi] = new PerftTask(new Position(pos), depth - 1);
+                pos.unMakeMove(m, ui);
+            }
+            moveGen.returnMoveList(moves);
+            invokeAll(tasks);
+            nodes = 0;
+            for (PerftTask t : tasks)
+                nodes += t.join();
+            store(key, nodes);
+            return nodes;
+        }
+    }
+
+    private static long hashKey(Position pos, int depth) {
+        return pos.zobristHash() + depth * DEPTH_KEY;
+    }
+
+    /**
+     * Return the stored node count for "key", or -1 if not found. Each entry is
+     * stored as two words, with the key xor'ed with the count, so an entry that
+     * is being written by another thread is never mistaken for a valid entry.
+     */
+    private long probe(long key) {
+        if (hashKeys == null)
+            return -1;
+        int idx = (int)key & hashMask;
+        long nodes = hashCounts[idx];
+        return ((hashKeys[idx] ^ nodes) == key) ? nodes : -1;
+    }
+
+    private void store(long key, long nodes) {
+        if (hashKeys == null)
+            return;
+        int idx = (int)key & hashMask;
+        hashCounts[idx] = nodes;
+        hashKeys[idx] = key ^ nodes;
+    }
+
+    /**
+     * Run perft from the command line.
+     * Arguments: depth [-threads n] [-hash log2size] [fen]
+     */
+    public static void main(String[] args) throws ChessParseError {
+        if (args.length < 1) {
+            System.out.print("Usage: perft depth [-threads n] [-hash log2size] [fen]\n");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int log2HashSize = -1;
+        StringBuilder fen = new StringBuilder();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-hash" -> log2HashSize = Integer.parseInt(args[++i]);
+                default -> fen.append(args[i]).append(' ');
+            }
+        }
+        Position pos = TextIO.readFEN(fen.isEmpty() ? TextIO.START_POS_FEN : fen.toString().trim());
+        new Perft(threads, log2HashSize).divide(pos, depth, System.out);
+    }
+}
@@ -65,6 +65,10 @@ public class Position {
     public int wMtrlPawns; // Total value of all white pawns
     public int bMtrlPawns; // Total value of all black pawns
 
+    // Neural network and its first layer accumulator, or null if not used
+    NNUE nnue;
+    short[] nnueAcc;
+
     /** Initialize board to empty position. */
     public Position() {
         squares = new int[64];
@@ -116,6 +120,8 @@ public class Position {
         bMtrl = other.bMtrl;
         wMtrlPawns = other.wMtrlPawns;
         bMtrlPawns = other.bMtrlPawns;
+        nnue = other.nnue;
+        nnueAcc = (other.nnueAcc != null) ? other.nnueAcc.clone() : null;
     }
     
     @Override
@@ -234,6 +240,9 @@ public class Position {
 
         psScore1[piece] += (short) (Evaluate.psTab1[piece][to] - Evaluate.psTab1[piece][from]);
         psScore2[piece] += (short) (Evaluate.psTab2[piece][to] - Evaluate.psTab2[piece][from]);
+
+        if (nnueAcc != null)
+            nnue.movePiece(nnueAcc, piece, from, to);
     }
 
     /** Set a square to a piece value. */
@@ -297,6 +306,40 @@ public class Position {
         psScore2[removedPiece] -= (short) Evaluate.psTab2[removedPiece][square];
         psScore1[piece]        += (short) Evaluate.psTab1[piece][square];
         psScore2[piece]        += (short) Evaluate.psTab2[piece][square];
+
+        // Update neural network accumulator
+        if (nnueAcc != null) {
+            if (removedPiece != Piece.EMPTY)
+                nnue.removePiece(nnueAcc, removedPiece, square);
+            if (piece != Piece.EMPTY)
+                nnue.addPiece(nnueAcc, piece, square);
+        }
+    }
+
+    /**
+     * Recompute the piece/square table scores from the current evaluation tables.
+     * Must be called for positions set up before Evaluate.updateTables() changed the tables.
+     */
+    public final void updatePsScores() {
+        for (int i = 0; i < Piece.nPieceTypes; i++) {
+            psScore1[i] = 0;
+            psScore2[i] = 0;
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int p = squares[sq];
+            psScore1[p] += (short) Evaluate.psTab1[p][sq];
+            psScore2[p] += (short) Evaluate.psTab2[p][sq];
+        }
+    }
+
+    /**
+     * Use neural network "net" for evaluation of this position. The first layer
+     * accumulator is then updated incrementally by setPiece and makeMove/unMakeMove.
+     * @param net The network to use, or null to stop updating the accumulator.
+     */
+    public final void setNNUE(NNUE net) {
+        nnue = net;
+        nnueAcc = (net != null) ? net.newAccumulator(this) : null;
     }
 
     /**
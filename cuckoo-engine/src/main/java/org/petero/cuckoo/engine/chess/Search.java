@@ -19,8 +19,12 @@
 package org.petero.cuckoo.engine.chess;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.petero.cuckoo.engine.chess.TranspositionTable.TTEntry;
 
 /**
@@ -32,7 +36,7 @@ public class Search {
 
     Position pos;
     final MoveGen moveGen;
-    final Evaluate eval;
+    final Evaluator eval;
     final KillerTable kt;
     final History ht;
     final long[] posHashList;         // List of hashes for previous positions up to the last "zeroing" move.
@@ -44,28 +48,53 @@ public class Search {
     private static final class SearchTreeInfo {
         final UndoInfo undoInfo;
         final Move hashMove;         // Temporary storage for local hashMove variable
+        final TTEntry ttEntry;       // Copy of the transposition table entry for this ply
         boolean allowNullMove; // Don't allow two null-moves in a row
         final Move bestMove;         // Copy of the best found move at this ply
         Move currentMove;      // Move currently being searched
         int lmr;               // LMR reduction amount
         long nodeIdx;
+        final Move[] killers;        // Killer moves added by the killer move stage
+        int nKillers;
         SearchTreeInfo() {
             undoInfo = new UndoInfo();
             hashMove = new Move(0, 0, 0);
+            ttEntry = new TTEntry();
             allowNullMove = true;
             bestMove = new Move(0, 0, 0);
+            killers = new Move[4];
+            for (int i = 0; i < killers.length; i++)
+                killers[i] = new Move(0, 0, 0);
         }
     }
     final SearchTreeInfo[] searchTreeInfo;
 
     // Time management
-    long tStart;            // Time when search started
-    long minTimeMillis;     // Minimum recommended thinking time
-    long maxTimeMillis;     // Maximum allowed thinking time
+    long tStart;            // System.nanoTime() when search started
+    volatile long minTimeMillis;     // Minimum recommended thinking time
+    volatile long maxTimeMillis;     // Maximum allowed thinking time
     boolean searchNeedMoreTime; // True if negaScout should use up to maxTimeMillis time.
+    private final TimeManager timeManager = new TimeManager(); // Adjusts minTimeMillis during the search
     private int maxNodes;   // Maximum number of nodes to search (approximately)
     int nodesToGo;          // Number of nodes until next time check
-    public final int nodesBetweenTimeCheck = 5000; // How often to check remaining time
+    int nodesBetweenTimeCheck;  // How often to check remaining time, adjusted to the search speed
+    private long tLastTimeCheck;    // System.nanoTime() at the last time check
+    private static final long TIME_CHECK_INTERVAL = 100000;   // Nanoseconds between time checks
+    private static final int MAX_NODES_BETWEEN_TIME_CHECK = 5000;
+
+    // Stop flag, checked at each time check. Set when the maximum time limit has
+    // passed, by the timer thread or directly by timeLimit().
+    private volatile boolean stopFlag;
+    private boolean searching;              // True while iterativeDeepening is running
+    private ScheduledFuture<?> deadlineTask;
+    private static final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "Search timer");
+        t.setDaemon(true);
+        return t;
+    });
+    static {
+        timer.setRemoveOnCancelPolicy(true);
+    }
 
     // Reduced strength variables
     private int strength = 1000; // Strength (0-1000)
@@ -75,10 +104,10 @@ public class Search {
     // Search statistics stuff
     int nodes;
     int qNodes;
-    int[] nodesPlyVec;
-    int[] nodesDepthVec;
-    int totalNodes;
-    long tLastStats;        // Time when notifyStats was last called
+    final int[] nodesPlyVec = new int[20];
+    final int[] nodesDepthVec = new int[20];
+    long totalNodes;
+    long tLastStats;        // System.nanoTime() when notifyStats was last called
     boolean verbose;
 
     public static final int MATE0 = 32000;
@@ -86,13 +115,31 @@ public class Search {
     public static final int UNKNOWN_SCORE = -32767; // Represents unknown static eval score
     int q0Eval; // Static eval score at first level of quiescence search 
 
+    private int multiPV = 1;            // Number of root moves to compute exact scores for
+
+    // Lazy SMP
+    private SearchHelpers helperPool = null; // Evaluators and threads for helper searches
+    private boolean ownHelperPool = false;  // True if helperPool was created by setHelperThreads()
+    private int threadNo = 0;           // 0 for the main search, >0 for helper searches
+    private Search[] helpers = new Search[0];
+    private Future<?>[] helperTasks = new Future<?>[0];
+
     public Search(Position pos, long[] posHashList, int posHashListSize, TranspositionTable tt) {
+        this(pos, posHashList, posHashListSize, tt, new Evaluate());
+    }
+
+    /**
+     * Create a search object that uses "eval" for static evaluation. The hash tables
+     * in "eval" can then be kept between searches. Helper threads use their own
+     * evaluators, see setHelperThreads() and setHelpers().
+     */
+    public Search(Position pos, long[] posHashList, int posHashListSize, TranspositionTable tt, Evaluator eval) {
         this.pos = new Position(pos);
         this.moveGen = new MoveGen();
         this.posHashList = posHashList;
         this.posHashListSize = posHashListSize;
         this.tt = tt;
-        eval = new Evaluate();
+        this.eval = eval;
         kt = new KillerTable();
         ht = new History();
         posHashFirstNew = posHashListSize;
@@ -106,6 +153,9 @@ public class Search {
         for (int i = 0; i < vecLen; i++) {
             searchTreeInfo[i] = new SearchTreeInfo();
         }
+        for (int i = 0; i < MAX_PV_LENGTH; i++) {
+            pvMoves[i] = new Move(0, 0, 0);
+        }
     }
 
     /**
@@ -114,9 +164,13 @@ public class Search {
     public interface Listener {
         void notifyDepth(int depth);
         void notifyCurrMove(Move m, int moveNr);
-        void notifyPV(int depth, int score, int time, int nodes, int nps,
+        /**
+         * Report a PV. multiPVIndex is 1 for the best move, 2 for the second best, etc.
+         * The pv list and its moves are reused by the search, so they are only valid during the call.
+         */
+        void notifyPV(int depth, int multiPVIndex, int score, int time, long nodes, long nps,
                       boolean isMate, boolean upperBound, boolean lowerBound, ArrayList<Move> pv);
-        void notifyStats(int nodes, int nps, int time);
+        void notifyStats(long nodes, long nps, int time);
     }
 
     Listener listener;
@@ -128,6 +182,8 @@ public class Search {
         final Move move;
         int nodes;
         MoveInfo(Move m) { move = m;  nodes = 0; }
+        static final Comparator<MoveInfo> byScore = new SortByScore();
+        static final Comparator<MoveInfo> byNodes = new SortByNodes();
         public static final class SortByScore implements Comparator<MoveInfo> {
             @Override
 			public int compare(MoveInfo mi1, MoveInfo mi2) {
@@ -154,9 +210,68 @@ public class Search {
         }
     }
 
+    /**
+     * Stable insertion sort of a[from..to-1]. Used instead of Arrays.sort(), which
+     * allocates temporary storage for arrays with more than 32 elements.
+     */
+    private static void sortMoveInfo(MoveInfo[] a, int from, int to, Comparator<MoveInfo> c) {
+        for (int i = from + 1; i < to; i++) {
+            MoveInfo tmp = a[i];
+            int j = i;
+            while ((j > from) && (c.compare(a[j - 1], tmp) > 0)) {
+                a[j] = a[j - 1];
+                j--;
+            }
+            a[j] = tmp;
+        }
+    }
+
+    /**
+     * Set the time limits in milliseconds, counted from the start of the search.
+     * Can be called while the search is running, for example with (0, 0) to stop it.
+     */
     final public void timeLimit(int minTimeLimit, int maxTimeLimit) {
         minTimeMillis = minTimeLimit;
         maxTimeMillis = maxTimeLimit;
+        scheduleDeadline();
+    }
+
+    /**
+     * Arrange for the stop flag to be set when maxTimeMillis has passed since the
+     * search started. Does nothing if no search is running.
+     */
+    private synchronized void scheduleDeadline() {
+        if (deadlineTask != null) {
+            deadlineTask.cancel(false);
+            deadlineTask = null;
+        }
+        long maxTime = maxTimeMillis;
+        if (!searching || (maxTime < 0))
+            return;
+        long delay = tStart + maxTime * 1000000 - System.nanoTime();
+        if (delay <= 0)
+            stopFlag = true;
+        else
+            deadlineTask = timer.schedule(() -> { stopFlag = true; }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void setSearching(boolean searching) {
+        this.searching = searching;
+        scheduleDeadline();
+    }
+
+    /** Return the number of milliseconds since the search started. */
+    private long elapsedMillis(long tNow) {
+        return (tNow - tStart) / 1000000;
+    }
+
+    /**
+     * Enable or disable dynamic time management. If disabled, which is the default,
+     * the search stops after minTimeMillis, or after maxTimeMillis if the best move
+     * fails low.
+     */
+    final public void setDynamicTime(boolean dynamic) {
+        timeManager.setEnabled(dynamic);
     }
 
     final public void setStrength(int strength, long randomSeed) {
@@ -167,12 +282,112 @@ public class Search {
         this.randomSeed = randomSeed;
     }
 
+    /**
+     * Set number of helper threads to use. Each helper thread runs its own iterative
+     * deepening search on a copy of the root position, sharing only the transposition table.
+     * Helper threads never report anything. The best move is always taken from the main search.
+     * The helper evaluators and threads belong to this Search object. Use setHelpers()
+     * to keep them between Search objects.
+     */
+    final public void setHelperThreads(int nHelpers) {
+        setHelpers((nHelpers > 0) ? new SearchHelpers(nHelpers, eval) : null);
+        ownHelperPool = helperPool != null;
+    }
+
+    /**
+     * Use the evaluators and threads in "helpers" for helper searches, or no helper
+     * searches if null. "helpers" can be used again by a later search, but not by
+     * two searches at the same time.
+     */
+    final public void setHelpers(SearchHelpers helpers) {
+        if (ownHelperPool)
+            helperPool.shutdown();
+        helperPool = helpers;
+        ownHelperPool = false;
+    }
+
+    /**
+     * Set the number of root moves to find exact scores for. The best moves are kept first
+     * in the root move list, and the PVs for all of them are reported when an iteration
+     * is finished. Moves outside the best multiPV moves are searched with a null window
+     * around the score of the worst of the best moves.
+     */
+    final public void setMultiPV(int multiPV) {
+        this.multiPV = Math.max(multiPV, 1);
+    }
+
+    /** Total number of nodes searched so far, including nodes searched by helper threads. */
+    final long getTotalNodes() {
+        long ret = totalNodes;
+        for (Search h : helpers)
+            ret += h.totalNodes;
+        return ret;
+    }
+
+    /**
+     * Evaluation hash table statistics, including helper threads. The helper
+     * thread counters are not synchronized, so they are approximate during the search.
+     */
+    public final Evaluate.HashStats getEvalHashStats() {
+        Evaluate.HashStats ret = new Evaluate.HashStats();
+        ret.add(eval.getHashStats());
+        for (Search h : helpers)
+            ret.add(h.eval.getHashStats());
+        return ret;
+    }
+
+    private static final int[] skipSize  = { 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 4, 4, 4, 4, 4, 4, 4 };
+    private static final int[] skipPhase = { 0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 5, 6, 7 };
+
+    /** Return true if a helper thread should skip this iteration, to make threads search different depths. */
+    private boolean skipDepth(int depth) {
+        if ((threadNo == 0) || (depth <= 2))
+            return false;
+        int i = (threadNo - 1) % skipSize.length;
+        return ((depth + skipPhase[i]) / skipSize[i]) % 2 != 0;
+    }
+
+    private void startHelpers(MoveGen.MoveList scMovesIn, int maxDepth) {
+        final int nHelpers = (helperPool != null) ? helperPool.size() : 0;
+        helpers = new Search[nHelpers];
+        helperTasks = new Future<?>[nHelpers];
+        for (int i = 0; i < nHelpers; i++) {
+            final Search h = new Search(pos, posHashList.clone(), posHashListSize, tt, helperPool.evaluator(i));
+            h.threadNo = i + 1;
+            h.setStrength(strength, randomSeed);
+            final MoveGen.MoveList hMoves = new MoveGen.MoveList();
+            for (int mi = 0; mi < scMovesIn.size; mi++)
+                hMoves.m[mi] = new Move(scMovesIn.m[mi]);
+            hMoves.size = scMovesIn.size;
+            helpers[i] = h;
+            helperTasks[i] = helperPool.start(() -> h.iterativeDeepening(hMoves, maxDepth, -1, false));
+        }
+    }
+
+    private void stopHelpers() {
+        for (Search h : helpers)
+            h.timeLimit(0, 0);
+        for (Future<?> f : helperTasks) {
+            try {
+                f.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                throw new RuntimeException(ex.getCause());
+            }
+        }
+        helperTasks = new Future<?>[0];
+    }
+
     final public Move iterativeDeepening(MoveGen.MoveList scMovesIn,
             int maxDepth, int initialMaxNodes, boolean verbose) {
-        tStart = System.currentTimeMillis();
+        tStart = tLastTimeCheck = tLastStats = System.nanoTime();
         totalNodes = 0;
+        timeManager.reset();
         if (scMovesIn.size <= 0)
             return null; // No moves to search
+        stopFlag = false;
+        setSearching(true);
         MoveInfo[] scMoves = new MoveInfo[scMovesIn.size];
         for (int mi = 0, len = 0; mi < scMovesIn.size; mi++) {
             Move m = scMovesIn.m[mi];
@@ -180,6 +395,7 @@ public class Search {
         }
         maxNodes = initialMaxNodes;
         nodesToGo = 0;
+        nodesBetweenTimeCheck = 100;
         Position origPos = new Position(pos);
         int bestScoreLastIter = 0;
         Move bestMove = scMoves[0].move;
@@ -190,20 +406,29 @@ public class Search {
         for (SearchTreeInfo treeInfo : searchTreeInfo) {
             treeInfo.allowNullMove = true;
         }
+        final int nPV = Math.min(multiPV, scMoves.length);
+        startHelpers(scMovesIn, maxDepth);
         try {
         int depth;
         for (depth = 1; ; depth++) {
+            if (skipDepth(depth) && (depth < maxDepth))
+                continue;
             initNodeStats();
+            long tIterStart = System.nanoTime();
+            long iterStartNodes = totalNodes;
             if (listener != null) listener.notifyDepth(depth);
             int aspirationDelta = (Math.abs(bestScoreLastIter) <= MATE0 / 2) ? 20 : 1000;
             int alpha = depth > 1 ? Math.max(bestScoreLastIter - aspirationDelta, -Search.MATE0) : -Search.MATE0;
             int bestScore = -Search.MATE0;
-            UndoInfo ui = new UndoInfo();
+            final UndoInfo ui = rootUndoInfo;
             boolean needMoreTime = false;
+            boolean iterationDone = true;
             for (int mi = 0; mi < scMoves.length; mi++) {
                 searchNeedMoreTime = (mi > 0);
+                if ((depth > 1) && (mi > 0) && (mi < nPV))
+                    alpha = -Search.MATE0;      // Exact score needed for all multiPV moves
                 Move m = scMoves[mi].move;
-                if ((listener != null) && (System.currentTimeMillis() - tStart >= 1000)) {
+                if ((listener != null) && (elapsedMillis(System.nanoTime()) >= 1000)) {
                     listener.notifyCurrMove(m, mi + 1);
                 }
                 nodes = qNodes = 0;
@@ -211,7 +436,11 @@ public class Search {
                 boolean givesCheck = MoveGen.givesCheck(pos, m);
                 int beta;
                 if (depth > 1) {
-                    beta = (mi == 0) ? Math.min(bestScoreLastIter + aspirationDelta, Search.MATE0) : alpha + 1;
+                    if (mi == 0) {
+                        beta = Math.min(bestScoreLastIter + aspirationDelta, Search.MATE0);
+                    } else {
+                        beta = (mi < nPV) ? Search.MATE0 : alpha + 1;
+                    }
                 } else {
                     beta = Search.MATE0;
                 }
@@ -221,7 +450,7 @@ public class Search {
                 boolean isPromotion = (m.promoteTo != Piece.EMPTY);
                 if ((depth >= 3) && !isCapture && !isPromotion) {
                     if (!givesCheck && notPassedPawnPush(pos, m)) {
-                        if (mi >= 3)
+                        if (mi >= Math.max(3, nPV))
                             lmr = 1;
                     }
                 }
@@ -255,11 +484,13 @@ public class Search {
                         retryDelta = Search.MATE0 * 2;
                         if (mi != 0)
                             needMoreTime = true;
-                        bestMove = m;
+                        if (nPV == 1)
+                            bestMove = m;
                         if (verbose)
                             System.out.printf("%-6s %6d %6d %6d >=\n", TextIO.moveToString(pos, m, false),
                                     score, nodes, qNodes);
-                        notifyPV(depth, score, false, true, m);
+                        if (nPV == 1)
+                            notifyPV(depth, 1, score, false, true, m);
                         nodes = qNodes = 0;
                         posHashList[posHashListSize++] = pos.zobristHash();
                         pos.makeMove(m, ui);
@@ -277,7 +508,8 @@ public class Search {
                         if (verbose)
                             System.out.printf("%-6s %6d %6d %6d <=\n", TextIO.moveToString(pos, m, false),
                                     score, nodes, qNodes);
-                        notifyPV(depth, score, true, false, m);
+                        if (nPV == 1)
+                            notifyPV(depth, 1, score, true, false, m);
                         nodes = qNodes = 0;
                         posHashList[posHashListSize++] = pos.zobristHash();
                         pos.makeMove(m, ui);
@@ -304,54 +536,70 @@ public class Search {
                                 TextIO.moveToString(pos, m, false), score,
                                 nodes, qNodes, (score > alpha ? " *" : ""), PV);
                     }
-                    if (havePV && (depth > 1)) {
-                        notifyPV(depth, score, false, false, m);
+                    if (havePV && (depth > 1) && (nPV == 1)) {
+                        notifyPV(depth, 1, score, false, false, m);
                     }
                 }
                 scMoves[mi].move.score = score;
                 scMoves[mi].nodes = nodesThisMove;
                 bestScore = Math.max(bestScore, score);
                 if (depth > 1) {
-                    if ((score > alpha) || (mi == 0)) {
-                        alpha = score;
+                    if ((score > alpha) || (mi < nPV)) {
+                        // Keep the best nPV moves first, sorted by score
+                        int pvIdx = 0;
+                        while ((pvIdx < mi) && (scMoves[pvIdx].move.score >= score))
+                            pvIdx++;
                         MoveInfo tmp = scMoves[mi];
-                        for (int i = mi - 1; i >= 0;  i--) {
+                        for (int i = mi - 1; i >= pvIdx;  i--) {
                             scMoves[i + 1] = scMoves[i];
                         }
-                        scMoves[0] = tmp;
+                        scMoves[pvIdx] = tmp;
                         bestMove = scMoves[0].move;
                     }
+                    if (mi >= nPV - 1)
+                        alpha = scMoves[nPV - 1].move.score;
                 }
                 if (depth > 1) {
-                    long timeLimit = needMoreTime ? maxTimeMillis : minTimeMillis;
+                    long timeLimit = needMoreTime ? maxTimeMillis :
+                                     timeManager.softTimeLimit(minTimeMillis, maxTimeMillis);
                     if (timeLimit >= 0) {
-                        long tNow = System.currentTimeMillis();
-                        if (tNow - tStart >= timeLimit)
+                        long tNow = System.nanoTime();
+                        if ((elapsedMillis(tNow) >= timeLimit) && (mi < scMoves.length - 1)) {
+                            iterationDone = false;
                             break;
+                        }
                     }
                 }
             }
             if (depth == 1) {
-                Arrays.sort(scMoves, new MoveInfo.SortByScore());
+                sortMoveInfo(scMoves, 0, scMoves.length, MoveInfo.byScore);
                 bestMove = scMoves[0].move;
-                notifyPV(depth, bestMove.score, false, false, bestMove);
+                if (nPV == 1)
+                    notifyPV(depth, 1, bestMove.score, false, false, bestMove);
+            }
+            if ((nPV > 1) && iterationDone) {
+                for (int i = 0; i < nPV; i++)
+                    notifyPV(depth, i + 1, scMoves[i].move.score, false, false, scMoves[i].move);
             }
-            long tNow = System.currentTimeMillis();
+            long tNow = System.nanoTime();
             if (verbose) {
                 for (int i = 0; i < 20; i++) {
                     System.out.printf("%2d %7d %7d\n", i, nodesPlyVec[i], nodesDepthVec[i]);
                 }
-                System.out.printf("Time: %.3f depth:%d nps:%d\n", (tNow - tStart) * .001, depth,
-                        (int)(totalNodes / ((tNow - tStart) * .001)));
+                System.out.printf("Time: %.3f depth:%d nps:%d\n", (tNow - tStart) * 1e-9, depth,
+                        (int)(totalNodes / ((tNow - tStart) * 1e-9)));
             }
+            if (iterationDone)
+                timeManager.iterationDone(bestMove, scMoves[0].move.score, scMoves[0].nodes,
+                                          totalNodes - iterStartNodes, (tNow - tIterStart) / 1000000);
             if (maxTimeMillis >= 0) {
-                if (tNow - tStart >= minTimeMillis)
+                if (timeManager.stopSearch(elapsedMillis(tNow), minTimeMillis, maxTimeMillis))
                     break;
             }
             if (depth >= maxDepth)
                 break;
             if (maxNodes >= 0) {
-                if (totalNodes >= maxNodes)
+                if (getTotalNodes() >= maxNodes)
                     break;
             }
             int plyToMate = Search.MATE0 - Math.abs(bestScore);
@@ -361,11 +609,14 @@ public class Search {
 
             if (depth > 1) {
                 // Moves that were hard to search should be searched early in the next iteration
-                Arrays.sort(scMoves, 1, scMoves.length, new MoveInfo.SortByNodes());
+                sortMoveInfo(scMoves, nPV, scMoves.length, MoveInfo.byNodes);
             }
         }
         } catch (StopSearch ss) {
             pos = origPos;
+        } finally {
+            setSearching(false);
+            stopHelpers();
         }
         notifyStats();
 
@@ -376,7 +627,7 @@ public class Search {
         return bestMove;
     }
 
-    private void notifyPV(int depth, int score, boolean uBound, boolean lBound, Move m) {
+    private void notifyPV(int depth, int multiPVIndex, int score, boolean uBound, boolean lBound, Move m) {
         if (listener != null) {
             boolean isMate = false;
             if (score > MATE0 / 2) {
@@ -386,25 +637,83 @@ public class Search {
                 isMate = true;
                 score = -((MATE0 + score - 1) / 2);
             }
-            long tNow = System.currentTimeMillis();
-            int time = (int) (tNow - tStart);
-            int nps = (time > 0) ? (int)(totalNodes / (time / 1000.0)) : 0;
-            ArrayList<Move> pv = tt.extractPVMoves(pos, m);
-            listener.notifyPV(depth, score, time, totalNodes, nps, isMate, uBound, lBound, pv);
+            int time = (int) elapsedMillis(System.nanoTime());
+            long nodes = getTotalNodes();
+            long nps = (time > 0) ? (long)(nodes / (time / 1000.0)) : 0;
+            ArrayList<Move> pv = extractPVMoves(m);
+            listener.notifyPV(depth, multiPVIndex, score, time, nodes, nps, isMate, uBound, lBound, pv);
         }
     }
 
+    // Preallocated storage for the root search and PV extraction
+    private final UndoInfo rootUndoInfo = new UndoInfo();
+    private final ArrayList<Move> pvList = new ArrayList<>(MAX_PV_LENGTH);
+    private final Move[] pvMoves = new Move[MAX_PV_LENGTH];
+    private final long[] pvHashes = new long[MAX_PV_LENGTH];
+    private final TTEntry pvEntry = new TTEntry();
+    private final Move pvHashMove = new Move(0, 0, 0);
+    private static final int MAX_PV_LENGTH = 100;
+
+    /**
+     * Extract the PV starting with root move "m" from the transposition table.
+     * Same as TranspositionTable.extractPVMoves(), but works on preallocated objects.
+     * The returned list is reused by the next call.
+     */
+    final ArrayList<Move> extractPVMoves(Move m) {
+        pvList.clear();
+        int len = 0;
+        while (true) {
+            Move pvMove = pvMoves[len];
+            pvMove.copyFrom(m);
+            pvMove.score = m.score;
+            pvList.add(pvMove);
+            pos.makeMove(pvMove, searchTreeInfo[len].undoInfo);
+            long hash = pos.zobristHash();
+            boolean repetition = false;
+            for (int i = 0; i < len; i++)
+                if (pvHashes[i] == hash) {
+                    repetition = true;
+                    break;
+                }
+            pvHashes[len++] = hash;
+            if (repetition || (len >= MAX_PV_LENGTH))
+                break;
+            tt.probe(pos.historyHash(), pvEntry);
+            if (pvEntry.type == TTEntry.T_EMPTY)
+                break;
+            m = pvHashMove;
+            if (!TranspositionTable.contains(m, pvEntry, moveGen, pos))
+                break;
+        }
+        for (int i = len - 1; i >= 0; i--)
+            pos.unMakeMove(pvMoves[i], searchTreeInfo[i].undoInfo);
+        return pvList;
+    }
+
     private void notifyStats() {
-        long tNow = System.currentTimeMillis();
+        long tNow = System.nanoTime();
         if (listener != null) {
-            int time = (int) (tNow - tStart);
-            int nps = (time > 0) ? (int)(totalNodes / (time / 1000.0)) : 0;
-            listener.notifyStats(totalNodes, nps, time);
+            int time = (int) elapsedMillis(tNow);
+            long nodes = getTotalNodes();
+            long nps = (time > 0) ? (long)(nodes / (time / 1000.0)) : 0;
+            listener.notifyStats(nodes, nps, time);
         }
         tLastStats = tNow;
     }
 
-    private static final Move emptyMove = new Move(0, 0, Piece.EMPTY, 0);
+    /**
+     * Adjust nodesBetweenTimeCheck so that the time is checked about every
+     * TIME_CHECK_INTERVAL nanoseconds, based on the speed since the last check.
+     */
+    private void updateTimeCheckInterval(long tNow) {
+        long dt = Math.max(tNow - tLastTimeCheck, 1);
+        long n = nodesBetweenTimeCheck * TIME_CHECK_INTERVAL / dt;
+        n = (n + nodesBetweenTimeCheck) / 2;
+        nodesBetweenTimeCheck = (int)Math.min(Math.max(n, 1), MAX_NODES_BETWEEN_TIME_CHECK);
+        tLastTimeCheck = tNow;
+    }
+
+    private final Move emptyMove = new Move(0, 0, Piece.EMPTY, 0);
 
     /** 
      * Main recursive search algorithm.
@@ -417,14 +726,17 @@ public class Search {
             searchTreeInfo[ply].nodeIdx = log.logNodeStart(sti.nodeIdx, sti.currentMove, alpha, beta, ply, depth/plyScale);
         }
         if (--nodesToGo <= 0) {
+            long tNow = System.nanoTime();
+            updateTimeCheckInterval(tNow);
             nodesToGo = nodesBetweenTimeCheck;
-            long tNow = System.currentTimeMillis();
-            long timeLimit = searchNeedMoreTime ? maxTimeMillis : minTimeMillis;
-            if (    ((timeLimit >= 0) && (tNow - tStart >= timeLimit)) ||
-                    ((maxNodes >= 0) && (totalNodes >= maxNodes))) {
+            long timeLimit = searchNeedMoreTime ? maxTimeMillis :
+                             timeManager.softTimeLimit(minTimeMillis, maxTimeMillis);
+            if (    stopFlag ||
+                    ((timeLimit >= 0) && (elapsedMillis(tNow) >= timeLimit)) ||
+                    ((maxNodes >= 0) && (getTotalNodes() >= maxNodes))) {
                 throw new StopSearch();
             }
-            if (tNow - tLastStats >= 1000) {
+            if (tNow - tLastStats >= 1000000000L) {
                 notifyStats();
             }
         }
@@ -467,9 +779,10 @@ public class Search {
 
         int evalScore = UNKNOWN_SCORE;
         // Check transposition table
-        TTEntry ent = tt.probe(hKey);
-        Move hashMove = null;
         SearchTreeInfo sti = searchTreeInfo[ply];
+        TTEntry ent = sti.ttEntry;
+        tt.probe(hKey, ent);
+        Move hashMove = null;
         if (ent.type != TTEntry.T_EMPTY) {
             int score = ent.getScore(ply);
             evalScore = ent.evalScore;
@@ -486,6 +799,7 @@ public class Search {
                             if (pos.getPiece(hashMove.to) == Piece.EMPTY)
                                 kt.addKiller(ply, hashMove);
                     }
+                    tt.countCutoff();
                     if (log != null) log.logNodeEnd(searchTreeInfo[ply].nodeIdx, score, ent.type, evalScore, hKey);
                     return score;
                 }
@@ -624,7 +938,7 @@ public class Search {
                 int newDepth = isPv ? depth  - 2 * plyScale : depth * 3 / 8;
                 negaScout(alpha, beta, ply, newDepth, -1, inCheck);
                 sti.nodeIdx = savedNodeIdx;
-                ent = tt.probe(hKey);
+                tt.probe(hKey, ent);
                 if (ent.type != TTEntry.T_EMPTY) {
                     hashMove = sti.hashMove;
                     ent.getMove(hashMove);
@@ -633,18 +947,23 @@ public class Search {
         }
 
         // Start searching move alternatives
-        // FIXME! Try hash move before generating move list.
         MoveGen.MoveList moves;
-        if (inCheck)
+        int stage;
+        boolean hashMoveSelected;
+        if (inCheck) {
             moves = moveGen.checkEvasions(pos);
-        else 
-            moves = moveGen.pseudoLegalMoves(pos);
-        boolean seeDone = false;
-        boolean hashMoveSelected = true;
-        if (!selectHashMove(moves, hashMove)) {
-            scoreMoveList(moves, ply);
-            seeDone = true;
-            hashMoveSelected = false;
+            hashMoveSelected = selectHashMove(moves, hashMove);
+            scoreMoveList(moves, ply, hashMoveSelected ? 1 : 0);
+            stage = STAGE_QUIETS;
+        } else {
+            moves = moveGen.getMoveListObj();
+            hashMoveSelected = (hashMove != null) && MoveGen.isPseudoLegal(pos, hashMove);
+            if (hashMoveSelected) {
+                Move m = moves.m[moves.size++];
+                m.copyFrom(hashMove);
+                m.score = 10000;
+            }
+            stage = STAGE_HASH;
         }
 
         UndoInfo ui = sti.undoInfo;
@@ -654,14 +973,20 @@ public class Search {
         int bestScore = illegalScore;
         int bestMove = -1;
         int lmrCount = 0;
-        for (int mi = 0; mi < moves.size; mi++) {
-            if ((mi == 1) && !seeDone) {
-                scoreMoveList(moves, ply, 1);
-                seeDone = true;
-            }
-            if ((mi > 0) || !hashMoveSelected) {
-                selectBest(moves, mi);
+        for (int mi = 0; ; mi++) {
+            while (true) {
+                if (mi < moves.size) {
+                    if ((mi > 0) || !hashMoveSelected)
+                        selectBest(moves, mi);
+                    if ((stage == STAGE_QUIETS) || (moves.m[mi].score >= 0))
+                        break;
+                } else if (stage == STAGE_QUIETS) {
+                    break;
+                }
+                stage = nextMoveStage(stage, moves, hashMoveSelected, ply);
             }
+            if (mi >= moves.size)
+                break;
             Move m = moves.m[mi];
             if (pos.getPiece(m.to) == (pos.whiteMove ? Piece.BKING : Piece.WKING)) {
                 moveGen.returnMoveList(moves);
@@ -829,6 +1154,17 @@ public class Search {
         }
     }
 
+    /**
+     * Return the quiescence search score for "pos", from the point of view of the side
+     * to move. "pos" replaces the position given to the constructor, so that tools that
+     * need the scores of many positions can use one Search object.
+     */
+    public final int quiesceScore(Position pos) {
+        this.pos = pos;
+        q0Eval = UNKNOWN_SCORE;
+        return quiesce(-MATE0, MATE0, 0, 0, MoveGen.inCheck(pos));
+    }
+
     /**
      * Quiescence search. Only non-losing captures are searched.
      */
@@ -842,8 +1178,8 @@ public class Search {
             if ((depth == 0) && (q0Eval != UNKNOWN_SCORE)) {
                 score = q0Eval;
             } else {
-                score = eval.evalPos(pos);
-                if (depth == 0)
+                score = eval.evalPos(pos, alpha, beta);
+                if ((depth == 0) && eval.lastEvalExact())
                     q0Eval = score;
             }
         }
@@ -1108,6 +1444,84 @@ public class Search {
             m.score = score;
         }
     }
+
+    // Move generation stages in negaScout. Captures with a negative SEE score are
+    // generated in the capture stage but are sorted after all quiet moves.
+    private static final int STAGE_HASH = 0;
+    private static final int STAGE_CAPTURES = 1;
+    private static final int STAGE_KILLERS = 2;
+    private static final int STAGE_QUIETS = 3;
+
+    /**
+     * Add the moves for the stage after "stage" to the end of the move list.
+     * Moves already in the list from earlier stages are not added again.
+     * @param hashMoveFirst True if moves.m[0] is the hash move.
+     * @return The new stage.
+     */
+    private int nextMoveStage(int stage, MoveGen.MoveList moves, boolean hashMoveFirst, int ply) {
+        int start = moves.size;
+        switch (stage) {
+        case STAGE_HASH: {
+            MoveGen.MoveList captures = moveGen.pseudoLegalCaptures(pos);
+            for (int i = 0; i < captures.size; i++) {
+                Move m = captures.m[i];
+                if (!hashMoveFirst || !m.equals(moves.m[0]))
+                    moves.m[moves.size++].copyFrom(m);
+            }
+            moveGen.returnMoveList(captures);
+            scoreMoveList(moves, ply, start);
+            return STAGE_CAPTURES;
+        }
+        case STAGE_CAPTURES: {
+            SearchTreeInfo sti = searchTreeInfo[ply];
+            sti.nKillers = 0;
+            for (int k = 0; k < 4; k++) {
+                Move m = moves.m[moves.size];
+                if (!kt.getKiller(ply, k, m) || MoveGen.isCaptureListMove(pos, m) ||
+                    !MoveGen.isPseudoLegal(pos, m))
+                    continue;
+                if ((hashMoveFirst && m.equals(moves.m[0])) || (indexOf(moves, m, start, moves.size) >= 0))
+                    continue;
+                m.score = 54 - k;
+                moves.size++;
+                sti.killers[sti.nKillers++].copyFrom(m);
+            }
+            return STAGE_KILLERS;
+        }
+        default: {
+            // The move list has been reordered by selectBest, so the killers are
+            // found in the list saved by the killer stage.
+            SearchTreeInfo sti = searchTreeInfo[ply];
+            MoveGen.MoveList quiets = moveGen.pseudoLegalNonCaptures(pos);
+            for (int i = 0; i < quiets.size; i++) {
+                Move m = quiets.m[i];
+                if ((hashMoveFirst && m.equals(moves.m[0])) || isKiller(sti, m))
+                    continue;
+                moves.m[moves.size++].copyFrom(m);
+            }
+            moveGen.returnMoveList(quiets);
+            scoreMoveList(moves, ply, start);
+            return STAGE_QUIETS;
+        }
+        }
+    }
+
+    /** Return true if m was added to the move list by the killer stage. */
+    private static boolean isKiller(SearchTreeInfo sti, Move m) {
+        for (int i = 0; i < sti.nKillers; i++)
+            if (sti.killers[i].equals(m))
+                return true;
+        return false;
+    }
+
+    /** Return the index of move m in moves.m[start..end-1], or -1 if not found. */
+    private static int indexOf(MoveGen.MoveList moves, Move m, int start, int end) {
+        for (int i = start; i < end; i++)
+            if (moves.m[i].equals(m))
+                return i;
+        return -1;
+    }
+
     private void scoreMoveListMvvLva(MoveGen.MoveList moves) {
         for (int i = 0; i < moves.size; i++) {
             Move m = moves.m[i];
@@ -1174,8 +1588,6 @@ public class Search {
 
     private void initNodeStats() {
         nodes = qNodes = 0;
-        nodesPlyVec = new int[20];
-        nodesDepthVec = new int[20];
         for (int i = 0; i < 20; i++) {
             nodesPlyVec[i] = 0;
             nodesDepthVec[i] = 0;
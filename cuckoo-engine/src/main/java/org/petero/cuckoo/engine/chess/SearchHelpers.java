@@ -0,0 +1,71 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluators and threads for the helper searches of a Lazy SMP search.
+ * <p>
+ * An object of this class can be kept between searches, so that the hash tables
+ * in the helper evaluators stay warm and no threads or evaluators are created for
+ * each move. Create a new object when the number of threads changes or when the
+ * main evaluator is replaced.
+ * @author petero
+ */
+public final class SearchHelpers {
+    private final Evaluator[] evals;
+    private final ExecutorService executor;
+
+    /** Create "nHelpers" helpers, each with its own evaluator created by eval.newInstance(). */
+    public SearchHelpers(int nHelpers, Evaluator eval) {
+        evals = new Evaluator[nHelpers];
+        for (int i = 0; i < nHelpers; i++)
+            evals[i] = eval.newInstance();
+        final AtomicInteger threadNo = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(nHelpers, 1), r -> {
+            Thread t = new Thread(r, "Search helper " + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Number of helper searches. */
+    public final int size() {
+        return evals.length;
+    }
+
+    /** Evaluator for helper number "i", 0 <= i < size(). */
+    final Evaluator evaluator(int i) {
+        return evals[i];
+    }
+
+    /** Run "task" in one of the helper threads. */
+    final Future<?> start(Runnable task) {
+        return executor.submit(task);
+    }
+
+    /** Stop the helper threads when they are idle. The object can not be used after this call. */
+    public final void shutdown() {
+        executor.shutdown();
+    }
+}
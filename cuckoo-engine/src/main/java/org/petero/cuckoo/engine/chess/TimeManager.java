@@ -0,0 +1,137 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+/**
+ * Adjusts the thinking time during iterative deepening.
+ * <p>
+ * The minimum time limit given to the search is the normal time to use for a
+ * move. After each iteration, it is scaled to get a soft time limit, which
+ * is longer when the best move has recently changed, when the score dropped
+ * compared to the previous iteration, or when the best move used a small
+ * fraction of the searched nodes. It is shorter when the best move is stable
+ * and has used most of the nodes. The soft limit is never larger than the
+ * maximum time limit. A new iteration is not started if it is not expected
+ * to finish before the maximum time limit.
+ * @author petero
+ */
+final class TimeManager {
+    private static final double[] stabilityScale = { 1.35, 1.15, 1.0, 0.9, 0.8 };
+    private static final double MIN_SCALE = 0.4;
+    private static final double MAX_SCALE = 3.0;
+
+    private Move lastBestMove;
+    private int stableIterations;   // Number of iterations the best move has not changed
+    private int lastScore;
+    private long lastIterTime;      // Duration of the last completed iteration
+    private long prevIterTime;      // Duration of the iteration before that
+    private volatile double scale;  // Factor to apply to the minimum time limit
+    private boolean enabled = false;
+
+    TimeManager() {
+        reset();
+    }
+
+    /** If not enabled, the minimum time limit is used without adjustments. */
+    final void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Prepare for a new search. */
+    final void reset() {
+        lastBestMove = null;
+        stableIterations = 0;
+        lastScore = 0;
+        lastIterTime = prevIterTime = -1;
+        scale = 1.0;
+    }
+
+    /**
+     * Update the time scale factor after an iteration has been completed.
+     * @param bestMove      The best move found by the iteration.
+     * @param score         The score of the best move.
+     * @param bestMoveNodes Number of nodes used to search the best move.
+     * @param iterNodes     Number of nodes used by the whole iteration.
+     * @param iterTime      Time in milliseconds used by the iteration.
+     */
+    final void iterationDone(Move bestMove, int score, long bestMoveNodes, long iterNodes, long iterTime) {
+        double s = 1.0;
+        if (lastBestMove != null) {
+            if (bestMove.equals(lastBestMove))
+                stableIterations++;
+            else
+                stableIterations = 0;
+            s *= stabilityScale[Math.min(stableIterations, stabilityScale.length - 1)];
+
+            int drop = lastScore - score;
+            if (drop > 10)
+                s *= 1 + Math.min(drop - 10, 100) / 100.0;
+        }
+        if (iterNodes > 0) {
+            double nodeFraction = bestMoveNodes / (double)iterNodes;
+            s *= Math.min(Math.max(1.5 - nodeFraction, 0.6), 1.3);
+        }
+        scale = Math.min(Math.max(s, MIN_SCALE), MAX_SCALE);
+        lastBestMove = new Move(bestMove);
+        lastScore = score;
+        prevIterTime = lastIterTime;
+        lastIterTime = iterTime;
+    }
+
+    /** Return the current time scale factor. */
+    final double getScale() {
+        return scale;
+    }
+
+    /**
+     * Compute the soft time limit from the minimum and maximum time limits.
+     * If there is no time limit, or if minTime equals maxTime, minTime is returned.
+     */
+    final long softTimeLimit(long minTime, long maxTime) {
+        if (!enabled || (minTime < 0) || (maxTime <= minTime))
+            return minTime;
+        return Math.min((long)(minTime * scale), maxTime);
+    }
+
+    /**
+     * Return the estimated time in milliseconds for the next iteration,
+     * based on the growth of the last two iterations, or -1 if not known.
+     */
+    final long nextIterationTime() {
+        if (lastIterTime < 0)
+            return -1;
+        double growth = 2.0;
+        if (prevIterTime >= 10)
+            growth = Math.min(Math.max(lastIterTime / (double)prevIterTime, 1.5), 4.0);
+        return (long)(lastIterTime * growth);
+    }
+
+    /**
+     * Return true if the search should stop after a completed iteration.
+     * @param elapsed Time in milliseconds since the search started.
+     */
+    final boolean stopSearch(long elapsed, long minTime, long maxTime) {
+        if (elapsed >= softTimeLimit(minTime, maxTime))
+            return true;
+        if (!enabled || (maxTime <= minTime))
+            return false;
+        long nextTime = nextIterationTime();
+        return (nextTime >= 0) && (elapsed + nextTime > maxTime);
+    }
+}
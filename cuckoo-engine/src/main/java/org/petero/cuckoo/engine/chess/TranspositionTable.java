@@ -28,9 +28,9 @@ import java.util.List;
 public class TranspositionTable {
     static final public class TTEntry {
         long key;               // Zobrist hash key
-        private short move;     // from + (to<<6) + (promote<<12)
-        private short score;    // Score from search
-        private short depthSlot; // Search depth (bit 0-14) and hash slot (bit 15).
+        short move;             // from + (to<<6) + (promote<<12)
+        short score;            // Score from search
+        short depthSlot;        // Search depth (bit 0-14) and hash slot (bit 15).
         byte generation;        // Increase when OTB position changes
         public byte type;       // exact score, lower bound, upper bound
         short evalScore;        // Score from static evaluation 
@@ -104,17 +104,51 @@ public class TranspositionTable {
         }
 
         int getHashSlot() {
-            return depthSlot >>> 15;
+            return (depthSlot >>> 15) & 1;
         }
 
         public void setHashSlot(int s) {
             depthSlot &= 0x7fff;
             depthSlot |= (short) (s << 15);
         }
+
+        /** Copy all fields from another entry. */
+        void copyFrom(TTEntry other) {
+            key = other.key;
+            move = other.move;
+            score = other.score;
+            depthSlot = other.depthSlot;
+            generation = other.generation;
+            type = other.type;
+            evalScore = other.evalScore;
+        }
     }
+
+    /**
+     * Usage statistics. The counters are not synchronized, so they are approximate
+     * when the table is shared between search threads.
+     */
+    static final public class Stats {
+        public long probes;         // Number of probe calls
+        public long hits;           // Number of probes that found an entry
+        public long cutoffs;        // Number of hits that ended the search of a node
+        public long overwrites;     // Number of inserts that replaced an entry for another position
+        public long relocations;    // Number of entries moved to their alternative slot
+
+        void probe(TTEntry result) {
+            probes++;
+            if (result.type != TTEntry.T_EMPTY)
+                hits++;
+        }
+    }
+
+    /** Number of entries examined to compute hashFull(). */
+    static final int HASH_FULL_SAMPLES = 1000;
+
     final TTEntry[] table;
     final TTEntry emptySlot;
     byte generation;
+    Stats stats;        // null if statistics are not collected
 
     /** Constructor. Creates an empty transposition table with numEntries slots. */
     public TranspositionTable(int log2Size) {
@@ -132,7 +166,15 @@ public class TranspositionTable {
         generation = 0;
     }
 
-    public final void insert(long key, Move sm, int type, int ply, int depth, int evalScore) {
+    /** Constructor for subclasses that provide their own entry storage. */
+    TranspositionTable() {
+        table = null;
+        emptySlot = new TTEntry();
+        emptySlot.type = TTEntry.T_EMPTY;
+        generation = 0;
+    }
+
+    public void insert(long key, Move sm, int type, int ply, int depth, int evalScore) {
         if (depth < 0) depth = 0;
         int idx0 = h0(key);
         int idx1 = h1(key);
@@ -159,6 +201,7 @@ public class TranspositionTable {
                     altEnt.type = ent.type;
                     altEnt.setHashSlot(1 - ent.getHashSlot());
                     altEnt.evalScore = ent.evalScore;
+                    if (stats != null) stats.relocations++;
                 }
             }
         }
@@ -173,6 +216,8 @@ public class TranspositionTable {
             }
         }
         if (doStore) {
+            if ((stats != null) && (ent.key != key) && (ent.type != TTEntry.T_EMPTY))
+                stats.overwrites++;
             if ((ent.key != key) || (sm.from != sm.to))
                 ent.setMove(sm);
             ent.key = key;
@@ -185,8 +230,11 @@ public class TranspositionTable {
         }
     }
 
-    /** Retrieve an entry from the hash table corresponding to "pos". */
-    public final TTEntry probe(long key) {
+    /**
+     * Retrieve an entry from the hash table corresponding to "pos".
+     * The returned object may be shared with the table and with other threads.
+     */
+    public TTEntry probe(long key) {
         int idx0 = h0(key);
         TTEntry ent = table[idx0];
         if (ent.key == key) {
@@ -202,6 +250,15 @@ public class TranspositionTable {
         return emptySlot;
     }
 
+    /**
+     * Retrieve an entry from the hash table and copy it to "result".
+     * This is the method to use when the table is shared between search threads.
+     */
+    public void probe(long key, TTEntry result) {
+        result.copyFrom(probe(key));
+        if (stats != null) stats.probe(result);
+    }
+
     /**
      * Increase hash table generation. This means that subsequent inserts will be considered
      * more valuable than the entries currently present in the hash table.
@@ -210,8 +267,42 @@ public class TranspositionTable {
         generation++;
     }
 
+    /**
+     * Start or stop collecting usage statistics. Starting also resets the counters.
+     * Must not be called while a search is using the table.
+     */
+    public final void setCollectStats(boolean collect) {
+        stats = collect ? new Stats() : null;
+    }
+
+    /** Return the usage statistics, or null if statistics are not collected. */
+    public final Stats getStats() {
+        return stats;
+    }
+
+    /** Called by the search when a hash entry made it possible to return without searching the node. */
+    final void countCutoff() {
+        if (stats != null) stats.cutoffs++;
+    }
+
+    /**
+     * Return how full the table is, in permill, as used by the UCI "hashfull" info.
+     * Only entries from the current generation are counted, and only a fixed slice
+     * at the start of the table is examined.
+     */
+    public int hashFull() {
+        int n = Math.min(table.length, HASH_FULL_SAMPLES);
+        int used = 0;
+        for (int i = 0; i < n; i++) {
+            TTEntry ent = table[i];
+            if ((ent.type != TTEntry.T_EMPTY) && (ent.generation == generation))
+                used++;
+        }
+        return used * 1000 / n;
+    }
+
     /** Clear the transposition table. */
-    public final void clear() {
+    public void clear() {
         for (TTEntry ent : table) {
             ent.type = TTEntry.T_EMPTY;
         }
@@ -227,6 +318,7 @@ public class TranspositionTable {
         UndoInfo ui = new UndoInfo();
         List<Long> hashHistory = new ArrayList<>();
         MoveGen moveGen = new MoveGen();
+        TTEntry ent = new TTEntry();
         while (true) {
             ret.add(m);
             pos.makeMove(m, ui);
@@ -234,7 +326,7 @@ public class TranspositionTable {
                 break;
             }
             hashHistory.add(pos.zobristHash());
-            TTEntry ent = probe(pos.historyHash());
+            probe(pos.historyHash(), ent);
             if (ent.type == TTEntry.T_EMPTY) {
                 break;
             }
@@ -257,6 +349,7 @@ public class TranspositionTable {
                 break;
             }
         }
+        moveGen.returnMoveList(moves);
         return contains;
     }
 
@@ -265,7 +358,8 @@ public class TranspositionTable {
         StringBuilder ret = new StringBuilder(100);
         pos = new Position(pos);    // To avoid modifying the input parameter
         boolean first = true;
-        TTEntry ent = probe(pos.historyHash());
+        TTEntry ent = new TTEntry();
+        probe(pos.historyHash(), ent);
         UndoInfo ui = new UndoInfo();
         ArrayList<Long> hashHistory = new ArrayList<>();
         boolean repetition = false;
@@ -294,7 +388,7 @@ public class TranspositionTable {
                 repetition = true;
             }
             hashHistory.add(pos.zobristHash());
-            ent = probe(pos.historyHash());
+            probe(pos.historyHash(), ent);
             first = false;
         }
         return ret.toString();
@@ -0,0 +1,125 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves a transposition table to a file and maps it back into memory.
+ * <p>
+ * The file starts with a 64 byte header, followed by all entries in the
+ * OffHeapTranspositionTable layout, a key word followed by a data word.
+ * Loading maps the file privately, so it takes about the same time for any
+ * table size, and the file is not changed by searches using the loaded table.
+ * The table generation is saved too, so entries that are not used by later
+ * searches age out the same way as if the engine had not been restarted.
+ * @author petero
+ */
+public class TranspositionTableFile {
+    static final long MAGIC = 0x4355434b4f4f5454L;   // "CUCKOOTT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = OffHeapTranspositionTable.CACHE_LINE_SIZE;
+    static final int SCHEME_CUCKOO = 0;
+    static final int SCHEME_BUCKET = 1;
+
+    private static final int COPY_ENTRIES = 1 << 16;
+
+    /**
+     * Save "tt" to file "fileName". The data is first written to a temporary file
+     * that then replaces the old file, so a table loaded from the old file stays valid.
+     */
+    public static void save(PackedTranspositionTable tt, String fileName) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath();
+        Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        long numEntries = tt.mask + 1;
+        try (FileChannel ch = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(COPY_ENTRIES * OffHeapTranspositionTable.ENTRY_SIZE)
+                                       .order(ByteOrder.nativeOrder());
+            buf.putLong(MAGIC);
+            buf.putInt(VERSION);
+            buf.putInt((tt instanceof BucketTranspositionTable) ? SCHEME_BUCKET : SCHEME_CUCKOO);
+            buf.putInt(Long.numberOfTrailingZeros(numEntries));
+            buf.putInt(tt.generation);
+            buf.position(HEADER_SIZE);
+            writeFully(ch, buf);
+            for (long idx = 0; idx < numEntries; idx++) {
+                buf.putLong(tt.keyAt(idx));
+                buf.putLong(tt.dataAt(idx));
+                if (!buf.hasRemaining())
+                    writeFully(ch, buf);
+            }
+            writeFully(ch, buf);
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining())
+            ch.write(buf);
+        buf.clear();
+    }
+
+    /**
+     * Map a transposition table saved by save() into memory.
+     * The returned table uses the same hashing scheme as the saved table.
+     * @throws IOException If the file can not be read or is not a valid table file.
+     */
+    public static OffHeapTranspositionTable load(String fileName) throws IOException {
+        // A private mapping requires a writable channel, even though the file is never changed
+        try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ,
+                                               StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining())
+                if (ch.read(header) < 0)
+                    throw new IOException("Truncated transposition table file");
+            header.flip();
+            if ((header.getLong() != MAGIC) || (header.getInt() != VERSION))
+                throw new IOException("Not a transposition table file");
+            int scheme = header.getInt();
+            int log2Size = header.getInt();
+            int generation = header.getInt();
+            if (((scheme != SCHEME_CUCKOO) && (scheme != SCHEME_BUCKET)) || (log2Size < 0) || (log2Size > 40))
+                throw new IOException("Invalid transposition table file header");
+            if (ch.size() != HEADER_SIZE + ((long)OffHeapTranspositionTable.ENTRY_SIZE << log2Size))
+                throw new IOException("Transposition table file has wrong size");
+
+            int chunkShift = OffHeapTranspositionTable.chunkLog2Entries(log2Size);
+            long chunkBytes = (long)OffHeapTranspositionTable.ENTRY_SIZE << chunkShift;
+            ByteBuffer[] chunks = new ByteBuffer[1 << (log2Size - chunkShift)];
+            for (int i = 0; i < chunks.length; i++)
+                chunks[i] = ch.map(FileChannel.MapMode.PRIVATE, HEADER_SIZE + i * chunkBytes, chunkBytes)
+                              .order(ByteOrder.nativeOrder());
+            OffHeapTranspositionTable tt = (scheme == SCHEME_BUCKET) ?
+                    new BucketTranspositionTable(log2Size, chunks) :
+                    new OffHeapTranspositionTable(log2Size, chunks);
+            tt.generation = (byte)generation;
+            return tt;
+        }
+    }
+}
@@ -53,8 +53,8 @@ public class ChessController {
         int currDepth = 0;
         int currMoveNr = 0;
         String currMove = "";
-        int currNodes = 0;
-        int currNps = 0;
+        long currNodes = 0;
+        long currNps = 0;
         int currTime = 0;
 
         int pvDepth = 0;
@@ -102,7 +102,7 @@ public class ChessController {
         }
 
         @Override
-		public void notifyPV(int depth, int score, int time, int nodes, int nps, boolean isMate,
+		public void notifyPV(int depth, int multiPVIndex, int score, int time, long nodes, long nps, boolean isMate,
                 boolean upperBound, boolean lowerBound, ArrayList<Move> pv) {
             pvDepth = depth;
             pvScore = score;
@@ -125,7 +125,7 @@ public class ChessController {
         }
 
         @Override
-		public void notifyStats(int nodes, int nps, int time) {
+		public void notifyStats(long nodes, long nps, int time) {
             currNodes = nodes;
             currNps = nps;
             currTime = time;
@@ -0,0 +1,58 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author petero
+ */
+public class BenchTest {
+
+    /**
+     * Test of run method, of class Bench.
+     */
+    @Test
+    public void testRun() throws ChessParseError {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        long nodes = Bench.run(4, ps);
+        ps.flush();
+        assertTrue(nodes > 0);
+        String out = bos.toString();
+        assertTrue(out.contains("Nodes searched  : " + nodes));
+        assertTrue(out.contains("Nodes/second"));
+        String[] lines = out.split("\n");
+        long sum = 0;
+        for (int i = 0; i < Bench.FENS.length; i++) {
+            assertTrue(lines[i].startsWith(String.format("Position %2d/", i + 1)));
+            sum += Long.parseLong(lines[i].substring(lines[i].indexOf(':') + 1, lines[i].indexOf("nodes")).trim());
+        }
+        assertEquals(nodes, sum);
+
+        // The node count is the same every time
+        assertEquals(nodes, Bench.run(4, new PrintStream(new ByteArrayOutputStream())));
+    }
+}
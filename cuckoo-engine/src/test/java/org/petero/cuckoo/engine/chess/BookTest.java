@@ -22,6 +22,10 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Optional;
 
 /**
@@ -37,10 +41,24 @@ public class BookTest {
     public void testGetBookMove() throws ChessParseError {
         Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
         Book book = new Book(true);
+        book.waitForLoad();
         Move move = book.getBookMove(pos);
         checkValid(pos, move);
     }
 
+    /**
+     * Test that the built-in book is read in the background.
+     */
+    @Test
+    public void testBackgroundLoad() throws ChessParseError {
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        Book book = new Book(false);
+        book.waitForLoad();
+        assertTrue(book.isLoaded());
+        assertTrue(book.getLoadTime() >= 0);
+        checkValid(pos, book.getBookMove(pos));
+    }
+
     /**
      * Test of getAllBookMoves method, of class Book.
      */
@@ -58,6 +76,47 @@ public class BookTest {
         }
     }
 
+    /**
+     * Test compiling a book and reading it from a memory mapped file.
+     */
+    @Test
+    public void testCompiledBook() throws ChessParseError, IOException {
+        BookCompiler bc = new BookCompiler();
+        assertTrue(bc.addLine("e4 e5 Nf3"));
+        assertTrue(bc.addLine("e4 c5"));
+        assertTrue(bc.addLine("d4? d5"));
+        assertFalse(bc.addLine("e4 e4"));
+        assertEquals(5, bc.numMoves());
+
+        Path file = Files.createTempFile("book", ".cbk");
+        try {
+            try (OutputStream os = Files.newOutputStream(file)) {
+                bc.write(os);
+            }
+            assertEquals(BookFile.HEADER_SIZE + 5 * BookFile.ENTRY_SIZE, Files.size(file));
+            Book book = new Book(false, file.toString());
+            Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+            assertEquals("e4(3) ", book.getAllBookMoves(pos));
+            assertEquals(TextIO.stringToMove(pos, "e4").get(), book.getBookMove(pos));
+
+            UndoInfo ui = new UndoInfo();
+            pos.makeMove(TextIO.stringToMove(pos, "d4").get(), ui);
+            assertEquals("d5(1) ", book.getAllBookMoves(pos));
+            pos.makeMove(TextIO.stringToMove(pos, "d5").get(), ui);
+            assertEquals("", book.getAllBookMoves(pos));
+            assertNull(book.getBookMove(pos));
+
+            Files.write(file, new byte[BookFile.HEADER_SIZE]);
+            try {
+                new Book(false, file.toString());
+                fail();
+            } catch (IOException ignored) {
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     /** Check that move is a legal move in position pos. */
     private void checkValid(Position pos, Move move) {
         assertNotNull(move);
@@ -0,0 +1,131 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.petero.cuckoo.engine.chess.TranspositionTable.TTEntry;
+
+/**
+ *
+ * @author petero
+ */
+public class BucketTranspositionTableTest {
+
+    /** Positions used to compare the bucket and cuckoo replacement schemes. */
+    static final String[] benchFens = {
+        TextIO.START_POS_FEN,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r1bq2rk/pp3pbp/2p1p1pQ/7P/3P4/2PB1N2/PP3PPR/2KR4 w - - 0 1",
+        "2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1",
+        "8/k7/3p4/p2P1p2/P2P1P2/8/8/K7 w - - 0 1",
+        "6k1/5p2/6p1/8/7p/8/6PP/6K1 b - - 0 1",
+    };
+
+    /**
+     * Test of insert and probe methods, of class BucketTranspositionTable.
+     */
+    @Test
+    public void testInsert() {
+        BucketTranspositionTable tt = new BucketTranspositionTable(8);
+        final long base = 0x123456789ab00000L;
+        TTEntry ent = new TTEntry();
+        for (int i = 0; i < 4; i++) {
+            Move m = new Move(i, i + 8, 0);
+            m.score = i * 10;
+            tt.insert(base + (i << 8), m, TTEntry.T_GE, 0, (i + 1) * Search.plyScale, 0);
+        }
+        for (int i = 0; i < 4; i++) {
+            tt.probe(base + (i << 8), ent);
+            assertEquals(TTEntry.T_GE, ent.type);
+            assertEquals(i * 10, ent.getScore(0));
+            assertEquals((i + 1) * Search.plyScale, ent.getDepth());
+        }
+
+        // Bucket full, the entry with the smallest depth is replaced
+        Move m = new Move(12, 28, 0);
+        m.score = 77;
+        tt.insert(base + (4 << 8), m, TTEntry.T_GE, 0, 10 * Search.plyScale, 0);
+        tt.probe(base, ent);
+        assertEquals(TTEntry.T_EMPTY, ent.type);
+        tt.probe(base + (4 << 8), ent);
+        assertEquals(77, ent.getScore(0));
+
+        // Exact entries are more valuable than bounds
+        tt.insert(base + (5 << 8), m, TTEntry.T_EXACT, 0, 1, 0);
+        tt.probe(base + (1 << 8), ent);
+        assertEquals(TTEntry.T_EMPTY, ent.type);
+        tt.insert(base + (6 << 8), m, TTEntry.T_GE, 0, 1, 0);
+        tt.probe(base + (5 << 8), ent);
+        assertEquals(TTEntry.T_EXACT, ent.type);
+        tt.probe(base + (2 << 8), ent);
+        assertEquals(TTEntry.T_EMPTY, ent.type);
+
+        // Entries from an old generation are replaced first
+        tt.nextGeneration();
+        tt.probe(base + (6 << 8), ent);
+        tt.insert(base + (7 << 8), m, TTEntry.T_LE, 0, 1, 0);
+        tt.probe(base + (6 << 8), ent);
+        assertEquals(TTEntry.T_GE, ent.type);
+
+        // Updating an existing entry does not use a new slot
+        m.score = 99;
+        tt.insert(base + (7 << 8), m, TTEntry.T_EXACT, 0, 2, 0);
+        tt.probe(base + (7 << 8), ent);
+        assertEquals(TTEntry.T_EXACT, ent.type);
+        assertEquals(99, ent.getScore(0));
+        tt.probe(base + (6 << 8), ent);
+        assertEquals(TTEntry.T_GE, ent.type);
+    }
+
+    /** Search the benchmark positions to a fixed depth and return the table statistics. */
+    private static TranspositionTable.Stats runSearches(TranspositionTable tt, int depth) throws ChessParseError {
+        tt.setCollectStats(true);
+        for (String fen : benchFens) {
+            tt.clear();
+            Position pos = TextIO.readFEN(fen);
+            Search sc = new Search(pos, new long[200], 0, tt);
+            MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+            MoveGen.removeIllegal(pos, moves);
+            sc.scoreMoveList(moves, 0);
+            sc.timeLimit(-1, -1);
+            sc.iterativeDeepening(moves, depth, -1, false);
+        }
+        return tt.getStats();
+    }
+
+    /**
+     * Check that searches using a small bucket table, where replacement matters,
+     * find entries in the table, like the cuckoo table does. The hit rate and speed
+     * of the two schemes are compared by HashBench.
+     */
+    @Test
+    public void testSearchWithSmallTable() throws ChessParseError {
+        final int log2Size = 12;
+        final int depth = 7;
+        TranspositionTable.Stats cuckoo = runSearches(new OffHeapTranspositionTable(log2Size), depth);
+        TranspositionTable.Stats bucket = runSearches(new BucketTranspositionTable(log2Size), depth);
+        for (TranspositionTable.Stats st : new TranspositionTable.Stats[]{ cuckoo, bucket }) {
+            assertTrue(st.probes > 0);
+            assertTrue(st.hits > 0);
+            assertTrue(st.hits <= st.probes);
+        }
+    }
+}
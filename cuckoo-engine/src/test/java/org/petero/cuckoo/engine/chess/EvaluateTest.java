@@ -414,6 +414,100 @@ public class EvaluateTest {
         assertTrue(score2 > score1);
     }
 
+    /**
+     * Test that the hash tables are private to each Evaluate object, that their
+     * size does not affect the score, and that hits are counted.
+     */
+    @Test
+    public void testHashTables() throws ChessParseError {
+        Position pos = TextIO.readFEN("r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2QK2R w KQ - 0 9");
+        Evaluate eval1 = new Evaluate();
+        Evaluate eval2 = new Evaluate(0, 0, 0);
+        int score = eval1.evalPos(pos);
+        assertEquals(1, eval1.getHashStats().pawnProbes);
+        assertEquals(0, eval1.getHashStats().pawnHits);
+        assertEquals(1, eval1.getHashStats().evalProbes);
+        assertEquals(0, eval1.getHashStats().evalHits);
+
+        // Same pawn structure, different position
+        Position pos3 = TextIO.readFEN("r2q1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2Q1RK1 b - - 1 9");
+        int score3 = eval1.evalPos(pos3);
+        assertEquals(2, eval1.getHashStats().pawnProbes);
+        assertEquals(1, eval1.getHashStats().pawnHits);
+        assertEquals(0, eval1.getHashStats().evalHits);
+
+        // Evaluating a position again uses the evaluation cache
+        assertEquals(score, eval1.evalPos(pos));
+        assertEquals(3, eval1.getHashStats().evalProbes);
+        assertEquals(1, eval1.getHashStats().evalHits);
+        assertEquals(0, eval2.getHashStats().pawnProbes);
+
+        // One-entry tables give the same scores, even when entries are replaced
+        Position pos2 = TextIO.readFEN(TextIO.START_POS_FEN);
+        int score2 = eval1.evalPos(pos2);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(score, eval2.evalPos(pos));
+            assertEquals(score2, eval2.evalPos(pos2));
+            assertEquals(score3, eval2.evalPos(pos3));
+        }
+        assertEquals(9, eval2.getHashStats().evalProbes);
+        assertEquals(0, eval2.getHashStats().evalHits);
+        assertEquals(9, eval2.getHashStats().pawnProbes);
+        assertTrue(eval2.getHashStats().kingSafetyProbes > 0);
+
+        eval1.getHashStats().clear();
+        assertEquals(0, eval1.getHashStats().pawnProbes);
+        assertEquals(0, eval1.getHashStats().evalProbes);
+    }
+
+    /**
+     * Test that evalPos(pos, alpha, beta) returns the real score when it is inside the
+     * window, and otherwise a score outside the window, close to the real score.
+     */
+    @Test
+    public void testLazyEval() throws ChessParseError {
+        Evaluate evalFull = new Evaluate();
+        Evaluate evalLazy = new Evaluate();
+        MoveGen moveGen = new MoveGen();
+        UndoInfo ui = new UndoInfo();
+        final int[] deltas = { -1000, 1000, -400, 400, -260, 260, -100, 100, 0 };
+        int nLazy = 0;
+        for (String fen : Bench.FENS) {
+            Position pos = TextIO.readFEN(fen);
+            MoveGen.MoveList moves = moveGen.legalMoves(pos);
+            for (int mi = 0; mi < moves.size; mi++) {
+                pos.makeMove(moves.m[mi], ui);
+                final int full = evalFull.evalPos(pos);
+                assertTrue(evalFull.lastEvalExact());
+                for (int delta : deltas) {
+                    final int alpha = full + delta - 10;
+                    final int beta = full + delta + 10;
+                    int score = evalLazy.evalPos(pos, alpha, beta);
+                    if (evalLazy.lastEvalExact()) {
+                        assertEquals(full, score);
+                    } else {
+                        nLazy++;
+                        assertTrue((score + Evaluate.LAZY_MARGIN <= alpha) || (score - Evaluate.LAZY_MARGIN >= beta));
+                        assertTrue(Math.abs(score - full) <= Evaluate.LAZY_MARGIN);
+                    }
+                }
+                assertEquals(full, evalLazy.evalPos(pos, full - 1, full + 1));
+                pos.unMakeMove(moves.m[mi], ui);
+            }
+            moveGen.returnMoveList(moves);
+        }
+        assertTrue(nLazy > 0);
+        assertEquals(nLazy, evalLazy.getHashStats().lazyExits);
+
+        // No early exit when disabled
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        Evaluate eval = new Evaluate();
+        eval.setLazyEval(false);
+        int score = eval.evalPos(pos, 1000, 1001);
+        assertTrue(eval.lastEvalExact());
+        assertEquals(evalFull.evalPos(pos), score);
+    }
+
   /** Return static evaluation score for white, regardless of whose turn it is to move. */
   static int evalWhite(Position pos) {
         Evaluate eval = new Evaluate();
@@ -0,0 +1,62 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author petero
+ */
+public class HashBenchTest {
+
+    /**
+     * Test of run method, of class HashBench.
+     */
+    @Test
+    public void testRun() throws ChessParseError {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bos);
+        List<HashBench.Result> results = HashBench.run(4, 12, ps);
+        ps.flush();
+        String[] lines = bos.toString().split("\n");
+        assertEquals(HashBench.TYPES.length + 2, lines.length);
+        assertEquals(HashBench.TYPES.length, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            HashBench.Result r = results.get(i);
+            assertEquals(HashBench.TYPES[i], r.type);
+            assertTrue(lines[i + 2].startsWith(r.type + " "));
+            assertTrue(lines[i + 2].contains(" " + r.nodes + " "));
+            assertTrue(r.nodes > 0);
+            assertTrue(r.stats.probes > 0);
+            assertTrue(r.stats.hits > 0);
+            assertTrue(r.stats.hits <= r.stats.probes);
+            assertTrue(r.hitRate() > 0 && r.hitRate() <= 100);
+
+            // The node count is the same every time
+            assertEquals(r.nodes, HashBench.runTypes(new String[]{ r.type }, 4, 12).get(0).nodes);
+        }
+    }
+}
@@ -78,4 +78,33 @@ public class KillerTableTest {
         assertEquals(4, kt.getKillerScore(2, m2));
         assertEquals(3, kt.getKillerScore(0, m2));
     }
+
+    /**
+     * Test of getKiller method, of class KillerTable.
+     */
+    @Test
+    public void testGetKiller() {
+        KillerTable kt = new KillerTable();
+        Move m1 = new Move(TextIO.getSquare("b1"), TextIO.getSquare("c3"), Piece.EMPTY);
+        Move m2 = new Move(TextIO.getSquare("a7"), TextIO.getSquare("a8"), Piece.WROOK);
+        Move m3 = new Move(TextIO.getSquare("h2"), TextIO.getSquare("h1"), Piece.BKNIGHT);
+        Move m = new Move(0, 0, 0);
+        for (int k = 0; k < 4; k++)
+            assertFalse(kt.getKiller(3, k, m));
+        kt.addKiller(3, m1);
+        kt.addKiller(3, m2);
+        kt.addKiller(1, m3);
+        assertTrue(kt.getKiller(3, 0, m));
+        assertEquals(m2, m);
+        assertTrue(kt.getKiller(3, 1, m));
+        assertEquals(m1, m);
+        assertTrue(kt.getKiller(3, 2, m));
+        assertEquals(m3, m);
+        assertFalse(kt.getKiller(3, 3, m));
+        for (int k = 0; k < 4; k++) {
+            if (kt.getKiller(3, k, m))
+                assertEquals(4 - k, kt.getKillerScore(3, m));
+        }
+        assertFalse(kt.getKiller(0, 2, m));
+    }
 }
@@ -21,6 +21,7 @@ package org.petero.cuckoo.engine.chess;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -416,6 +417,130 @@ public class MoveGenTest {
         assertTrue(evList.contains("b7c6"));
     }
 
+    /**
+     * Test of isPseudoLegal, isCaptureListMove and pseudoLegalNonCaptures methods, of class MoveGen.
+     */
+    @Test
+    public void testIsPseudoLegal() throws ChessParseError {
+        String[] fens = {
+            TextIO.START_POS_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b KQkq - 0 1",
+            "8/3k4/8/2n2pP1/1P6/1NB5/2QP4/R3K2R w KQ f6 0 2",
+            "r3k2r/1P4P1/8/8/8/8/1p4p1/R3K2R b KQkq - 0 1",
+            "1r2k2r/P6P/8/3pP3/8/8/p6p/R3K1R1 w Qk d6 0 1",
+            "rn1qkbnr/pppB1ppp/3p4/4p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 0 1",
+        };
+        int[] promotions = { Piece.EMPTY, Piece.WQUEEN, Piece.WROOK, Piece.WBISHOP, Piece.WKNIGHT,
+                             Piece.WKING, Piece.WPAWN, Piece.BQUEEN, Piece.BROOK, Piece.BBISHOP,
+                             Piece.BKNIGHT };
+        MoveGen moveGen = new MoveGen();
+        for (String fen : fens) {
+            Position pos = TextIO.readFEN(fen);
+            MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
+            List<Move> moveList = new ArrayList<>(Arrays.asList(moves.m).subList(0, moves.size));
+            MoveGen.MoveList caps = moveGen.pseudoLegalCaptures(pos);
+            List<Move> capList = new ArrayList<>(Arrays.asList(caps.m).subList(0, caps.size));
+            int nCaps = 0;
+            for (int from = 0; from < 64; from++) {
+                for (int to = 0; to < 64; to++) {
+                    for (int prom : promotions) {
+                        Move m = new Move(from, to, prom);
+                        boolean legal = MoveGen.isPseudoLegal(pos, m);
+                        assertEquals(fen + " " + TextIO.moveToUCIString(m), moveList.contains(m), legal);
+                        if (legal) {
+                            boolean cap = MoveGen.isCaptureListMove(pos, m);
+                            assertEquals(capList.contains(m), cap);
+                            if (cap)
+                                nCaps++;
+                        }
+                    }
+                }
+            }
+            assertEquals(capList.size(), nCaps);
+
+            MoveGen.MoveList nonCaps = moveGen.pseudoLegalNonCaptures(pos);
+            assertEquals(moves.size, caps.size + nonCaps.size);
+            for (int i = 0; i < nonCaps.size; i++) {
+                assertTrue(moveList.contains(nonCaps.m[i]));
+                assertFalse(capList.contains(nonCaps.m[i]));
+            }
+        }
+    }
+
+    /**
+     * Test of legalMoves method, of class MoveGen.
+     * Compares perft results with known values, and the generated moves with
+     * pseudoLegalMoves() + removeIllegal() in every position in the perft trees.
+     */
+    @Test
+    public void testLegalMoves() throws ChessParseError {
+        String[] fens = {
+            TextIO.START_POS_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "8/8/8/K2pP2q/8/8/8/7k w - d6 0 2",     // En passant exposes king
+            "8/8/8/2k5/3pP3/8/8/4K3 b - e3 0 1",    // En passant captures checking pawn
+            "4k3/8/8/8/8/8/8/4K2R w K - 0 1",
+        };
+        int[] depths = { 4, 3, 4, 3, 3, 3, 3, 4, 4 };
+        long[] expected = { 197281, 97862, 43238, 9467, 62379, 89890, -1, -1, 7059 };
+        MoveGen moveGen = new MoveGen();
+        for (int i = 0; i < fens.length; i++) {
+            Position pos = TextIO.readFEN(fens[i]);
+            long nodes = perftCompare(moveGen, pos, depths[i]);
+            if (expected[i] >= 0)
+                assertEquals(fens[i], expected[i], nodes);
+        }
+
+        Position pos = TextIO.readFEN("8/8/8/K2pP2q/8/8/8/7k w - d6 0 2");
+        assertFalse(getLegalMoveList(pos).contains("e5d6"));
+        pos = TextIO.readFEN("8/8/8/2k5/3pP3/8/8/4K3 b - e3 0 1");
+        assertTrue(getLegalMoveList(pos).contains("d4e3"));
+    }
+
+    /** Count leaf nodes and check that legalMoves() is correct in all visited positions. */
+    private long perftCompare(MoveGen moveGen, Position pos, int depth) {
+        MoveGen.MoveList moves = moveGen.legalMoves(pos);
+        MoveGen.MoveList ref = moveGen.pseudoLegalMoves(pos);
+        MoveGen.removeIllegal(pos, ref);
+        List<String> strMoves = new ArrayList<>();
+        for (int i = 0; i < moves.size; i++)
+            strMoves.add(TextIO.moveToUCIString(moves.m[i]));
+        List<String> refMoves = new ArrayList<>();
+        for (int i = 0; i < ref.size; i++)
+            refMoves.add(TextIO.moveToUCIString(ref.m[i]));
+        moveGen.returnMoveList(ref);
+        Collections.sort(strMoves);
+        Collections.sort(refMoves);
+        assertEquals(TextIO.toFEN(pos), refMoves, strMoves);
+
+        long nodes = 0;
+        if (depth <= 1) {
+            nodes = moves.size;
+        } else {
+            UndoInfo ui = new UndoInfo();
+            for (int i = 0; i < moves.size; i++) {
+                pos.makeMove(moves.m[i], ui);
+                nodes += perftCompare(moveGen, pos, depth - 1);
+                pos.unMakeMove(moves.m[i], ui);
+            }
+        }
+        moveGen.returnMoveList(moves);
+        return nodes;
+    }
+
+    private List<String> getLegalMoveList(Position pos) {
+        MoveGen.MoveList moves = new MoveGen().legalMoves(pos);
+        List<String> strMoves = new ArrayList<>();
+        for (int i = 0; i < moves.size; i++)
+            strMoves.add(TextIO.moveToUCIString(moves.m[i]));
+        return strMoves;
+    }
+
     private List<String> getMoveList(Position pos, boolean onlyLegal) {
         Position swap = EvaluateTest.swapColors(pos);
         List<String> swapList = getMoveList0(swap, onlyLegal);
@@ -0,0 +1,193 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author petero
+ */
+public class NNUETest {
+
+    /** Create a network with random weights. */
+    static NNUE randomNet(int nHidden, long seed) {
+        Random rnd = new Random(seed);
+        short[] w1 = new short[NNUE.N_INPUTS * nHidden];
+        for (int i = 0; i < w1.length; i++)
+            w1[i] = (short)(rnd.nextInt(101) - 50);
+        short[] b1 = new short[nHidden];
+        for (int i = 0; i < nHidden; i++)
+            b1[i] = (short)rnd.nextInt(100);
+        short[] w2 = new short[2 * nHidden];
+        for (int i = 0; i < w2.length; i++)
+            w2[i] = (short)(rnd.nextInt(201) - 100);
+        return new NNUE(nHidden, w1, b1, w2, rnd.nextInt(2001) - 1000);
+    }
+
+    /**
+     * Test that the accumulator is correctly updated by makeMove/unMakeMove.
+     */
+    @Test
+    public void testIncrementalUpdate() throws ChessParseError {
+        NNUE net = randomNet(16, 1);
+        MoveGen moveGen = new MoveGen();
+        Random rnd = new Random(2);
+        String[] fens = {
+            TextIO.START_POS_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2P5/8/8/3pP3/8/1k5K/8 b - e3 0 1",
+        };
+        for (String fen : fens) {
+            Position pos = TextIO.readFEN(fen);
+            pos.setNNUE(net);
+            UndoInfo[] uiVec = new UndoInfo[40];
+            Move[] moveVec = new Move[40];
+            int nMoves = 0;
+            for (int i = 0; i < 40; i++) {
+                MoveGen.MoveList moves = moveGen.legalMoves(pos);
+                if (moves.size == 0)
+                    break;
+                Move m = new Move(moves.m[rnd.nextInt(moves.size)]);
+                moveGen.returnMoveList(moves);
+                uiVec[nMoves] = new UndoInfo();
+                moveVec[nMoves] = m;
+                pos.makeMove(m, uiVec[nMoves++]);
+                assertArrayEquals(net.newAccumulator(pos), pos.nnueAcc);
+                Position copy = new Position(pos);
+                assertArrayEquals(pos.nnueAcc, copy.nnueAcc);
+                assertNotSame(pos.nnueAcc, copy.nnueAcc);
+            }
+            while (nMoves > 0) {
+                nMoves--;
+                pos.unMakeMove(moveVec[nMoves], uiVec[nMoves]);
+                assertArrayEquals(net.newAccumulator(pos), pos.nnueAcc);
+            }
+            assertEquals(TextIO.readFEN(fen), pos);
+        }
+    }
+
+    /**
+     * Test that the SIMD and scalar implementations give the same results.
+     * Only tests the scalar code if the Vector API is not available.
+     */
+    @Test
+    public void testVectorKernels() throws ChessParseError {
+        MoveGen moveGen = new MoveGen();
+        Random rnd = new Random(5);
+        for (int nHidden : new int[]{ 64, 37 }) {
+            NNUE vNet = randomNet(nHidden, nHidden).withVectorKernels(true);
+            NNUE sNet = vNet.withVectorKernels(false);
+            assertFalse(sNet.usesVectorKernels());
+            Position vPos = TextIO.readFEN(TextIO.START_POS_FEN);
+            vPos.setNNUE(vNet);
+            Position sPos = new Position(vPos);
+            sPos.setNNUE(sNet);
+            UndoInfo ui = new UndoInfo();
+            for (int i = 0; i < 60; i++) {
+                MoveGen.MoveList moves = moveGen.legalMoves(vPos);
+                if (moves.size == 0)
+                    break;
+                Move m = new Move(moves.m[rnd.nextInt(moves.size)]);
+                moveGen.returnMoveList(moves);
+                vPos.makeMove(m, ui);
+                sPos.makeMove(m, ui);
+                assertArrayEquals(sPos.nnueAcc, vPos.nnueAcc);
+                assertEquals(sNet.evaluate(sPos.nnueAcc, true), vNet.evaluate(vPos.nnueAcc, true));
+                assertEquals(sNet.evaluate(sPos.nnueAcc, false), vNet.evaluate(vPos.nnueAcc, false));
+            }
+        }
+    }
+
+    /**
+     * Test that swapping colors does not change the evaluation.
+     */
+    @Test
+    public void testSymmetry() throws ChessParseError {
+        NNUE net = randomNet(16, 3);
+        Evaluator eval = new NNUEEvaluator(net);
+        String[] fens = {
+            TextIO.START_POS_FEN,
+            "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+            "8/2P5/8/8/3pP3/8/1k5K/8 b - e3 0 1",
+        };
+        for (String fen : fens) {
+            Position pos = TextIO.readFEN(fen);
+            Position symPos = EvaluateTest.swapColors(pos);
+            assertEquals(eval.evalPos(pos), eval.evalPos(symPos));
+        }
+    }
+
+    /**
+     * Test that a network can be written and read back.
+     */
+    @Test
+    public void testReadWrite() throws IOException, ChessParseError {
+        NNUE net = randomNet(8, 4);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        net.write(bos);
+        NNUE net2 = NNUE.read(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(net.nHidden, net2.nHidden);
+        assertArrayEquals(net.w1, net2.w1);
+        assertArrayEquals(net.b1, net2.b1);
+        assertArrayEquals(net.w2, net2.w2);
+        assertEquals(net.b2, net2.b2);
+
+        byte[] bad = Arrays.copyOf(bos.toByteArray(), 20);
+        bad[0] = 0;
+        try {
+            NNUE.read(new ByteArrayInputStream(bad));
+            fail();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Test the network stored in the resource file.
+     */
+    @Test
+    public void testDefaultNet() throws ChessParseError {
+        Evaluator eval = new NNUEEvaluator();
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        assertTrue(Math.abs(eval.evalPos(pos)) < 50);
+        assertTrue(eval.lastEvalExact());
+
+        // Material advantage must be recognized
+        pos = TextIO.readFEN("rnb1kbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        assertTrue(eval.evalPos(pos) > 500);
+        pos = TextIO.readFEN("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNB1KBNR w KQkq - 0 1");
+        assertTrue(eval.evalPos(pos) < -500);
+
+        // Search must work with the NNUE evaluator
+        pos = TextIO.readFEN("3k4/8/8/8/8/8/2Q5/3K4 w - - 0 1");
+        Search sc = new Search(pos, new long[200], 0, new TranspositionTable(12), eval);
+        MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+        MoveGen.removeIllegal(pos, moves);
+        Move bestM = sc.iterativeDeepening(moves, 4, -1, false);
+        assertTrue(bestM.score > 500);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.petero.cuckoo.engine.chess.TranspositionTable.TTEntry;
+
+/**
+ *
+ * @author petero
+ */
+public class OffHeapTranspositionTableTest {
+
+    /**
+     * Check that OffHeapTranspositionTable gives the same results as TranspositionTable.
+     */
+    @Test
+    public void testSameAsTranspositionTable() {
+        for (int log2Size = 8; log2Size <= 12; log2Size += 2)
+            PackedTranspositionTableTest.compareWithTranspositionTable(new OffHeapTranspositionTable(log2Size), log2Size);
+    }
+
+    /**
+     * Test of insert method, of class OffHeapTranspositionTable.
+     */
+    @Test
+    public void testInsert() throws ChessParseError {
+        OffHeapTranspositionTable tt = new OffHeapTranspositionTable(16);
+        assertEquals(16L << 16, tt.sizeInBytes());
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        Search sc = new Search(pos, new long[200], 0, tt);
+        MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+        MoveGen.removeIllegal(pos, moves);
+        sc.timeLimit(-1, -1);
+        Move bestM = sc.iterativeDeepening(moves, 6, -1, false);
+        TTEntry ent = new TTEntry();
+        tt.probe(pos.historyHash(), ent);
+        assertNotEquals(TTEntry.T_EMPTY, ent.type);
+        assertTrue(tt.extractPVMoves(pos, bestM).size() > 1);
+
+        tt.clear();
+        tt.probe(pos.historyHash(), ent);
+        assertEquals(TTEntry.T_EMPTY, ent.type);
+    }
+}
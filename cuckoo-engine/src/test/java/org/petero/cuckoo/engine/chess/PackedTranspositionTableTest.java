@@ -0,0 +1,172 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.petero.cuckoo.engine.chess.TranspositionTable.TTEntry;
+
+/**
+ *
+ * @author petero
+ */
+public class PackedTranspositionTableTest {
+
+    /**
+     * Test of pack method, of class PackedTranspositionTable.
+     */
+    @Test
+    public void testPack() {
+        final int mate0 = Search.MATE0;
+        int[] scores = { 0, 17, -17, mate0 - 6, -mate0 + 5, Search.UNKNOWN_SCORE };
+        int[] types = { TTEntry.T_EXACT, TTEntry.T_GE, TTEntry.T_LE };
+        for (int score : scores) {
+            for (int type : types) {
+                int move = 8 + (0 << 6) + (Piece.BQUEEN << 12);
+                long d = PackedTranspositionTable.pack(move, score, -score, 99, type, 17);
+                assertEquals(move, PackedTranspositionTable.getMove(d));
+                assertEquals(score, PackedTranspositionTable.getScore(d));
+                assertEquals(-score, PackedTranspositionTable.getEvalScore(d));
+                assertEquals(99, PackedTranspositionTable.getDepth(d));
+                assertEquals(type, PackedTranspositionTable.getType(d));
+                assertEquals(1, PackedTranspositionTable.getGeneration(d));
+            }
+        }
+        assertEquals(TTEntry.T_EMPTY, PackedTranspositionTable.getType(0));
+        long d = PackedTranspositionTable.pack(0, 0, 0, 5000, TTEntry.T_EXACT, 0);
+        assertEquals(PackedTranspositionTable.MAX_DEPTH, PackedTranspositionTable.getDepth(d));
+    }
+
+    /**
+     * Check that PackedTranspositionTable gives the same results as TranspositionTable.
+     */
+    @Test
+    public void testSameAsTranspositionTable() {
+        compareWithTranspositionTable(new PackedTranspositionTable(10), 10);
+    }
+
+    /**
+     * Run the same random sequence of inserts and probes on tt2 and on a TranspositionTable
+     * with 2^log2Size entries, and check that all probes and statistics give the same result.
+     */
+    static void compareWithTranspositionTable(TranspositionTable tt2, int log2Size) {
+        TranspositionTable tt1 = new TranspositionTable(log2Size);
+        tt1.setCollectStats(true);
+        tt2.setCollectStats(true);
+        Random rnd = new Random(4711);
+        long[] keys = new long[3000];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = rnd.nextLong();
+        TTEntry ent1 = new TTEntry();
+        TTEntry ent2 = new TTEntry();
+        for (int i = 0; i < 50000; i++) {
+            if (i % 5000 == 0) {
+                tt1.nextGeneration();
+                tt2.nextGeneration();
+            }
+            long key = keys[rnd.nextInt(keys.length)];
+            if (rnd.nextInt(3) == 0) {
+                tt1.probe(key, ent1);
+                tt2.probe(key, ent2);
+                assertEquals(ent1.type, ent2.type);
+                if (ent1.type != TTEntry.T_EMPTY) {
+                    assertEquals(ent1.getScore(3), ent2.getScore(3));
+                    assertEquals(ent1.getDepth(), ent2.getDepth());
+                    assertEquals(ent1.evalScore, ent2.evalScore);
+                    Move m1 = new Move(0, 0, 0);
+                    Move m2 = new Move(0, 0, 0);
+                    ent1.getMove(m1);
+                    ent2.getMove(m2);
+                    assertEquals(m1, m2);
+                }
+            } else {
+                Move m = new Move(rnd.nextInt(64), rnd.nextInt(64), 0);
+                m.score = rnd.nextInt(2000) - 1000;
+                int type = rnd.nextInt(3);
+                int depth = rnd.nextInt(20 * Search.plyScale);
+                int evalScore = rnd.nextInt(2000) - 1000;
+                tt1.insert(key, m, type, 3, depth, evalScore);
+                tt2.insert(key, m, type, 3, depth, evalScore);
+            }
+        }
+        assertEquals(tt1.hashFull(), tt2.hashFull());
+        TranspositionTable.Stats st1 = tt1.getStats();
+        TranspositionTable.Stats st2 = tt2.getStats();
+        assertTrue(st1.hits > 0);
+        assertTrue(st1.overwrites > 0);
+        assertTrue(st1.relocations > 0);
+        assertEquals(st1.probes, st2.probes);
+        assertEquals(st1.hits, st2.hits);
+        assertEquals(st1.overwrites, st2.overwrites);
+        assertEquals(st1.relocations, st2.relocations);
+    }
+
+    /**
+     * Test of isCurrent method, of class PackedTranspositionTable.
+     */
+    @Test
+    public void testIsCurrent() {
+        long d = PackedTranspositionTable.pack(0, 0, 0, 10, TTEntry.T_EXACT, 15);
+        assertTrue(PackedTranspositionTable.isCurrent(d, 15));
+        assertTrue(PackedTranspositionTable.isCurrent(d, -1));    // Byte generation wrapped
+        assertFalse(PackedTranspositionTable.isCurrent(d, 0));
+        assertFalse(PackedTranspositionTable.isCurrent(d, 14));
+
+        for (int gen = Byte.MIN_VALUE; gen <= Byte.MAX_VALUE; gen++) {
+            for (int entGen = 0; entGen < 16; entGen++) {
+                d = PackedTranspositionTable.pack(0, 0, 0, 10, TTEntry.T_EXACT, entGen);
+                assertEquals(((byte)gen & 15) == entGen, PackedTranspositionTable.isCurrent(d, (byte)gen));
+            }
+        }
+
+        // Entries from earlier searches are old until they are probed again
+        PackedTranspositionTable tt = new PackedTranspositionTable(8);
+        Move m = new Move(12, 28, 0);
+        TTEntry ent = new TTEntry();
+        for (int i = 0; i < 20; i++)
+            tt.insert(4711 + i, m, TTEntry.T_EXACT, 0, 10, 20);
+        assertTrue(tt.hashFull() > 0);
+        tt.nextGeneration();
+        assertEquals(0, tt.hashFull());
+        for (int i = 0; i < 20; i++)
+            tt.probe(4711 + i, ent);
+        assertTrue(tt.hashFull() > 0);
+    }
+
+    /**
+     * Test of clear method, of class PackedTranspositionTable.
+     */
+    @Test
+    public void testClear() {
+        PackedTranspositionTable tt = new PackedTranspositionTable(8);
+        Move m = new Move(12, 28, 0);
+        m.score = 35;
+        tt.insert(4711, m, TTEntry.T_EXACT, 0, 10, 20);
+        TTEntry ent = new TTEntry();
+        tt.probe(4711, ent);
+        assertEquals(TTEntry.T_EXACT, ent.type);
+        assertEquals(35, ent.getScore(0));
+        tt.clear();
+        tt.probe(4711, ent);
+        assertEquals(TTEntry.T_EMPTY, ent.type);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.petero.cuckoo.engine.chess.Parameters.SpinParam;
+
+/**
+ *
+ * @author petero
+ */
+public class ParametersTest {
+
+    private static List<String> read(String text) throws IOException {
+        return Parameters.instance().read(new BufferedReader(new StringReader(text)));
+    }
+
+    /**
+     * Test that evaluation tables are registered as parameters.
+     */
+    @Test
+    public void testTableParams() {
+        Parameters par = Parameters.instance();
+        int kt1b0 = Evaluate.kt1b[0];
+        SpinParam p = (SpinParam)par.getParam("kt1b[0]");
+        assertNotNull(p);
+        assertEquals(kt1b0, p.getValue());
+        assertEquals(kt1b0, p.defaultValue);
+        assertTrue(Arrays.asList(par.getSpinParamNames()).contains("rookMobScore[3]"));
+        assertNull(par.getParam("pt1b[0]"));   // Pawns can not be on the last row
+
+        try {
+            par.set("kt1b[0]", "17");
+            assertEquals(17, Evaluate.kt1b[0]);
+            assertEquals(17, p.getValue());
+            Evaluate.updateTables();
+            assertEquals(17, Evaluate.kt1w[63]);
+
+            par.set("kt1b[0]", "5000");  // Out of range, ignored
+            assertEquals(17, Evaluate.kt1b[0]);
+        } finally {
+            par.set("kt1b[0]", Integer.toString(kt1b0));
+            Evaluate.updateTables();
+        }
+        assertEquals(kt1b0, Evaluate.kt1w[63]);
+    }
+
+    /**
+     * Test writing and reading parameter files.
+     */
+    @Test
+    public void testReadWrite() throws IOException {
+        Parameters par = Parameters.instance();
+        int bishMob = Evaluate.bishMobScore[5];
+        StringWriter sw = new StringWriter();
+        par.write(new PrintWriter(sw));
+        String text = sw.toString();
+        assertTrue(text.contains("version " + Parameters.FILE_VERSION + "\n"));
+        assertTrue(text.contains("bishMobScore[5] " + bishMob + "\n"));
+        assertTrue(text.contains("pV 0\n"));
+
+        try {
+            read("version 1\n# comment\n\nbishMobScore[5] " + (bishMob + 3) + "\n");
+            assertEquals(bishMob + 3, Evaluate.bishMobScore[5]);
+            read(text);
+            assertEquals(bishMob, Evaluate.bishMobScore[5]);
+
+            String[] badFiles = {
+                "bishMobScore[5] 3\n",
+                "version 2\nbishMobScore[5] 3\n",
+                "version 1\nbishMobScore[5] 3000\n",
+                "version 1\nbishMobScore[5] x\n",
+                "version 1\nbishMobScore[5]\n",
+                "",
+                "version 1\nbishMobScore[5] 3\nbishMobScore[6] x\n",
+                "bishMobScore[5] 3\nversion 1\n",
+            };
+            for (String bad : badFiles) {
+                try {
+                    read(bad);
+                    fail(bad);
+                } catch (IOException ignored) {
+                }
+                assertEquals(bad, bishMob, Evaluate.bishMobScore[5]);
+            }
+        } finally {
+            par.set("bishMobScore[5]", Integer.toString(bishMob));
+        }
+        assertEquals(bishMob, Evaluate.bishMobScore[5]);
+    }
+
+    /**
+     * Test that scalar evaluation weights can be changed and that parameters
+     * only used at startup are not changed.
+     */
+    @Test
+    public void testWeightsAndStartupParams() throws IOException, ChessParseError {
+        Parameters par = Parameters.instance();
+        SpinParam rookOpen = (SpinParam)par.getParam("rookOpenFile");
+        assertNotNull(rookOpen);
+        assertTrue(rookOpen.isTableElement());
+        SpinParam pawnValue = (SpinParam)par.getParam("pV");
+        assertFalse(pawnValue.isTableElement());
+
+        Position pos = TextIO.readFEN("q3k3/ppp5/8/8/8/8/PPP5/3RK2Q w - - 0 1");
+        int score0 = new Evaluate().evalPos(pos);
+        int rookOpen0 = rookOpen.getValue();
+        int pV = Evaluate.pV;
+        try {
+            List<String> ignored = read("version 1\nrookOpenFile " + (rookOpen0 + 10) + "\npV " +
+                                        (pawnValue.getValue() + 5) + "\n");
+            assertEquals(List.of("pV"), ignored);
+            assertEquals(rookOpen0 + 10, rookOpen.getValue());
+            assertEquals(pV - 92, pawnValue.getValue());
+            assertEquals(score0 + 10, new Evaluate().evalPos(pos));
+        } finally {
+            par.set("rookOpenFile", Integer.toString(rookOpen0));
+        }
+        assertEquals(score0, new Evaluate().evalPos(pos));
+    }
+}
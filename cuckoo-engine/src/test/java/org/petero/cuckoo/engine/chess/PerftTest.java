@@ -0,0 +1,75 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author petero
+ */
+public class PerftTest {
+
+    /**
+     * Test of perft method, of class Perft.
+     */
+    @Test
+    public void testPerft() throws ChessParseError {
+        Position pos = TextIO.readFEN("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        String fen = TextIO.toFEN(pos);
+        Perft[] perfts = {
+            new Perft(1, -1),
+            new Perft(1, 12),
+            new Perft(4, -1),
+            new Perft(4, 12),
+        };
+        for (Perft p : perfts) {
+            assertEquals(1, p.perft(pos, 0));
+            assertEquals(48, p.perft(pos, 1));
+            assertEquals(2039, p.perft(pos, 2));
+            assertEquals(97862, p.perft(pos, 3));
+            assertEquals(4085603, p.perft(pos, 4));
+            assertEquals(fen, TextIO.toFEN(pos));
+        }
+
+        pos = TextIO.readFEN("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+        assertEquals(674624, new Perft(4, 16).perft(pos, 5));
+    }
+
+    /**
+     * Test of divide method, of class Perft.
+     */
+    @Test
+    public void testDivide() throws ChessParseError {
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        long nodes = new Perft(2, 10).divide(pos, 3, new PrintStream(bos));
+        assertEquals(8902, nodes);
+        String out = bos.toString();
+        assertTrue(out.contains("e2e4: 600\n") || out.contains("e2e4: 600\r\n"));
+        assertTrue(out.contains("g1f3: 440"));
+        assertTrue(out.contains("Nodes searched: 8902"));
+        assertTrue(out.contains("Mnps"));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author petero
+ */
+public class PolyglotBookTest {
+
+    /**
+     * Test the hash keys against the examples in the Polyglot book format description.
+     */
+    @Test
+    public void testHashKey() throws ChessParseError {
+        String[] fens = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+            "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2",
+            "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3",
+            "rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4",
+            "rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3",
+            "rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4",
+        };
+        long[] keys = {
+            0x463b96181691fc9cL, 0x823c9b50fd114196L, 0x0756b94461c50fb0L,
+            0x662fafb965db29d4L, 0x22a48b5a8e47ff78L, 0x652a607ca3f242c1L,
+            0x00fdd303c946bdd9L, 0x3c8123ea7b067637L, 0x5c3f9b829b279560L,
+        };
+        for (int i = 0; i < fens.length; i++)
+            assertEquals(fens[i], keys[i], PolyglotBook.hashKey(TextIO.readFEN(fens[i])));
+
+        // Same positions reached by making moves
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        UndoInfo ui = new UndoInfo();
+        String[] moves = { "e4", "d5", "e5", "f5", "Ke2", "Kf7" };
+        for (int i = 0; i < moves.length; i++) {
+            pos.makeMove(TextIO.stringToMove(pos, moves[i]).get(), ui);
+            assertEquals(keys[i + 1], PolyglotBook.hashKey(pos));
+        }
+    }
+
+    private static void writeEntry(DataOutputStream dos, long key, int from, int to, int weight)
+            throws IOException {
+        dos.writeLong(key);
+        dos.writeShort(to + (from << 6));
+        dos.writeShort(weight);
+        dos.writeInt(0);
+    }
+
+    /**
+     * Test move lookup in a Polyglot book file.
+     */
+    @Test
+    public void testBookMoves() throws ChessParseError, IOException {
+        Position startPos = TextIO.readFEN(TextIO.START_POS_FEN);
+        Position castlePos = TextIO.readFEN("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        long startKey = PolyglotBook.hashKey(startPos);
+        long castleKey = PolyglotBook.hashKey(castlePos);
+        assertTrue(Long.compareUnsigned(startKey, castleKey) < 0);  // Entries must be sorted
+
+        Path file = Files.createTempFile("book", ".bin");
+        try {
+            try (DataOutputStream dos = new DataOutputStream(Files.newOutputStream(file))) {
+                writeEntry(dos, startKey, 12, 28, 10);  // e2e4
+                writeEntry(dos, startKey, 11, 27, 0);   // d2d4
+                writeEntry(dos, castleKey, 4, 7, 1);    // O-O, stored as e1h1
+            }
+            Book book = new Book(false, file.toString());
+            assertEquals("e4(10) d4(0) ", book.getAllBookMoves(startPos));
+            for (int i = 0; i < 10; i++)
+                assertEquals(new Move(12, 28, Piece.EMPTY), book.getBookMove(startPos));
+            assertEquals(new Move(4, 6, Piece.EMPTY), book.getBookMove(castlePos));
+            assertNull(book.getBookMove(TextIO.readFEN("4k3/8/8/8/8/8/8/4K3 w - - 0 1")));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -412,4 +412,31 @@ public class PositionTest {
         assertEquals(TextIO.getSquare("g1"), pos.getKingSq(true));
         assertEquals(TextIO.getSquare("d6"), pos.getKingSq(false));
     }
+
+    /**
+     * Test of updatePsScores method, of class Position.
+     */
+    @Test
+    public void testUpdatePsScores() throws ChessParseError {
+        final String fen = "r1bqkb1r/pppp1ppp/2n2n2/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 4 4";
+        Position pos = TextIO.readFEN(fen);
+        Parameters par = Parameters.instance();
+        int nt1b42 = Evaluate.nt1b[42];     // Knight on f3
+        try {
+            par.set("nt1b[42]", Integer.toString(nt1b42 + 10));
+            Evaluate.updateTables();
+            Position fresh = TextIO.readFEN(fen);
+            assertEquals(pos.psScore1[Piece.WKNIGHT] + 10, fresh.psScore1[Piece.WKNIGHT]);
+            pos.updatePsScores();
+            assertArrayEquals(fresh.psScore1, pos.psScore1);
+            assertArrayEquals(fresh.psScore2, pos.psScore2);
+        } finally {
+            par.set("nt1b[42]", Integer.toString(nt1b42));
+            Evaluate.updateTables();
+        }
+        pos.updatePsScores();
+        Position orig = TextIO.readFEN(fen);
+        assertArrayEquals(orig.psScore1, pos.psScore1);
+        assertArrayEquals(orig.psScore2, pos.psScore2);
+    }
 }
@@ -22,6 +22,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Optional;
 
 /**
@@ -226,6 +227,174 @@ public class SearchTest {
         assertEquals(Search.MATE0-18, bestM.score);
     }
 
+    /**
+     * Test of setHelperThreads method, of class Search.
+     */
+    @Test
+    public void testHelperThreads() throws ChessParseError {
+        Position pos = TextIO.readFEN("r1bq2rk/pp3pbp/2p1p1pQ/7P/3P4/2PB1N2/PP3PPR/2KR4 w - -"); // WAC 004
+        Search sc = new Search(pos, nullHist, 0, new TranspositionTable(16));
+        sc.setHelperThreads(3);
+        Move bestM = idSearch(sc, 6);
+        assertEquals(Search.MATE0 - 4, bestM.score);
+        assertEquals(move(pos, "Qxh7+"), new Move(bestM));
+        assertTrue(sc.getTotalNodes() >= sc.totalNodes);
+
+        pos = TextIO.readFEN("7K/6R1/5k2/3q4/8/8/8/8 b - - 0 1");
+        sc = new Search(pos, nullHist, 0, new TranspositionTable(16));
+        sc.setHelperThreads(2);
+        bestM = idSearch(sc, 9);
+        assertEquals(Search.MATE0-18, bestM.score);
+    }
+
+    /**
+     * Test of setHelpers method, of class Search.
+     */
+    @Test
+    public void testSetHelpers() throws ChessParseError {
+        Position pos = TextIO.readFEN("r1bq2rk/pp3pbp/2p1p1pQ/7P/3P4/2PB1N2/PP3PPR/2KR4 w - -"); // WAC 004
+        TranspositionTable tt = new TranspositionTable(16);
+        SearchHelpers helpers = new SearchHelpers(2, new Evaluate());
+        Evaluator helperEval = helpers.evaluator(0);
+        long nThreads = 0;
+        for (int i = 0; i < 4; i++) {
+            Search sc = new Search(pos, nullHist, 0, tt);
+            sc.setHelpers(helpers);
+            Move bestM = idSearch(sc, 6);
+            assertEquals(Search.MATE0 - 4, bestM.score);
+            long n = Thread.getAllStackTraces().keySet().stream()
+                           .filter(t -> t.getName().startsWith("Search helper")).count();
+            if (i == 0)
+                nThreads = n;
+            assertEquals(nThreads, n);  // Threads are reused, not created for each search
+        }
+        assertSame(helperEval, helpers.evaluator(0));
+        helpers.shutdown();
+    }
+
+    /**
+     * Test of timeLimit method, of class Search, when called during a search.
+     */
+    @Test
+    public void testStopSearch() throws ChessParseError, InterruptedException {
+        Position pos = TextIO.readFEN("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+        MoveGen.removeIllegal(pos, moves);
+
+        // Stop an infinite search
+        Search sc = new Search(pos, nullHist, 0, new TranspositionTable(16));
+        sc.timeLimit(-1, -1);
+        Move[] bestM = new Move[1];
+        Thread t = new Thread(() -> bestM[0] = sc.iterativeDeepening(moves, -1, -1, false));
+        t.start();
+        Thread.sleep(100);
+        sc.timeLimit(0, 0);
+        t.join(5000);
+        assertFalse(t.isAlive());
+        assertNotNull(bestM[0]);
+
+        // Stop before the search has started
+        Search sc2 = new Search(pos, nullHist, 0, new TranspositionTable(16));
+        sc2.timeLimit(0, 0);
+        assertNotNull(sc2.iterativeDeepening(moves, -1, -1, false));
+        assertTrue(sc2.totalNodes < 10);
+
+        // Fixed time per move
+        Search sc3 = new Search(pos, nullHist, 0, new TranspositionTable(16));
+        sc3.timeLimit(50, 50);
+        long t0 = System.nanoTime();
+        assertNotNull(sc3.iterativeDeepening(moves, -1, -1, false));
+        long t1 = System.nanoTime();
+        assertTrue(t1 - t0 >= 50000000L);
+        assertTrue(t1 - t0 < 2000000000L);
+    }
+
+    /**
+     * Test of setMultiPV method, of class Search.
+     */
+    @Test
+    public void testMultiPV() throws ChessParseError {
+        Position pos = TextIO.readFEN("r1bq2rk/pp3pbp/2p1p1pQ/7P/3P4/2PB1N2/PP3PPR/2KR4 w - -"); // WAC 004
+        final int depth = 6;
+        final int nPV = 3;
+        Search sc = new Search(pos, nullHist, 0, new TranspositionTable(16));
+        sc.setMultiPV(nPV);
+        final int[] pvScores = new int[nPV + 1];
+        final Move[] pvMoves = new Move[nPV + 1];
+        sc.setListener(new Search.Listener() {
+            public void notifyDepth(int depth) { }
+            public void notifyCurrMove(Move m, int moveNr) { }
+            public void notifyPV(int d, int multiPVIndex, int score, int time, long nodes, long nps,
+                                 boolean isMate, boolean upperBound, boolean lowerBound, ArrayList<Move> pv) {
+                assertFalse(upperBound || lowerBound);
+                assertTrue(multiPVIndex >= 1 && multiPVIndex <= nPV);
+                if (isMate)
+                    score = (score > 0) ? Search.MATE0 - score : -Search.MATE0 - score;
+                pvScores[multiPVIndex] = score;
+                pvMoves[multiPVIndex] = new Move(pv.get(0));
+            }
+            public void notifyStats(long nodes, long nps, int time) { }
+        });
+        Move bestM = idSearch(sc, depth);
+        assertEquals(Search.MATE0 - 4, bestM.score);
+        assertEquals(move(pos, "Qxh7+"), new Move(bestM));
+        assertEquals(bestM, pvMoves[1]);
+        for (int i = 2; i <= nPV; i++) {
+            assertTrue(pvScores[i] <= pvScores[i - 1]);
+            for (int j = 1; j < i; j++)
+                assertNotEquals(pvMoves[j], pvMoves[i]);
+        }
+        assertTrue(pvScores[2] < Search.MATE0 / 2);
+
+        // Single PV search reports the best move as multipv 1
+        sc = new Search(pos, nullHist, 0, new TranspositionTable(16));
+        sc.setListener(new Search.Listener() {
+            public void notifyDepth(int depth) { }
+            public void notifyCurrMove(Move m, int moveNr) { }
+            public void notifyPV(int d, int multiPVIndex, int score, int time, long nodes, long nps,
+                                 boolean isMate, boolean upperBound, boolean lowerBound, ArrayList<Move> pv) {
+                assertEquals(1, multiPVIndex);
+            }
+            public void notifyStats(long nodes, long nps, int time) { }
+        });
+        assertEquals(move(pos, "Qxh7+"), new Move(idSearch(sc, depth)));
+    }
+
+    /**
+     * Test of extractPVMoves method, of class Search.
+     */
+    @Test
+    public void testExtractPVMoves() throws ChessParseError {
+        Position pos = TextIO.readFEN("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        TranspositionTable tt = new TranspositionTable(16);
+        Search sc = new Search(pos, nullHist, 0, tt);
+        Move bestM = idSearch(sc, 7);
+        ArrayList<Move> pv = sc.extractPVMoves(bestM);
+        assertEquals(tt.extractPVMoves(pos, bestM), pv);
+        assertTrue(pv.size() > 1);
+        assertEquals(pos, sc.pos);
+        assertSame(pv, sc.extractPVMoves(bestM));
+    }
+
+    /**
+     * Test that fixed depth search results with lazy evaluation stay close to the
+     * results without lazy evaluation.
+     */
+    @Test
+    public void testLazyEval() throws ChessParseError {
+        for (String fen : Bench.FENS) {
+            Position pos = TextIO.readFEN(fen);
+            int[] scores = new int[2];
+            for (int i = 0; i < 2; i++) {
+                Evaluate eval = new Evaluate();
+                eval.setLazyEval(i == 1);
+                Search sc = new Search(pos, nullHist, 0, new TranspositionTable(16), eval);
+                scores[i] = idSearch(sc, 6).score;
+            }
+            assertTrue(fen, Math.abs(scores[0] - scores[1]) <= 25);
+        }
+    }
+
     private Move idSearch(Search sc, int maxDepth) {
         MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(sc.pos);
         MoveGen.removeIllegal(sc.pos, moves);
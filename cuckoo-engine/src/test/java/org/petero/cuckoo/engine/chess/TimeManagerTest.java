@@ -0,0 +1,88 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author petero
+ */
+public class TimeManagerTest {
+    private static final Move e4 = new Move(TextIO.getSquare("e2"), TextIO.getSquare("e4"), Piece.EMPTY);
+    private static final Move d4 = new Move(TextIO.getSquare("d2"), TextIO.getSquare("d4"), Piece.EMPTY);
+
+    /**
+     * Test of softTimeLimit method, of class TimeManager.
+     */
+    @Test
+    public void testSoftTimeLimit() {
+        TimeManager tm = new TimeManager();
+        tm.iterationDone(e4, 50, 500, 1000, 10);
+        tm.iterationDone(e4, -50, 200, 1000, 10);
+        assertEquals(1000, tm.softTimeLimit(1000, 3000));   // Disabled by default
+        tm.reset();
+        tm.setEnabled(true);
+        assertEquals(1000, tm.softTimeLimit(1000, 3000));
+        assertEquals(-1, tm.softTimeLimit(-1, -1));
+
+        // Stable best move using most of the nodes
+        for (int i = 0; i < 6; i++)
+            tm.iterationDone(e4, 20, 900, 1000, 10);
+        assertTrue(tm.getScale() < 0.6);
+        long soft = tm.softTimeLimit(1000, 3000);
+        assertTrue(soft < 600);
+        assertEquals(1000, tm.softTimeLimit(1000, 1000));  // Fixed time per move
+        tm.setEnabled(false);
+        assertEquals(1000, tm.softTimeLimit(1000, 3000));
+        tm.setEnabled(true);
+
+        // Best move changes
+        tm.iterationDone(d4, 20, 900, 1000, 10);
+        assertTrue(tm.softTimeLimit(1000, 3000) > soft);
+
+        // Score drop and best move using few nodes
+        tm.reset();
+        tm.iterationDone(e4, 50, 500, 1000, 10);
+        tm.iterationDone(e4, -50, 200, 1000, 10);
+        assertTrue(tm.getScale() > 2.0);
+        assertEquals(1000, tm.softTimeLimit(400, 1000));
+    }
+
+    /**
+     * Test of stopSearch method, of class TimeManager.
+     */
+    @Test
+    public void testStopSearch() {
+        TimeManager tm = new TimeManager();
+        tm.setEnabled(true);
+        assertFalse(tm.stopSearch(0, 1000, 3000));
+        assertTrue(tm.stopSearch(1000, 1000, 3000));
+        assertEquals(-1, tm.nextIterationTime());
+
+        tm.iterationDone(e4, 0, 500, 1000, 100);
+        tm.iterationDone(e4, 0, 500, 1000, 300);
+        assertEquals(900, tm.nextIterationTime());
+        assertFalse(tm.stopSearch(500, 1000, 3000));
+        assertTrue(tm.stopSearch(2500, 3000, 3300));    // Next iteration can't finish
+        assertFalse(tm.stopSearch(2500, 3000, 3000));   // Fixed time per move
+    }
+}
@@ -0,0 +1,127 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.engine.chess;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.petero.cuckoo.engine.chess.TranspositionTable.TTEntry;
+
+/**
+ *
+ * @author petero
+ */
+public class TranspositionTableFileTest {
+
+    private static Move search(TranspositionTable tt, Position pos, int depth) {
+        Search sc = new Search(pos, new long[200], 0, tt);
+        MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+        MoveGen.removeIllegal(pos, moves);
+        sc.timeLimit(-1, -1);
+        return sc.iterativeDeepening(moves, depth, -1, false);
+    }
+
+    /** Check that all entries in "tt1" and "tt2" are equal. */
+    private static void assertSameEntries(PackedTranspositionTable tt1, PackedTranspositionTable tt2) {
+        assertEquals(tt1.mask, tt2.mask);
+        assertEquals(tt1.generation, tt2.generation);
+        for (long idx = 0; idx <= tt1.mask; idx++) {
+            assertEquals(tt1.keyAt(idx), tt2.keyAt(idx));
+            assertEquals(tt1.dataAt(idx), tt2.dataAt(idx));
+        }
+    }
+
+    /**
+     * Test of save and load methods, of class TranspositionTableFile.
+     */
+    @Test
+    public void testSaveLoad() throws ChessParseError, IOException {
+        File file = File.createTempFile("cuckoo", ".tt");
+        try {
+            Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+            PackedTranspositionTable[] tables = {
+                new PackedTranspositionTable(14),
+                new OffHeapTranspositionTable(14),
+                new BucketTranspositionTable(14),
+            };
+            for (PackedTranspositionTable tt : tables) {
+                tt.nextGeneration();
+                tt.nextGeneration();
+                Move bestM = search(tt, pos, 6);
+                TranspositionTableFile.save(tt, file.getPath());
+                assertEquals(TranspositionTableFile.HEADER_SIZE + 16L * (1 << 14), file.length());
+
+                OffHeapTranspositionTable tt2 = TranspositionTableFile.load(file.getPath());
+                assertEquals(tt instanceof BucketTranspositionTable, tt2 instanceof BucketTranspositionTable);
+                assertSameEntries(tt, tt2);
+                TTEntry ent = new TTEntry();
+                tt2.probe(pos.historyHash(), ent);
+                assertNotEquals(TTEntry.T_EMPTY, ent.type);
+                assertEquals(tt.extractPV(pos), tt2.extractPV(pos));
+                assertEquals(tt.extractPVMoves(pos, bestM).size(), tt2.extractPVMoves(pos, bestM).size());
+
+                // Changing the loaded table does not change the file
+                tt2.clear();
+                tt2.probe(pos.historyHash(), ent);
+                assertEquals(TTEntry.T_EMPTY, ent.type);
+                assertSameEntries(tt, TranspositionTableFile.load(file.getPath()));
+
+                // Saving to the file a loaded table was mapped from
+                tt2 = TranspositionTableFile.load(file.getPath());
+                tt2.nextGeneration();
+                TranspositionTableFile.save(tt2, file.getPath());
+                assertSameEntries(tt2, TranspositionTableFile.load(file.getPath()));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that load rejects files that are not transposition table files.
+     */
+    @Test
+    public void testLoadInvalid() throws IOException {
+        File file = File.createTempFile("cuckoo", ".tt");
+        try {
+            Files.write(file.toPath(), new byte[200]);
+            try {
+                TranspositionTableFile.load(file.getPath());
+                fail();
+            } catch (IOException expected) {
+            }
+
+            TranspositionTableFile.save(new OffHeapTranspositionTable(8), file.getPath());
+            byte[] data = Files.readAllBytes(file.toPath());
+            Files.write(file.toPath(), Arrays.copyOf(data, data.length - 16));
+            try {
+                TranspositionTableFile.load(file.getPath());
+                fail();
+            } catch (IOException expected) {
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
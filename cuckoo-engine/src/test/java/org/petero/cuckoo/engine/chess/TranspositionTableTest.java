@@ -37,6 +37,36 @@ public class TranspositionTableTest {
         return optionalMove.get();
     }
 
+    /**
+     * Test of hashFull and getStats methods, of class TranspositionTable.
+     */
+    @Test
+    public void testHashFullAndStats() throws ChessParseError {
+        TranspositionTable tt = new TranspositionTable(14);
+        assertEquals(0, tt.hashFull());
+        assertNull(tt.getStats());
+        tt.setCollectStats(true);
+        Position pos = TextIO.readFEN(TextIO.START_POS_FEN);
+        Search sc = new Search(pos, new long[200], 0, tt);
+        MoveGen.MoveList moves = new MoveGen().pseudoLegalMoves(pos);
+        MoveGen.removeIllegal(pos, moves);
+        sc.timeLimit(-1, -1);
+        sc.iterativeDeepening(moves, 7, -1, false);
+        int full = tt.hashFull();
+        assertTrue(full > 0);
+        assertTrue(full <= 1000);
+        TranspositionTable.Stats st = tt.getStats();
+        assertTrue(st.probes > st.hits);
+        assertTrue(st.hits > st.cutoffs);
+        assertTrue(st.cutoffs > 0);
+
+        // Entries from old generations are not counted
+        tt.nextGeneration();
+        assertEquals(0, tt.hashFull());
+        tt.setCollectStats(false);
+        assertNull(tt.getStats());
+    }
+
     /**
      * Test of TTEntry nested class, of class TranspositionTable.
      */
@@ -0,0 +1,100 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.simd;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.petero.cuckoo.engine.chess.NNUEKernels;
+
+/**
+ * SIMD implementation of the NNUE vector operations, using the incubating
+ * Vector API. The JVM must be started with --add-modules jdk.incubator.vector
+ * for this class to be used. It is in a separate module, so that the engine can
+ * be built without the incubator module. NNUEKernels loads it by name if it is on
+ * the class path. Elements that don't fill a whole vector are handled by the
+ * scalar code.
+ * @author petero
+ */
+public final class NNUEVectorKernels extends NNUEKernels {
+    private static final VectorSpecies<Short> S = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> I = VectorSpecies.of(int.class, S.vectorShape());
+
+    @Override
+    protected boolean isVector() {
+        return true;
+    }
+
+    @Override
+    protected void add(short[] acc, int accOffs, short[] w, int wOffs, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length()) {
+            ShortVector a = ShortVector.fromArray(S, acc, accOffs + i);
+            a.add(ShortVector.fromArray(S, w, wOffs + i)).intoArray(acc, accOffs + i);
+        }
+        for (; i < n; i++)
+            acc[accOffs + i] += w[wOffs + i];
+    }
+
+    @Override
+    protected void sub(short[] acc, int accOffs, short[] w, int wOffs, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length()) {
+            ShortVector a = ShortVector.fromArray(S, acc, accOffs + i);
+            a.sub(ShortVector.fromArray(S, w, wOffs + i)).intoArray(acc, accOffs + i);
+        }
+        for (; i < n; i++)
+            acc[accOffs + i] -= w[wOffs + i];
+    }
+
+    @Override
+    protected void addSub(short[] acc, int accOffs, short[] w, int addOffs, int subOffs, int n) {
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length()) {
+            ShortVector a = ShortVector.fromArray(S, acc, accOffs + i);
+            a.add(ShortVector.fromArray(S, w, addOffs + i))
+             .sub(ShortVector.fromArray(S, w, subOffs + i))
+             .intoArray(acc, accOffs + i);
+        }
+        for (; i < n; i++)
+            acc[accOffs + i] = (short)(acc[accOffs + i] + w[addOffs + i] - w[subOffs + i]);
+    }
+
+    @Override
+    protected int clippedDot(short[] acc, int accOffs, short[] w, int wOffs, int n, int maxVal) {
+        // The products don't fit in 16 bits, so each short vector is widened to two int vectors
+        IntVector sum = IntVector.zero(I);
+        int i = 0;
+        for (int bound = S.loopBound(n); i < bound; i += S.length()) {
+            ShortVector a = ShortVector.fromArray(S, acc, accOffs + i).max((short)0).min((short)maxVal);
+            ShortVector b = ShortVector.fromArray(S, w, wOffs + i);
+            for (int part = 0; part < 2; part++) {
+                IntVector ai = (IntVector)a.convertShape(VectorOperators.S2I, I, part);
+                IntVector bi = (IntVector)b.convertShape(VectorOperators.S2I, I, part);
+                sum = sum.add(ai.mul(bi));
+            }
+        }
+        int ret = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < n; i++)
+            ret += Math.min(Math.max(acc[accOffs + i], 0), maxVal) * w[wOffs + i];
+        return ret;
+    }
+}
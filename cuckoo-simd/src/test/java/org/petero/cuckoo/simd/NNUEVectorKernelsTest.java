@@ -0,0 +1,76 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.simd;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.NNUE;
+import org.petero.cuckoo.engine.chess.NNUEEvaluator;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.TextIO;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+/**
+ *
+ * @author petero
+ */
+public class NNUEVectorKernelsTest {
+
+    /**
+     * Test that the engine finds the SIMD implementation in this module.
+     */
+    @Test
+    public void testLoaded() {
+        assertTrue(NNUE.getDefault().withVectorKernels(true).usesVectorKernels());
+        assertFalse(NNUE.getDefault().withVectorKernels(false).usesVectorKernels());
+    }
+
+    /**
+     * Test that the SIMD and scalar implementations give the same evaluation
+     * scores when the accumulators are updated incrementally during random games.
+     */
+    @Test
+    public void testSameAsScalar() throws ChessParseError {
+        NNUEEvaluator vEval = new NNUEEvaluator(NNUE.getDefault().withVectorKernels(true));
+        NNUEEvaluator sEval = new NNUEEvaluator(NNUE.getDefault().withVectorKernels(false));
+        MoveGen moveGen = new MoveGen();
+        Random rnd = new Random(11);
+        UndoInfo ui = new UndoInfo();
+        for (int game = 0; game < 10; game++) {
+            Position vPos = TextIO.readFEN(TextIO.START_POS_FEN);
+            Position sPos = new Position(vPos);
+            for (int i = 0; i < 80; i++) {
+                assertEquals(sEval.evalPos(sPos), vEval.evalPos(vPos));
+                MoveGen.MoveList moves = moveGen.legalMoves(vPos);
+                if (moves.size == 0)
+                    break;
+                Move m = new Move(moves.m[rnd.nextInt(moves.size)]);
+                moveGen.returnMoveList(moves);
+                vPos.makeMove(m, ui);
+                sPos.makeMove(m, ui);
+            }
+        }
+    }
+}
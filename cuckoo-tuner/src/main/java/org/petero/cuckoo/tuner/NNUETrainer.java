@@ -0,0 +1,371 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.tuner;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.petero.cuckoo.engine.chess.Bench;
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Evaluate;
+import org.petero.cuckoo.engine.chess.Move;
+import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.NNUE;
+import org.petero.cuckoo.engine.chess.NNUEEvaluator;
+import org.petero.cuckoo.engine.chess.Piece;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.Search;
+import org.petero.cuckoo.engine.chess.TextIO;
+import org.petero.cuckoo.engine.chess.TranspositionTable;
+import org.petero.cuckoo.engine.chess.UndoInfo;
+
+/**
+ * Trains an NNUE network to reproduce the Evaluate scores.
+ * <p>
+ * Training positions are collected from games that start from the Bench positions
+ * and continue with a few random moves, followed by moves chosen by a shallow
+ * search, with some random moves mixed in. Positions where the side to move is in check or can win material
+ * are skipped, since the static evaluation is not meaningful there. The network
+ * is trained in floating point, using the Adam optimizer and the squared error
+ * between the scores mapped to winning probabilities, and then quantized.
+ * @author petero
+ */
+public class NNUETrainer {
+    private static final double PROB_SCALE = 400.0;   // Centipawns corresponding to one logistic unit
+    private static final int MAX_TARGET = 2000;
+    private static final int DECIDED_SCORE = 1000;
+    private static final int BATCH_SIZE = 256;
+    private static final int MAX_FEATURES = 32;
+    private static final int MAX_GAME_PLIES = 300;
+    private static final int SEARCH_DEPTH = 2;
+    private static final int RANDOM_MOVE_PERCENT = 5;
+
+    private final int nHidden;
+    private final Random rnd;
+
+    // Training data. Position i has nFeat[i] features, starting at i * MAX_FEATURES.
+    private int nPos;
+    private short[] featW, featB;
+    private byte[] nFeat;
+    private boolean[] wtm;
+    private float[] target;     // Target score in logistic units, from the side to move point of view
+
+    // Network parameters and Adam moment estimates
+    private final float[] w1, b1, w2;
+    private float b2;
+    private final float[] gw1, gb1, gw2;
+    private float gb2;
+    private final float[] mw1, vw1, mb1, vb1, mw2, vw2;
+    private float mb2, vb2;
+    private int adamStep;
+
+    NNUETrainer(int nHidden, long seed) {
+        this.nHidden = nHidden;
+        rnd = new Random(seed);
+        int n1 = NNUE.N_INPUTS * nHidden;
+        w1 = new float[n1]; gw1 = new float[n1]; mw1 = new float[n1]; vw1 = new float[n1];
+        b1 = new float[nHidden]; gb1 = new float[nHidden]; mb1 = new float[nHidden]; vb1 = new float[nHidden];
+        w2 = new float[2 * nHidden]; gw2 = new float[2 * nHidden]; mw2 = new float[2 * nHidden]; vw2 = new float[2 * nHidden];
+        for (int i = 0; i < n1; i++)
+            w1[i] = (float)(rnd.nextGaussian() * 0.05);
+        for (int i = 0; i < nHidden; i++)
+            b1[i] = 0.25f;
+        for (int i = 0; i < 2 * nHidden; i++)
+            w2[i] = (float)(rnd.nextGaussian() * 0.1);
+    }
+
+    /** Collect "n" training positions labeled by "eval". */
+    final void generatePositions(int n, Evaluate eval) throws ChessParseError {
+        featW = new short[n * MAX_FEATURES];
+        featB = new short[n * MAX_FEATURES];
+        nFeat = new byte[n];
+        wtm = new boolean[n];
+        target = new float[n];
+        nPos = 0;
+        HashSet<Long> seen = new HashSet<>();
+        MoveGen moveGen = new MoveGen();
+        TranspositionTable tt = new TranspositionTable(16);
+        long[] posHashList = new long[MAX_GAME_PLIES + 100];
+        UndoInfo ui = new UndoInfo();
+        while (nPos < n) {
+            Position pos = TextIO.readFEN(Bench.FENS[rnd.nextInt(Bench.FENS.length)]);
+            int nRandom = rnd.nextInt(5);
+            int halfMoveClock = 0;
+            for (int ply = 0; (ply < MAX_GAME_PLIES) && (nPos < n); ply++) {
+                MoveGen.MoveList moves = moveGen.legalMoves(pos);
+                if ((moves.size == 0) || (halfMoveClock >= 100)) {
+                    moveGen.returnMoveList(moves);
+                    break;
+                }
+                Search sc = new Search(pos, posHashList, ply, tt, eval);
+                if ((ply >= nRandom) && seen.add(pos.zobristHash()) && isQuiet(pos, sc, moveGen))
+                    addPosition(pos, eval.evalPos(pos));
+                Move m;
+                if ((ply < nRandom) || (rnd.nextInt(100) < RANDOM_MOVE_PERCENT)) {
+                    m = new Move(moves.m[rnd.nextInt(moves.size)]);
+                } else {
+                    m = sc.iterativeDeepening(moves, SEARCH_DEPTH, -1, false);
+                }
+                moveGen.returnMoveList(moves);
+                if (Math.abs(m.score) > DECIDED_SCORE)
+                    break;      // Game decided, no more useful positions
+                int p = pos.getPiece(m.from);
+                if ((pos.getPiece(m.to) != Piece.EMPTY) || (p == Piece.WPAWN) || (p == Piece.BPAWN))
+                    halfMoveClock = 0;
+                else
+                    halfMoveClock++;
+                posHashList[ply] = pos.zobristHash();
+                pos.makeMove(m, ui);
+            }
+        }
+    }
+
+    /** Return true if the side to move is not in check and has no captures that obviously win material. */
+    private static boolean isQuiet(Position pos, Search sc, MoveGen moveGen) {
+        if (MoveGen.inCheck(pos))
+            return false;
+        MoveGen.MoveList captures = moveGen.pseudoLegalCaptures(pos);
+        boolean quiet = true;
+        for (int mi = 0; mi < captures.size; mi++) {
+            Move m = captures.m[mi];
+            int victim = pos.getPiece(m.to);
+            if ((victim == Piece.EMPTY) || (m.promoteTo != Piece.EMPTY)) {
+                quiet = false;
+                break;
+            }
+            if (sc.SEE(m) > 0) {
+                quiet = false;
+                break;
+            }
+        }
+        moveGen.returnMoveList(captures);
+        return quiet;
+    }
+
+    private void addPosition(Position pos, int score) {
+        int nf = 0;
+        int offs = nPos * MAX_FEATURES;
+        for (int sq = 0; sq < 64; sq++) {
+            int p = pos.getPiece(sq);
+            if (p != Piece.EMPTY) {
+                featW[offs + nf] = (short)NNUE.whiteFeature(p, sq);
+                featB[offs + nf] = (short)NNUE.blackFeature(p, sq);
+                nf++;
+            }
+        }
+        nFeat[nPos] = (byte)nf;
+        wtm[nPos] = pos.whiteMove;
+        score = Math.max(-MAX_TARGET, Math.min(MAX_TARGET, score));
+        target[nPos] = (float)(score / PROB_SCALE);
+        nPos++;
+    }
+
+    private static float sigmoid(float x) {
+        return (float)(1.0 / (1.0 + Math.exp(-x)));
+    }
+
+    /** Compute the network output in logistic units for training position "idx". */
+    private float forward(int idx, float[] accW, float[] accB) {
+        final int n = nHidden;
+        System.arraycopy(b1, 0, accW, 0, n);
+        System.arraycopy(b1, 0, accB, 0, n);
+        int offs = idx * MAX_FEATURES;
+        for (int k = 0; k < nFeat[idx]; k++) {
+            int fw = featW[offs + k] * n;
+            int fb = featB[offs + k] * n;
+            for (int i = 0; i < n; i++) {
+                accW[i] += w1[fw + i];
+                accB[i] += w1[fb + i];
+            }
+        }
+        float[] us = wtm[idx] ? accW : accB;
+        float[] them = wtm[idx] ? accB : accW;
+        float out = b2;
+        for (int i = 0; i < n; i++) {
+            out += clip(us[i]) * w2[i];
+            out += clip(them[i]) * w2[n + i];
+        }
+        return out * NNUE.SCALE / (float)PROB_SCALE;
+    }
+
+    private static float clip(float x) {
+        return Math.min(Math.max(x, 0.0f), 1.0f);
+    }
+
+    /** Train one epoch on positions [0,nTrain). Return the mean loss. */
+    final double trainEpoch(int nTrain, float lr) {
+        final int n = nHidden;
+        int[] order = new int[nTrain];
+        for (int i = 0; i < nTrain; i++)
+            order[i] = i;
+        for (int i = nTrain - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        float[] accW = new float[n], accB = new float[n];
+        float[] dW = new float[n], dB = new float[n];
+        double lossSum = 0;
+        for (int b0 = 0; b0 < nTrain; b0 += BATCH_SIZE) {
+            int b1End = Math.min(b0 + BATCH_SIZE, nTrain);
+            for (int bi = b0; bi < b1End; bi++) {
+                int idx = order[bi];
+                float p = sigmoid(forward(idx, accW, accB));
+                float t = sigmoid(target[idx]);
+                lossSum += (p - t) * (p - t);
+                float d = 2 * (p - t) * p * (1 - p) * NNUE.SCALE / (float)PROB_SCALE;
+                float[] us = wtm[idx] ? accW : accB;
+                float[] them = wtm[idx] ? accB : accW;
+                float[] dUs = wtm[idx] ? dW : dB;
+                float[] dThem = wtm[idx] ? dB : dW;
+                gb2 += d;
+                for (int i = 0; i < n; i++) {
+                    gw2[i] += d * clip(us[i]);
+                    gw2[n + i] += d * clip(them[i]);
+                    dUs[i] = ((us[i] > 0) && (us[i] < 1)) ? d * w2[i] : 0;
+                    dThem[i] = ((them[i] > 0) && (them[i] < 1)) ? d * w2[n + i] : 0;
+                    gb1[i] += dW[i] + dB[i];
+                }
+                int offs = idx * MAX_FEATURES;
+                for (int k = 0; k < nFeat[idx]; k++) {
+                    int fw = featW[offs + k] * n;
+                    int fb = featB[offs + k] * n;
+                    for (int i = 0; i < n; i++) {
+                        gw1[fw + i] += dW[i];
+                        gw1[fb + i] += dB[i];
+                    }
+                }
+            }
+            adamUpdate(lr, 1.0f / (b1End - b0));
+        }
+        return lossSum / nTrain;
+    }
+
+    private void adamUpdate(float lr, float gScale) {
+        final float beta1 = 0.9f, beta2 = 0.999f, eps = 1e-8f;
+        adamStep++;
+        float c1 = (float)(1 - Math.pow(beta1, adamStep));
+        float c2 = (float)(1 - Math.pow(beta2, adamStep));
+        float a = lr * (float)Math.sqrt(c2) / c1;
+        adam(w1, gw1, mw1, vw1, a, gScale);
+        adam(b1, gb1, mb1, vb1, a, gScale);
+        adam(w2, gw2, mw2, vw2, a, gScale);
+        float g = gb2 * gScale;
+        mb2 = beta1 * mb2 + (1 - beta1) * g;
+        vb2 = beta2 * vb2 + (1 - beta2) * g * g;
+        b2 -= a * mb2 / ((float)Math.sqrt(vb2) + eps);
+        gb2 = 0;
+    }
+
+    private static void adam(float[] w, float[] g, float[] m, float[] v, float a, float gScale) {
+        final float beta1 = 0.9f, beta2 = 0.999f, eps = 1e-8f;
+        for (int i = 0; i < w.length; i++) {
+            float gi = g[i] * gScale;
+            if ((gi == 0) && (m[i] == 0))
+                continue;
+            m[i] = beta1 * m[i] + (1 - beta1) * gi;
+            v[i] = beta2 * v[i] + (1 - beta2) * gi * gi;
+            w[i] -= a * m[i] / ((float)Math.sqrt(v[i]) + eps);
+            g[i] = 0;
+        }
+    }
+
+    /** Return the mean absolute error in centipawns of "net" for positions [from,to). */
+    final double meanError(NNUE net, int from, int to) {
+        NNUEEvaluator eval = new NNUEEvaluator(net);
+        double errSum = 0;
+        for (int idx = from; idx < to; idx++) {
+            // Rebuild the position from its white features, (piece - 1) * 64 + sq
+            Position pos = new Position();
+            int offs = idx * MAX_FEATURES;
+            for (int k = 0; k < nFeat[idx]; k++)
+                pos.setPiece(featW[offs + k] % 64, featW[offs + k] / 64 + 1);
+            pos.setWhiteMove(wtm[idx]);
+            int score = eval.evalPos(pos);
+            errSum += Math.abs(score - target[idx] * PROB_SCALE);
+        }
+        return errSum / Math.max(to - from, 1);
+    }
+
+    /** Convert the floating point network to the quantized integer format. */
+    final NNUE quantize() {
+        short[] qw1 = new short[w1.length];
+        for (int i = 0; i < w1.length; i++)
+            qw1[i] = toShort(w1[i] * NNUE.QA);
+        short[] qb1 = new short[nHidden];
+        for (int i = 0; i < nHidden; i++)
+            qb1[i] = toShort(b1[i] * NNUE.QA);
+        short[] qw2 = new short[2 * nHidden];
+        for (int i = 0; i < 2 * nHidden; i++)
+            qw2[i] = toShort(w2[i] * NNUE.QB);
+        int qb2 = Math.round(b2 * NNUE.QA * NNUE.QB);
+        return new NNUE(nHidden, qw1, qb1, qw2, qb2);
+    }
+
+    private static short toShort(float x) {
+        return (short)Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(x)));
+    }
+
+    /**
+     * Train a network from the command line.
+     * Arguments: [-positions n] [-epochs n] [-hidden n] [-seed n] outFile
+     */
+    public static void main(String[] args) throws ChessParseError, IOException {
+        int nPositions = 1000000;
+        int epochs = 12;
+        int nHidden = 64;
+        long seed = 0;
+        String outFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-positions" -> nPositions = Integer.parseInt(args[++i]);
+                case "-epochs" -> epochs = Integer.parseInt(args[++i]);
+                case "-hidden" -> nHidden = Integer.parseInt(args[++i]);
+                case "-seed" -> seed = Long.parseLong(args[++i]);
+                default -> outFile = args[i];
+            }
+        }
+        if ((outFile == null) || (nHidden < 1) || (nHidden > NNUE.MAX_HIDDEN)) {
+            System.out.print("Usage: nnuetrainer [-positions n] [-epochs n] [-hidden n] [-seed n] outFile\n");
+            System.exit(1);
+        }
+
+        NNUETrainer trainer = new NNUETrainer(nHidden, seed);
+        long t0 = System.currentTimeMillis();
+        trainer.generatePositions(nPositions, new Evaluate());
+        System.out.printf("Generated %d positions in %.1f s%n", nPositions, (System.currentTimeMillis() - t0) * 1e-3);
+
+        int nTrain = nPositions - nPositions / 20;
+        float lr = 0.001f;
+        for (int e = 0; e < epochs; e++) {
+            double loss = trainer.trainEpoch(nTrain, lr);
+            NNUE net = trainer.quantize();
+            System.out.printf("Epoch %2d: loss %.6f  error train %.1f validation %.1f%n", e + 1, loss,
+                              trainer.meanError(net, 0, Math.min(nTrain, 50000)),
+                              trainer.meanError(net, nTrain, nPositions));
+            if (e >= epochs / 2)
+                lr *= 0.7f;
+        }
+        try (OutputStream os = new FileOutputStream(outFile)) {
+            trainer.quantize().write(os);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.tuner;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.petero.cuckoo.engine.chess.Evaluate;
+import org.petero.cuckoo.engine.chess.Parameters;
+import org.petero.cuckoo.engine.chess.Parameters.SpinParam;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.Search;
+import org.petero.cuckoo.engine.chess.TranspositionTable;
+
+/**
+ * Tunes the evaluation parameters using the Texel method.
+ * <p>
+ * The quiescence search score s of each position is mapped to an expected game
+ * result by the logistic function 1 / (1 + 10^(-K*s/400)), and the tuner minimizes
+ * the mean squared difference between the expected and the real game results.
+ * K is first chosen to minimize the error for the current parameters. Then each
+ * parameter is in turn increased or decreased by one, and the change is kept if
+ * the error gets smaller, until no change improves the error.
+ * <p>
+ * All parameters stored in evaluation tables are tuned. The piece values are
+ * only read when the evaluation is initialized, so they can not be tuned this way.
+ * The quiescence searches are divided between all available cores.
+ * @author petero
+ */
+public class TexelTuner {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int MAX_SCORE = 3000;   // Limit for mate scores
+
+    private final TuningPositions positions;
+    private final ForkJoinPool pool;
+    private double k = 1.0;
+
+    public TexelTuner(TuningPositions positions, int nThreads) {
+        this.positions = positions;
+        this.pool = new ForkJoinPool(nThreads);
+    }
+
+    /** Return the quiescence search scores of all positions, from white's point of view. */
+    final int[] computeScores() {
+        Evaluate.updateTables();
+        int[] scores = new int[positions.size()];
+        int nChunks = (positions.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        pool.submit(() -> IntStream.range(0, nChunks).parallel().forEach(c -> scoreChunk(c, scores))).join();
+        return scores;
+    }
+
+    private void scoreChunk(int chunk, int[] scores) {
+        // A new Evaluate object for each chunk, so no cached scores from old parameter values are used
+        Evaluate eval = new Evaluate(10, 10, 0);
+        Search sc = new Search(new Position(), new long[200], 0, new TranspositionTable(2), eval);
+        int end = Math.min((chunk + 1) * CHUNK_SIZE, positions.size());
+        for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+            Position pos = positions.getPosition(i);
+            int score = sc.quiesceScore(pos);
+            if (!pos.whiteMove)
+                score = -score;
+            scores[i] = Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+        }
+    }
+
+    /** Return the mean squared error for the given scores and scaling constant. */
+    final double error(int[] scores, double k) {
+        double sum = 0;
+        for (int i = 0; i < scores.length; i++) {
+            double expected = 1 / (1 + Math.pow(10, -k * scores[i] / 400));
+            double d = positions.getResult(i) - expected;
+            sum += d * d;
+        }
+        return sum / Math.max(scores.length, 1);
+    }
+
+    /** Return the error for the current parameter values. */
+    final double error() {
+        return error(computeScores(), k);
+    }
+
+    /** Set K to the value that minimizes the error for the current parameter values. */
+    final double fitK() {
+        return fitK(computeScores());
+    }
+
+    /** Set K to the value that minimizes the error for the given scores, using golden-section search. */
+    final double fitK(int[] scores) {
+        double lo = 0.1, hi = 4.0;
+        final double phi = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 60; i++) {
+            double k1 = hi - phi * (hi - lo);
+            double k2 = lo + phi * (hi - lo);
+            if (error(scores, k1) < error(scores, k2))
+                hi = k2;
+            else
+                lo = k1;
+        }
+        k = (lo + hi) / 2;
+        return k;
+    }
+
+    /** Return the parameters that can be tuned, with names matching "pattern". */
+    static List<SpinParam> tunableParams(Pattern pattern) {
+        Evaluate.updateTables();    // Makes sure the evaluation tables have been registered as parameters
+        List<SpinParam> ret = new ArrayList<>();
+        Parameters par = Parameters.instance();
+        for (String name : par.getSpinParamNames()) {
+            SpinParam p = (SpinParam)par.getParam(name);
+            if (p.isTableElement() && pattern.matcher(p.getName()).matches())
+                ret.add(p);
+        }
+        return ret;
+    }
+
+    /**
+     * Improve the parameters by local search, writing the parameters to "outFile"
+     * after each pass over all parameters.
+     * @param maxIterations Maximum number of passes over all parameters.
+     */
+    final void localSearch(List<SpinParam> params, int maxIterations, String outFile) throws IOException {
+        Parameters par = Parameters.instance();
+        double bestErr = error();
+        System.out.printf("Initial error: %.8f%n", bestErr);
+        for (int iter = 1; iter <= maxIterations; iter++) {
+            int nChanged = 0;
+            for (SpinParam p : params) {
+                int val = p.getValue();
+                for (int delta : new int[]{ 1, -1 }) {
+                    int newVal = val + delta;
+                    if ((newVal < p.minValue) || (newVal > p.maxValue))
+                        continue;
+                    par.set(p.getName(), Integer.toString(newVal));
+                    double err = error();
+                    if (err < bestErr) {
+                        bestErr = err;
+                        val = newVal;
+                        nChanged++;
+                        break;
+                    }
+                    par.set(p.getName(), Integer.toString(val));
+                }
+            }
+            System.out.printf("Iteration %d: error %.8f, %d parameters changed%n", iter, bestErr, nChanged);
+            writeParams(outFile);
+            if (nChanged == 0)
+                break;
+        }
+    }
+
+    /** Write all parameters to "fileName", replacing the old file only when the new file is complete. */
+    static void writeParams(String fileName) throws IOException {
+        Path path = Paths.get(fileName).toAbsolutePath();
+        Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(tmpPath))) {
+            Parameters.instance().write(pw);
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Run the tuner from the command line.
+     * Arguments: [-threads n] [-iterations n] [-positions n] [-params regexp] epdFile outFile
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int iterations = 100;
+        int maxPositions = -1;
+        String paramRegExp = ".*";
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                case "-iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "-positions" -> maxPositions = Integer.parseInt(args[++i]);
+                case "-params" -> paramRegExp = args[++i];
+                default -> files.add(args[i]);
+            }
+        }
+        if (files.size() != 2) {
+            System.out.print("Usage: tuner [-threads n] [-iterations n] [-positions n] [-params regexp] epdFile outFile\n");
+            System.exit(1);
+        }
+
+        long t0 = System.currentTimeMillis();
+        TuningPositions positions = TuningPositions.readEPD(files.get(0), maxPositions);
+        System.out.printf("Read %d positions in %.1f s%n", positions.size(), (System.currentTimeMillis() - t0) * 1e-3);
+
+        TexelTuner tuner = new TexelTuner(positions, Math.max(1, threads));
+        List<SpinParam> params = tunableParams(Pattern.compile(paramRegExp, Pattern.CASE_INSENSITIVE));
+        System.out.printf("Tuning %d parameters%n", params.size());
+        t0 = System.currentTimeMillis();
+        System.out.printf("K: %.4f (%.1f s per error computation)%n", tuner.fitK(),
+                          (System.currentTimeMillis() - t0) * 1e-3);
+        tuner.localSearch(params, iterations, files.get(1));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.tuner;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.TextIO;
+
+/**
+ * A set of positions with game results, stored compactly so that millions of
+ * positions fit in memory. Positions are converted to Position objects when
+ * needed, so the piece/square scores always use the current evaluation tables.
+ * @author petero
+ */
+public class TuningPositions {
+    private static final int POS_SIZE = 34;    // 32 bytes for the squares, 1 for side/castling, 1 for ep square
+
+    private byte[] data = new byte[POS_SIZE * 1024];
+    private byte[] results = new byte[1024];   // 0 = black wins, 1 = draw, 2 = white wins
+    private int size = 0;
+
+    /** Return the number of positions. */
+    public final int size() {
+        return size;
+    }
+
+    /** Add a position with a game result. "result" is 0, 0.5 or 1 from white's point of view. */
+    public final void add(Position pos, double result) {
+        if (size == results.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+            results = Arrays.copyOf(results, results.length * 2);
+        }
+        int offs = size * POS_SIZE;
+        for (int sq = 0; sq < 64; sq += 2)
+            data[offs + sq / 2] = (byte)(pos.getPiece(sq) | (pos.getPiece(sq + 1) << 4));
+        data[offs + 32] = (byte)((pos.whiteMove ? 1 : 0) | (pos.getCastleMask() << 1));
+        data[offs + 33] = (byte)(pos.getEpSquare() + 1);
+        results[size] = (byte)Math.round(result * 2);
+        size++;
+    }
+
+    /** Create a Position object for position number "idx". */
+    public final Position getPosition(int idx) {
+        Position pos = new Position();
+        int offs = idx * POS_SIZE;
+        for (int sq = 0; sq < 64; sq += 2) {
+            int b = data[offs + sq / 2];
+            pos.setPiece(sq, b & 15);
+            pos.setPiece(sq + 1, (b >> 4) & 15);
+        }
+        int flags = data[offs + 32];
+        pos.setWhiteMove((flags & 1) != 0);
+        pos.setCastleMask(flags >> 1);
+        pos.setEpSquare(data[offs + 33] - 1);
+        return pos;
+    }
+
+    /** Return the game result for position "idx", 0, 0.5 or 1 from white's point of view. */
+    public final double getResult(int idx) {
+        return results[idx] * 0.5;
+    }
+
+    /**
+     * Read positions from an EPD file. Each line starts with a position in FEN
+     * notation, where the move counters are optional, followed by the game result
+     * as 1-0, 0-1, 1/2-1/2 or as a number in brackets, such as [0.5].
+     * @param maxPositions Maximum number of positions to read, or -1 for no limit.
+     */
+    public static TuningPositions readEPD(String fileName, int maxPositions) throws IOException {
+        TuningPositions ret = new TuningPositions();
+        try (BufferedReader r = Files.newBufferedReader(Paths.get(fileName))) {
+            int lineNo = 0;
+            String line;
+            while (((maxPositions < 0) || (ret.size < maxPositions)) && ((line = r.readLine()) != null)) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+                String[] words = line.split("\\s+", 5);
+                double result = (words.length == 5) ? parseResult(words[4]) : -1;
+                if (result < 0)
+                    throw new IOException("No game result, line " + lineNo + ": " + line);
+                String fen = words[0] + " " + words[1] + " " + words[2] + " " + words[3];
+                try {
+                    ret.add(TextIO.readFEN(fen), result);
+                } catch (ChessParseError e) {
+                    throw new IOException("Invalid position, line " + lineNo + ": " + e.getMessage());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** Return the game result in "str", the part of an EPD line after the position, or -1 if not found. */
+    static double parseResult(String str) {
+        if (str.contains("1/2-1/2") || str.contains("[0.5]"))
+            return 0.5;
+        if (str.contains("1-0") || str.contains("[1.0]") || str.contains("[1]"))
+            return 1;
+        if (str.contains("0-1") || str.contains("[0.0]") || str.contains("[0]"))
+            return 0;
+        return -1;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.tuner;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Evaluate;
+import org.petero.cuckoo.engine.chess.Parameters;
+import org.petero.cuckoo.engine.chess.Parameters.SpinParam;
+import org.petero.cuckoo.engine.chess.TextIO;
+
+/**
+ *
+ * @author petero
+ */
+public class TexelTunerTest {
+
+    /**
+     * Test of error method, of class TexelTuner.
+     */
+    @Test
+    public void testError() throws ChessParseError {
+        TuningPositions positions = new TuningPositions();
+        positions.add(TextIO.readFEN(TextIO.START_POS_FEN), 1);
+        positions.add(TextIO.readFEN(TextIO.START_POS_FEN), 0);
+        TexelTuner tuner = new TexelTuner(positions, 1);
+        assertEquals(0.25, tuner.error(new int[]{ 0, 0 }, 1.0), 1e-12);
+        assertEquals(1.0 / 121, tuner.error(new int[]{ 400, -400 }, 1.0), 1e-12);
+        assertEquals(0.0, tuner.error(new int[0], 1.0), 0);
+    }
+
+    /**
+     * Test of fitK method, of class TexelTuner.
+     */
+    @Test
+    public void testFitK() throws ChessParseError {
+        // Synthetic data set where the results are drawn from the logistic model with K = 1.3
+        final double trueK = 1.3;
+        final int n = 20000;
+        Random rnd = new Random(4711);
+        TuningPositions positions = new TuningPositions();
+        int[] scores = new int[n];
+        for (int i = 0; i < n; i++) {
+            scores[i] = rnd.nextInt(1201) - 600;
+            double p = 1 / (1 + Math.pow(10, -trueK * scores[i] / 400));
+            positions.add(TextIO.readFEN(TextIO.START_POS_FEN), (rnd.nextDouble() < p) ? 1 : 0);
+        }
+        TexelTuner tuner = new TexelTuner(positions, 1);
+        double k = tuner.fitK(scores);
+        assertEquals(trueK, k, 0.1);
+
+        // Golden-section search must find the minimum of the error function
+        double err = tuner.error(scores, k);
+        for (double k2 = 0.2; k2 < 4.0; k2 += 0.01)
+            assertTrue(k2 + " " + k, err <= tuner.error(scores, k2) + 1e-12);
+    }
+
+    /**
+     * Test of tunableParams method, of class TexelTuner.
+     */
+    @Test
+    public void testTunableParams() {
+        List<SpinParam> params = TexelTuner.tunableParams(Pattern.compile("rookOpenFile"));
+        assertEquals(1, params.size());
+        assertEquals("rookOpenFile", params.get(0).getName());
+
+        params = TexelTuner.tunableParams(Pattern.compile(".*"));
+        assertTrue(params.size() > 100);
+        for (SpinParam p : params)
+            assertTrue(p.getName(), p.isTableElement());
+        assertTrue(params.stream().noneMatch(p -> p.getName().equals("pV")));
+    }
+
+    /**
+     * Test of localSearch method, of class TexelTuner.
+     */
+    @Test
+    public void testLocalSearch() throws ChessParseError, IOException {
+        // White has a rook on an open file and wins every game, so a larger
+        // open file bonus always gives a smaller error.
+        TuningPositions positions = new TuningPositions();
+        positions.add(TextIO.readFEN("q3k3/ppp5/8/8/8/8/PPP5/3RK2Q w - - 0 1"), 1);
+        positions.add(TextIO.readFEN("4k3/ppp5/8/8/8/8/PPP5/3RK3 b - - 0 1"), 1);
+        TexelTuner tuner = new TexelTuner(positions, 1);
+        Parameters par = Parameters.instance();
+        SpinParam rookOpen = (SpinParam)par.getParam("rookOpenFile");
+        SpinParam bishMob = (SpinParam)par.getParam("bishMobScore[5]");
+        int rookOpen0 = rookOpen.getValue();
+        int bishMob0 = bishMob.getValue();
+        Path file = Files.createTempFile("params", ".txt");
+        try {
+            double err0 = tuner.error();
+            tuner.localSearch(List.of(rookOpen), 3, file.toString());
+            assertEquals(rookOpen0 + 3, rookOpen.getValue());
+            assertEquals(bishMob0, bishMob.getValue());
+            assertTrue(tuner.error() < err0);
+
+            par.set("rookOpenFile", Integer.toString(rookOpen0));
+            par.readFile(file.toString());
+            assertEquals(rookOpen0 + 3, rookOpen.getValue());
+        } finally {
+            Files.deleteIfExists(file);
+            par.set("rookOpenFile", Integer.toString(rookOpen0));
+            Evaluate.updateTables();
+        }
+    }
+
+    /**
+     * Test of writeParams method, of class TexelTuner.
+     */
+    @Test
+    public void testWriteParams() throws IOException {
+        Parameters par = Parameters.instance();
+        SpinParam rookOpen = (SpinParam)par.getParam("rookOpenFile");
+        SpinParam bishMob = (SpinParam)par.getParam("bishMobScore[5]");
+        int rookOpen0 = rookOpen.getValue();
+        int bishMob0 = bishMob.getValue();
+        Path file = Files.createTempFile("params", ".txt");
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            par.set("rookOpenFile", Integer.toString(rookOpen0 + 7));
+            par.set("bishMobScore[5]", Integer.toString(bishMob0 - 4));
+            TexelTuner.writeParams(file.toString());
+            assertFalse(Files.exists(tmpFile));
+
+            par.set("rookOpenFile", Integer.toString(rookOpen0));
+            par.set("bishMobScore[5]", Integer.toString(bishMob0));
+            List<String> ignored = par.readFile(file.toString());
+            assertEquals(List.of(), ignored);
+            assertEquals(rookOpen0 + 7, rookOpen.getValue());
+            assertEquals(bishMob0 - 4, bishMob.getValue());
+
+            // Writing again gives the same file
+            String text = Files.readString(file);
+            TexelTuner.writeParams(file.toString());
+            assertEquals(text, Files.readString(file));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(tmpFile);
+            par.set("rookOpenFile", Integer.toString(rookOpen0));
+            par.set("bishMobScore[5]", Integer.toString(bishMob0));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+    CuckooChess - A java chess program.
+    Copyright (C) 2011  Peter Österlund, peterosterlund2@gmail.com
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package org.petero.cuckoo.tuner;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import org.petero.cuckoo.engine.chess.ChessParseError;
+import org.petero.cuckoo.engine.chess.Position;
+import org.petero.cuckoo.engine.chess.TextIO;
+
+/**
+ *
+ * @author petero
+ */
+public class TuningPositionsTest {
+
+    private static TuningPositions readEPD(String text, int maxPositions) throws IOException {
+        Path file = Files.createTempFile("tuning", ".epd");
+        try {
+            Files.writeString(file, text);
+            return TuningPositions.readEPD(file.toString(), maxPositions);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test of add and getPosition methods, of class TuningPositions.
+     */
+    @Test
+    public void testAddGet() throws ChessParseError {
+        String[] fens = {
+            TextIO.START_POS_FEN,
+            "r3k2r/8/8/8/8/8/8/R3K2R b Kq - 0 1",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 1",
+            "8/8/8/3k4/8/8/2K5/8 w - - 0 1",
+        };
+        TuningPositions positions = new TuningPositions();
+        for (int n = 0; n < 1000; n++)    // Enough to make the arrays grow
+            positions.add(TextIO.readFEN(fens[n % fens.length]), (n % 3) * 0.5);
+        assertEquals(1000, positions.size());
+        for (int n = 0; n < 1000; n++) {
+            Position pos = positions.getPosition(n);
+            assertEquals(fens[n % fens.length], TextIO.toFEN(pos));
+            assertEquals(TextIO.readFEN(fens[n % fens.length]), pos);
+            assertEquals((n % 3) * 0.5, positions.getResult(n), 0);
+        }
+    }
+
+    /**
+     * Test of parseResult method, of class TuningPositions.
+     */
+    @Test
+    public void testParseResult() {
+        assertEquals(1, TuningPositions.parseResult("1-0"), 0);
+        assertEquals(0, TuningPositions.parseResult("0-1"), 0);
+        assertEquals(0.5, TuningPositions.parseResult("1/2-1/2"), 0);
+        assertEquals(1, TuningPositions.parseResult("c9 \"1-0\";"), 0);
+        assertEquals(0.5, TuningPositions.parseResult("c9 \"1/2-1/2\";"), 0);
+        assertEquals(1, TuningPositions.parseResult("[1.0]"), 0);
+        assertEquals(1, TuningPositions.parseResult("[1]"), 0);
+        assertEquals(0.5, TuningPositions.parseResult("[0.5]"), 0);
+        assertEquals(0, TuningPositions.parseResult("[0.0]"), 0);
+        assertEquals(0, TuningPositions.parseResult("[0]"), 0);
+        assertEquals(-1, TuningPositions.parseResult("bm e4;"), 0);
+        assertEquals(-1, TuningPositions.parseResult(""), 0);
+    }
+
+    /**
+     * Test of readEPD method, of class TuningPositions.
+     */
+    @Test
+    public void testReadEPD() throws IOException, ChessParseError {
+        String text =
+            TextIO.START_POS_FEN + " c9 \"1/2-1/2\";\n" +
+            "\n" +
+            "r3k2r/8/8/8/8/8/8/R3K2R b Kq - [1.0]\n" +
+            "  8/8/8/3k4/8/8/2K5/8 w - - 12 40 0-1  \n" +
+            "8/8/8/3k4/8/8/2K5/8 b - - 1-0\n";
+        TuningPositions positions = readEPD(text, -1);
+        assertEquals(4, positions.size());
+        assertEquals(TextIO.readFEN(TextIO.START_POS_FEN), positions.getPosition(0));
+        assertEquals(0.5, positions.getResult(0), 0);
+        assertEquals("r3k2r/8/8/8/8/8/8/R3K2R b Kq - 0 1", TextIO.toFEN(positions.getPosition(1)));
+        assertEquals(1, positions.getResult(1), 0);
+        assertEquals("8/8/8/3k4/8/8/2K5/8 w - - 0 1", TextIO.toFEN(positions.getPosition(2)));
+        assertEquals(0, positions.getResult(2), 0);
+        assertFalse(positions.getPosition(3).whiteMove);
+        assertEquals(1, positions.getResult(3), 0);
+
+        positions = readEPD(text, 2);
+        assertEquals(2, positions.size());
+        assertEquals(1, positions.getResult(1), 0);
+
+        String[] badFiles = {
+            TextIO.START_POS_FEN + "\n",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - bm e4;\n",
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPXPPPP/RNBQKBNR w KQkq - 1-0\n",
+            "8/8/8/8/8/8/8/8 w - - 1-0\n",
+        };
+        for (String bad : badFiles) {
+            try {
+                readEPD(bad, -1);
+                fail(bad);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -18,26 +18,38 @@
 
 package org.petero.cuckoo.uci;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import org.petero.cuckoo.engine.chess.Bench;
 import org.petero.cuckoo.engine.chess.Book;
+import org.petero.cuckoo.engine.chess.ChessParseError;
 import org.petero.cuckoo.engine.chess.ComputerPlayer;
+import org.petero.cuckoo.engine.chess.Evaluate;
+import org.petero.cuckoo.engine.chess.Evaluator;
 import org.petero.cuckoo.engine.chess.Move;
 import org.petero.cuckoo.engine.chess.MoveGen;
+import org.petero.cuckoo.engine.chess.NNUEEvaluator;
 import org.petero.cuckoo.engine.chess.Parameters;
 import org.petero.cuckoo.engine.chess.Parameters.CheckParam;
 import org.petero.cuckoo.engine.chess.Parameters.ComboParam;
 import org.petero.cuckoo.engine.chess.Parameters.ParamBase;
 import org.petero.cuckoo.engine.chess.Parameters.SpinParam;
 import org.petero.cuckoo.engine.chess.Parameters.StringParam;
+import org.petero.cuckoo.engine.chess.BucketTranspositionTable;
+import org.petero.cuckoo.engine.chess.OffHeapTranspositionTable;
+import org.petero.cuckoo.engine.chess.PackedTranspositionTable;
+import org.petero.cuckoo.engine.chess.Perft;
 import org.petero.cuckoo.engine.chess.Position;
 import org.petero.cuckoo.engine.chess.Search;
+import org.petero.cuckoo.engine.chess.SearchHelpers;
 import org.petero.cuckoo.engine.chess.TextIO;
 import org.petero.cuckoo.engine.chess.TranspositionTable;
 import org.petero.cuckoo.engine.chess.TranspositionTable.TTEntry;
+import org.petero.cuckoo.engine.chess.TranspositionTableFile;
 import org.petero.cuckoo.engine.chess.UndoInfo;
 
 /**
@@ -55,7 +67,11 @@ public class EngineControl {
 	private final Object threadMutex;
 	Search sc;
 	TranspositionTable tt;
+	Evaluator eval;
+	SearchHelpers helpers;	// Kept between searches, rebuilt when eval or the number of threads changes
 	final MoveGen moveGen;
+	Book book = new Book(false);     // The built-in book is read in the background
+	boolean bookLoadReported = false;
 
 	Position pos;
 	long[] posHashList;
@@ -70,11 +86,25 @@ public class EngineControl {
 	int maxNodes;
 	List<Move> searchMoves;
 
+	private static final int PERFT_HASH_LOG2_SIZE = 20;
+	private static final int MIN_TT_LOG2_SIZE = 10;
+
 	// Options
 	int hashSizeMB = 16;
+	int pawnHashKB = 2048;
+	int kingSafetyHashKB = 512;
+	int evalHashKB = 512;
+	String evalType = "classic";
+	String hashType = "object";
+	int threads = 1;
+	int multiPV = 1;
+	boolean dynamicTime = false;
+	String hashFile = "";
+	boolean neverClearHash = false;
 	boolean ownBook = false;
 	boolean analyseMode = false;
 	boolean ponderMode = true;
+	boolean debugMode = false;
 
 	// Reduced strength variables
 	int strength = 1000;
@@ -83,7 +113,7 @@ public class EngineControl {
 	/**
 	 * This class is responsible for sending "info" strings during search.
 	 */
-	private record SearchListener(PrintStream os) implements Search.Listener {
+	private record SearchListener(PrintStream os, TranspositionTable tt, Search sc) implements Search.Listener {
 
 	@Override
 		public void notifyDepth(int depth) {
@@ -96,8 +126,8 @@ public class EngineControl {
 		}
 
 		@Override
-		public void notifyPV(int depth, int score, int time, int nodes, int nps, boolean isMate, boolean upperBound,
-				boolean lowerBound, ArrayList<Move> pv) {
+		public void notifyPV(int depth, int multiPVIndex, int score, int time, long nodes, long nps, boolean isMate,
+				boolean upperBound, boolean lowerBound, ArrayList<Move> pv) {
 			StringBuilder pvBuf = new StringBuilder();
 			for (Move m : pv) {
 				pvBuf.append(" ");
@@ -109,20 +139,56 @@ public class EngineControl {
 			} else if (lowerBound) {
 				bound = " lowerbound";
 			}
-			os.printf("info depth %d score %s %d%s time %d nodes %d nps %d pv%s%n", depth, isMate ? "mate" : "cp",
-					score, bound, time, nodes, nps, pvBuf);
+			os.printf("info depth %d multipv %d score %s %d%s time %d nodes %d nps %d pv%s%n", depth, multiPVIndex,
+					isMate ? "mate" : "cp", score, bound, time, nodes, nps, pvBuf);
 		}
 
 		@Override
-		public void notifyStats(int nodes, int nps, int time) {
-			os.printf("info nodes %d nps %d time %d%n", nodes, nps, time);
+		public void notifyStats(long nodes, long nps, int time) {
+			os.printf("info nodes %d nps %d time %d hashfull %d%n", nodes, nps, time, tt.hashFull());
+			TranspositionTable.Stats st = tt.getStats();
+			if (st != null) {
+				os.printf("info string hash probes %d hits %d (%.1f%%) cutoffs %d overwrites %d relocations %d%n",
+						st.probes, st.hits, st.hits * 100.0 / Math.max(st.probes, 1), st.cutoffs, st.overwrites,
+						st.relocations);
+				Evaluate.HashStats es = sc.getEvalHashStats();
+				os.printf("info string pawn hash probes %d hits %d (%.1f%%) king safety hash probes %d hits %d (%.1f%%)%n",
+						es.pawnProbes, es.pawnHits, es.pawnHits * 100.0 / Math.max(es.pawnProbes, 1),
+						es.kingSafetyProbes, es.kingSafetyHits, es.kingSafetyHits * 100.0 / Math.max(es.kingSafetyProbes, 1));
+				os.printf("info string eval hash probes %d hits %d (%.1f%%) lazy exits %d (%.1f%%)%n",
+						es.evalProbes, es.evalHits, es.evalHits * 100.0 / Math.max(es.evalProbes, 1),
+						es.lazyExits, es.lazyExits * 100.0 / Math.max(es.evalProbes, 1));
+			}
 		}
 	}
 
+	/**
+	 * Create the evaluation object used by the main search thread. It is kept between
+	 * searches, so its hash tables stay filled.
+	 */
+	private void setupEval() {
+		int pawnLogSize = 31 - Integer.numberOfLeadingZeros(Math.max(pawnHashKB * 1024 / 32, 1));
+		int kingLogSize = 31 - Integer.numberOfLeadingZeros(Math.max(kingSafetyHashKB * 1024 / 16, 1));
+		int evalLogSize = 31 - Integer.numberOfLeadingZeros(Math.max(evalHashKB * 1024 / 8, 1));
+		if (evalType.equals("nnue"))
+			eval = new NNUEEvaluator();
+		else
+			eval = new Evaluate(pawnLogSize, kingLogSize, evalLogSize);
+		setupHelpers();
+	}
+
+	/** Create helper evaluators and threads for the current evaluator and number of threads. */
+	private void setupHelpers() {
+		if (helpers != null)
+			helpers.shutdown();
+		helpers = (threads > 1) ? new SearchHelpers(threads - 1, eval) : null;
+	}
+
 	public EngineControl(PrintStream os) {
 		this.os = os;
 		threadMutex = new Object();
 		setupTT();
+		setupEval();
 		moveGen = new MoveGen();
 	}
 
@@ -170,7 +236,8 @@ public class EngineControl {
 
 	public final void newGame() {
 		randomSeed = random.nextLong();
-		tt.clear();
+		if (!neverClearHash)
+			tt.clear();
 	}
 
 	/**
@@ -222,10 +289,13 @@ public class EngineControl {
 
 	private void startThread(final int minTimeLimit, final int maxTimeLimit, int maxDepth, final int maxNodes) {
         // Must not start new search until old search is finished
-        sc = new Search(pos, posHashList, posHashListSize, tt);
+        sc = new Search(pos, posHashList, posHashListSize, tt, eval);
 		sc.timeLimit(minTimeLimit, maxTimeLimit);
-		sc.setListener(new SearchListener(os));
+		sc.setListener(new SearchListener(os, tt, sc));
 		sc.setStrength(strength, randomSeed);
+		sc.setHelpers(helpers);
+		sc.setMultiPV(multiPV);
+		sc.setDynamicTime(dynamicTime);
 		MoveGen.MoveList moves = moveGen.pseudoLegalMoves(pos);
 		MoveGen.removeIllegal(pos, moves);
 		if ((searchMoves != null) && (!searchMoves.isEmpty())) {
@@ -241,12 +311,13 @@ public class EngineControl {
 			}
 		}
 		tt.nextGeneration();
+		tt.setCollectStats(debugMode);
+		eval.getHashStats().clear();
 		final int srchmaxDepth = maxDepth;
 		engineThread = new Thread(() -> {
 			Move m = null;
 			if (ownBook && !analyseMode) {
-				Book book = new Book(false);
-				m = book.getBookMove(pos);
+				m = getBookMove(pos);
 			}
 			if (m == null) {
 				m = sc.iterativeDeepening(srchMoves, srchmaxDepth, maxNodes, false);
@@ -297,13 +368,150 @@ public class EngineControl {
 		}
 	}
 
+	/**
+	 * Return the hash table type to use. The Object table is not safe to share
+	 * between search threads, so the Packed table is used instead when Threads > 1.
+	 */
+	private String ttType() {
+		return ((threads > 1) && hashType.equals("object")) ? "packed" : hashType;
+	}
+
 	private void setupTT() {
-		int nEntries = hashSizeMB > 0 ? hashSizeMB * (1 << 20) / 24 : 1024;
-		int logSize = (int) Math.floor(Math.log(nEntries) / Math.log(2));
-		tt = new TranspositionTable(logSize);
+		String type = ttType();
+		if (!type.equals(hashType))
+			os.printf("info string Using hash type Packed, Object can not be used with more than one thread%n");
+		int entrySize = switch (type) {
+			case "packed", "offheap", "bucket" -> 16;
+			default -> 24;
+		};
+		long nEntries = hashSizeMB > 0 ? (long) hashSizeMB * (1 << 20) / entrySize : 1024;
+		int logSize = 63 - Long.numberOfLeadingZeros(nEntries);
+		if (type.equals("packed") || type.equals("object"))
+			logSize = Math.min(logSize, 30);	// Java array size limit
+		logSize = Math.max(logSize, MIN_TT_LOG2_SIZE);
+		tt = null;
+		while (true) {
+			try {
+				tt = switch (type) {
+					case "packed" -> new PackedTranspositionTable(logSize);
+					case "offheap" -> new OffHeapTranspositionTable(logSize);
+					case "bucket" -> new BucketTranspositionTable(logSize);
+					default -> new TranspositionTable(logSize);
+				};
+				return;
+			} catch (OutOfMemoryError ex) {
+				if (logSize <= MIN_TT_LOG2_SIZE)
+					throw ex;
+				os.printf("info string Could not allocate 2^%d hash entries, trying 2^%d%n", logSize, logSize - 1);
+				logSize--;
+			}
+		}
+	}
+
+	private void saveTT() {
+		if (!(tt instanceof PackedTranspositionTable ptt)) {
+			os.printf("info string SaveHash requires HashType Packed, OffHeap or Bucket%n");
+			return;
+		}
+		try {
+			long t0 = System.currentTimeMillis();
+			TranspositionTableFile.save(ptt, hashFile);
+			os.printf("info string Saved hash to %s in %d ms%n", hashFile, System.currentTimeMillis() - t0);
+		} catch (IOException ex) {
+			os.printf("info string Could not save hash to %s: %s%n", hashFile, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Read evaluation parameters from "fileName". A new evaluation object is created,
+	 * so no scores computed with the old parameters are kept in its hash tables.
+	 * The evaluation tables are shared by all positions, so this is not allowed
+	 * during a search. Positions given to later searches get new piece/square
+	 * scores in setupPosition().
+	 */
+	private void loadParams(String fileName) {
+		if (fileName.isEmpty() || fileName.equals("<empty>"))
+			return;
+		synchronized (threadMutex) {
+			if (engineThread != null) {
+				os.printf("info string Evaluation parameters can not be loaded during a search%n");
+				return;
+			}
+		}
+		try {
+			List<String> ignored = Parameters.instance().readFile(fileName);
+			Evaluate.updateTables();
+			setupEval();
+			os.printf("info string Loaded evaluation parameters from %s%n", fileName);
+			if (!ignored.isEmpty())
+				os.printf("info string Parameters only used at startup were not changed: %s%n",
+						String.join(" ", ignored));
+		} catch (IOException ex) {
+			os.printf("info string Could not load evaluation parameters from %s: %s%n", fileName, ex.getMessage());
+		}
+	}
+
+	/** Use the book file "fileName", created by BookCompiler, or the built-in book if the name is empty. */
+	private void setBookFile(String fileName) {
+		if (fileName.isEmpty() || fileName.equals("<empty>")) {
+			book = new Book(false);
+			bookLoadReported = false;
+			return;
+		}
+		try {
+			book = new Book(false, fileName);
+			bookLoadReported = false;
+		} catch (IOException ex) {
+			os.printf("info string Could not open book %s: %s%n", fileName, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Return a book move for "pos", or null if out of book. If the book is still
+	 * being read, null is returned so that the move is searched instead.
+	 */
+	private Move getBookMove(Position pos) {
+		Book b = book;
+		if (!b.isLoaded()) {
+			os.printf("info string Opening book not loaded yet, searching%n");
+			return null;
+		}
+		if (!bookLoadReported) {
+			os.printf("info string Opening book loaded in %d ms%n", b.getLoadTime());
+			bookLoadReported = true;
+		}
+		return b.getBookMove(pos);
+	}
+
+	private void loadTT() {
+		try {
+			long t0 = System.currentTimeMillis();
+			tt = TranspositionTableFile.load(hashFile);
+			os.printf("info string Loaded hash from %s in %d ms%n", hashFile, System.currentTimeMillis() - t0);
+		} catch (IOException ex) {
+			os.printf("info string Could not load hash from %s: %s%n", hashFile, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Count the leaf nodes "depth" plies below the position after "moves", and print
+	 * the counts for each move. Uses the Threads option and a separate 16 MB hash table.
+	 */
+	public final void perft(Position pos, List<Move> moves, int depth) {
+		setupPosition(new Position(pos), moves);
+		new Perft(threads, PERFT_HASH_LOG2_SIZE).divide(this.pos, depth, os);
+	}
+
+	/**
+	 * Search the built-in benchmark positions to "depth" and print the total
+	 * number of nodes and the speed. Uses its own hash table and one thread.
+	 */
+	public final void bench(int depth) throws ChessParseError {
+		Bench.run(depth, os);
 	}
 
 	private void setupPosition(Position pos, List<Move> moves) {
+		pos.updatePsScores();	// The evaluation tables may have changed since pos was created
 		UndoInfo ui = new UndoInfo();
 		posHashList = new long[200 + moves.size()];
 		posHashListSize = 0;
@@ -347,9 +555,28 @@ public class EngineControl {
 		return ret;
 	}
 
+	/** Turn on or off debug mode, which reports hash table statistics during search. */
+	public final void setDebugMode(boolean debug) {
+		debugMode = debug;
+	}
+
 	static void printOptions(PrintStream os) {
-		os.printf("option name Hash type spin default 16 min 1 max 2048%n");
+		os.printf("option name Hash type spin default 16 min 1 max 65536%n");
+		os.printf("option name PawnHash type spin default 2048 min 1 max 1048576%n");
+		os.printf("option name KingSafetyHash type spin default 512 min 1 max 1048576%n");
+		os.printf("option name EvalHash type spin default 512 min 1 max 1048576%n");
+		os.printf("option name EvalType type combo default Classic var Classic var NNUE%n");
+		os.printf("option name EvalParamFile type string default <empty>%n");
+		os.printf("option name Threads type spin default 1 min 1 max 128%n");
+		os.printf("option name MultiPV type spin default 1 min 1 max 256%n");
+		os.printf("option name DynamicTime type check default false%n");
+		os.printf("option name HashType type combo default Object var Object var Packed var OffHeap var Bucket%n");
+		os.printf("option name HashFile type string default <empty>%n");
+		os.printf("option name SaveHash type button%n");
+		os.printf("option name LoadHash type button%n");
+		os.printf("option name NeverClearHash type check default false%n");
 		os.printf("option name OwnBook type check default false%n");
+		os.printf("option name BookFile type string default <empty>%n");
 		os.printf("option name Ponder type check default true%n");
 		os.printf("option name UCI_AnalyseMode type check default false%n");
 		os.printf(
@@ -398,7 +625,44 @@ public class EngineControl {
                     hashSizeMB = Integer.parseInt(optionValue);
                     setupTT();
                 }
+                case "hashtype" -> {
+                    hashType = optionValue.toLowerCase();
+                    setupTT();
+                }
+                case "pawnhash" -> {
+                    pawnHashKB = Math.max(1, Math.min(1048576, Integer.parseInt(optionValue)));
+                    setupEval();
+                }
+                case "kingsafetyhash" -> {
+                    kingSafetyHashKB = Math.max(1, Math.min(1048576, Integer.parseInt(optionValue)));
+                    setupEval();
+                }
+                case "evalhash" -> {
+                    evalHashKB = Math.max(1, Math.min(1048576, Integer.parseInt(optionValue)));
+                    setupEval();
+                }
+                case "evaltype" -> {
+                    evalType = optionValue.toLowerCase();
+                    setupEval();
+                }
+                case "evalparamfile" -> loadParams(optionValue);
+                case "hashfile" -> hashFile = optionValue.equals("<empty>") ? "" : optionValue;
+                case "savehash" -> saveTT();
+                case "loadhash" -> loadTT();
+                case "neverclearhash" -> neverClearHash = Boolean.parseBoolean(optionValue);
+                case "threads" -> {
+                    int newThreads = Math.max(1, Math.min(128, Integer.parseInt(optionValue)));
+                    if (newThreads != threads) {
+                        threads = newThreads;
+                        setupHelpers();
+                    }
+                    if ((threads > 1) && !(tt instanceof PackedTranspositionTable))
+                        setupTT();
+                }
+                case "multipv" -> multiPV = Math.max(1, Math.min(256, Integer.parseInt(optionValue)));
+                case "dynamictime" -> dynamicTime = Boolean.parseBoolean(optionValue);
                 case "ownbook" -> ownBook = Boolean.parseBoolean(optionValue);
+                case "bookfile" -> setBookFile(optionValue);
                 case "ponder" -> ponderMode = Boolean.parseBoolean(optionValue);
                 case "uci_analysemode" -> analyseMode = Boolean.parseBoolean(optionValue);
                 case "strength" -> strength = Integer.parseInt(optionValue);
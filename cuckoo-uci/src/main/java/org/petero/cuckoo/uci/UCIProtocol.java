@@ -26,6 +26,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Optional;
 
+import org.petero.cuckoo.engine.chess.Bench;
 import org.petero.cuckoo.engine.chess.ChessParseError;
 import org.petero.cuckoo.engine.chess.ComputerPlayer;
 import org.petero.cuckoo.engine.chess.Move;
@@ -90,6 +91,10 @@ public class UCIProtocol {
                     EngineControl.printOptions(os);
                     os.printf("uciok%n");
                 }
+                case "debug" -> {
+                    initEngine(os);
+                    engine.setDebugMode((tokens.length > 1) && tokens[1].equals("on"));
+                }
                 case "isready" -> {
                     initEngine(os);
                     os.printf("readyok%n");
@@ -106,7 +111,7 @@ public class UCIProtocol {
                         }
                         if ((idx < tokens.length) && tokens[idx++].equals("value")) {
                             while ((idx < tokens.length)) {
-                                optionValue.append(tokens[idx++].toLowerCase());
+                                optionValue.append(tokens[idx++]);
                                 optionValue.append(' ');
                             }
                         }
@@ -157,6 +162,10 @@ public class UCIProtocol {
                         }
                     }
                     initEngine(os);
+                    if ((tokens.length > 2) && tokens[1].equals("perft")) {
+                        engine.perft(pos, moves, Integer.parseInt(tokens[2]));
+                        return;
+                    }
                     int idx = 1;
                     SearchParams sPar = new SearchParams();
                     boolean ponder = false;
@@ -192,6 +201,10 @@ public class UCIProtocol {
                         engine.startSearch(pos, moves, sPar);
                     }
                 }
+                case "bench" -> {
+                    initEngine(os);
+                    engine.bench((tokens.length > 1) ? Integer.parseInt(tokens[1]) : Bench.DEFAULT_DEPTH);
+                }
                 case "stop" -> engine.stopSearch();
                 case "ponderhit" -> engine.ponderHit();
                 case "quit" -> {